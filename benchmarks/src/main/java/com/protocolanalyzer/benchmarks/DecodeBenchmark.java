@@ -0,0 +1,93 @@
+package com.protocolanalyzer.benchmarks;
+
+import com.protocolanalyzer.api.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link com.protocolanalyzer.api.Protocol#decode(double)} of each protocol
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DecodeBenchmark {
+
+    private static final int UART_BAUD_RATE = 115200;
+    private static final int I2C_CLOCK = 400000;
+    private static final int SPI_CLOCK = 1000000;
+
+    @Param({"4000000", "40000000"})
+    public long sampleRate;
+
+    @Param({"1048576", "16777216"})
+    public int length;
+
+    /** Fraction of the time the bus is transmitting */
+    @Param({"0.05", "0.5", "1.0"})
+    public double density;
+
+    /** Whether the activity map is built, as it is when the samples come from bufferToChannel() */
+    @Param({"false", "true"})
+    public boolean activityMap;
+
+    private UARTProtocol uart;
+    private I2CProtocol i2c;
+    private SPIProtocol spi;
+
+    @Setup(Level.Trial)
+    public void setUp(){
+        Random random = new Random(1);
+
+        uart = new UARTProtocol(sampleRate);
+        uart.setBaudRate(UART_BAUD_RATE);
+        uart.setChannelBitsData(Signals.uart(length, (int)Math.ceil((double)sampleRate / UART_BAUD_RATE), density, random));
+
+        LogicBitSet[] lines = Signals.i2c(length, (int)(sampleRate / I2C_CLOCK), density, random);
+        Clock scl = new Clock(sampleRate);
+        scl.setChannelBitsData(lines[1]);
+        i2c = new I2CProtocol(sampleRate);
+        i2c.setClockSource(scl);
+        i2c.setChannelBitsData(lines[0]);
+
+        lines = Signals.spi(length, (int)(sampleRate / SPI_CLOCK), density, random);
+        Clock sck = new Clock(sampleRate);
+        sck.setChannelBitsData(lines[1]);
+        spi = new SPIProtocol(sampleRate);
+        spi.setSPIMode(0);
+        spi.setClockSource(sck);
+        spi.setChannelBitsData(lines[0]);
+
+        if(activityMap){
+            for(Protocol protocol : new Protocol[]{ uart, i2c, i2c.getClockSource(), spi, spi.getClockSource() }){
+                protocol.getChannelBitsData().updateActivityMap();
+            }
+        }
+    }
+
+    private static DecodedEventStore decode(Protocol protocol, SampleCounter counter){
+        protocol.getDecodedEvents().clear();
+        protocol.decode(0);
+        counter.samples += protocol.getBitsNumber();
+        return protocol.getDecodedEvents();
+    }
+
+    @Benchmark
+    public DecodedEventStore uartDecode(SampleCounter counter){
+        return decode(uart, counter);
+    }
+
+    @Benchmark
+    public DecodedEventStore i2cDecode(SampleCounter counter){
+        return decode(i2c, counter);
+    }
+
+    @Benchmark
+    public DecodedEventStore spiDecode(SampleCounter counter){
+        return decode(spi, counter);
+    }
+}
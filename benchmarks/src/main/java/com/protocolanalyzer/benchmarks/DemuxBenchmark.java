@@ -0,0 +1,69 @@
+package com.protocolanalyzer.benchmarks;
+
+import com.protocolanalyzer.api.EmptyProtocol;
+import com.protocolanalyzer.api.LogicBitSet;
+import com.protocolanalyzer.api.LogicHelper;
+import com.protocolanalyzer.api.Protocol;
+import com.protocolanalyzer.api.utils.ByteArrayBuffer;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Splits the samples received from the logic analyzer into channels
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DemuxBenchmark {
+
+    @Param({"1048576", "16777216"})
+    public int length;
+
+    @Param({"1", "4", "8"})
+    public int channels;
+
+    /** Fraction of the time each channel is transmitting */
+    @Param({"0.01", "0.5", "1.0"})
+    public double density;
+
+    private byte[] samples;
+    private ByteArrayBuffer runLength;
+    private Protocol[] protocols;
+
+    @Setup(Level.Trial)
+    public void setUp(){
+        Random random = new Random(1);
+        LogicBitSet[] lines = new LogicBitSet[channels];
+        for(int ch = 0; ch < channels; ++ch) lines[ch] = Signals.uart(length, 16 + ch, density, random);
+
+        samples = Signals.interleave(lines, length);
+        runLength = Signals.runLengthEncode(samples);
+        protocols = new Protocol[channels];
+        for(int ch = 0; ch < channels; ++ch) protocols[ch] = new EmptyProtocol(4000000);
+    }
+
+    @Benchmark
+    public Protocol[] bufferToChannel(SampleCounter counter){
+        LogicHelper.bufferToChannel(samples, protocols);
+        counter.samples += length;
+        return protocols;
+    }
+
+    @Benchmark
+    public byte[] runLengthDecode(SampleCounter counter){
+        counter.samples += length;
+        return LogicHelper.runLengthDecode(runLength);
+    }
+
+    @Benchmark
+    public Protocol[] runLengthToChannel(SampleCounter counter){
+        LogicHelper.runLengthToChannel(runLength, protocols);
+        counter.samples += length;
+        return protocols;
+    }
+}
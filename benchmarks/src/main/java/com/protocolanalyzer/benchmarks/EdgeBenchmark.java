@@ -0,0 +1,66 @@
+package com.protocolanalyzer.benchmarks;
+
+import com.protocolanalyzer.api.HybridLogicBitSet;
+import com.protocolanalyzer.api.LogicBitSet;
+import com.protocolanalyzer.api.LogicSignal;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Walks all the edges of a channel with {@link com.protocolanalyzer.api.LogicBitSet#nextRisingEdge(int)} and
+ *  {@link com.protocolanalyzer.api.LogicBitSet#nextFallingEdge(int)}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EdgeBenchmark {
+
+    @Param({"1048576", "16777216"})
+    public int length;
+
+    /** Fraction of the time the line is transmitting */
+    @Param({"0.01", "0.5", "1.0"})
+    public double density;
+
+    /** LogicBitSet with and without edge index, or HybridLogicBitSet */
+    @Param({"bitset", "indexed", "hybrid"})
+    public String storage;
+
+    private LogicSignal signal;
+
+    @Setup(Level.Trial)
+    public void setUp(){
+        LogicBitSet bits = Signals.uart(length, 16, density, new Random(1));
+        if("hybrid".equals(storage)){
+            HybridLogicBitSet hybrid = new HybridLogicBitSet();
+            hybrid.append(bits);
+            signal = hybrid;
+        }else{
+            bits.setEdgeIndexEnabled("indexed".equals(storage));
+            signal = bits;
+        }
+        // Build the index out of the measurement
+        signal.nextRisingEdge(0);
+    }
+
+    @Benchmark
+    public int risingEdges(SampleCounter counter){
+        int count = 0;
+        for(int n = signal.nextRisingEdge(0); n != -1; n = signal.nextRisingEdge(n)) ++count;
+        counter.samples += length;
+        return count;
+    }
+
+    @Benchmark
+    public int fallingEdges(SampleCounter counter){
+        int count = 0;
+        for(int n = signal.nextFallingEdge(0); n != -1; n = signal.nextFallingEdge(n)) ++count;
+        counter.samples += length;
+        return count;
+    }
+}
@@ -0,0 +1,74 @@
+package com.protocolanalyzer.benchmarks;
+
+import com.protocolanalyzer.api.SampleKernels;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scalar against Vector API kernels, the forked JVM gets jdk.incubator.vector so both are available
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class KernelBenchmark {
+
+    /** Samples demultiplexed at once, same than LogicHelper */
+    private static final int BLOCK_SAMPLES = 4096;
+
+    @Param({"16777216"})
+    public int length;
+
+    @Param({"scalar", "vector"})
+    public String kernel;
+
+    @Param({"8"})
+    public int channels;
+
+    private SampleKernels kernels;
+    private ByteBuffer samples;
+    private long[][] block;
+    private long[] words, rises, falls;
+
+    @Setup(Level.Trial)
+    public void setUp(){
+        kernels = "vector".equals(kernel) ? SampleKernels.getVector() : SampleKernels.getScalar();
+        if(kernels == null) throw new IllegalStateException("Vector kernels not available, is ProtocolDecoderAPI-vector in the classpath?");
+
+        Random random = new Random(1);
+        byte[] data = new byte[length];
+        random.nextBytes(data);
+        samples = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+        block = new long[channels][BLOCK_SAMPLES / 64];
+
+        words = new long[length / 64];
+        for(int n = 0; n < words.length; ++n) words[n] = random.nextLong();
+        rises = new long[BLOCK_SAMPLES];
+        falls = new long[BLOCK_SAMPLES];
+    }
+
+    @Benchmark
+    public long[][] demux(SampleCounter counter){
+        for(int n = 0; n < length; n += BLOCK_SAMPLES){
+            kernels.demuxBlock(samples, n, Math.min(BLOCK_SAMPLES, length - n), block);
+        }
+        counter.samples += length;
+        return block;
+    }
+
+    @Benchmark
+    public long transitions(SampleCounter counter){
+        long carry = 0;
+        for(int n = 0; n < words.length; n += rises.length){
+            carry = kernels.transitions(words, n, Math.min(rises.length, words.length - n), carry, rises, falls);
+        }
+        counter.samples += length;
+        return carry;
+    }
+}
@@ -0,0 +1,22 @@
+package com.protocolanalyzer.benchmarks;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Counts the samples processed so JMH reports throughput in samples per second next to operations per second
+ */
+@State(Scope.Thread)
+@AuxCounters(AuxCounters.Type.OPERATIONS)
+public class SampleCounter {
+
+    public long samples;
+
+    @Setup(Level.Iteration)
+    public void clean(){
+        samples = 0;
+    }
+}
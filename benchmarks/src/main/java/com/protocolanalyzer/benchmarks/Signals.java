@@ -0,0 +1,145 @@
+package com.protocolanalyzer.benchmarks;
+
+import com.protocolanalyzer.api.LogicBitSet;
+import com.protocolanalyzer.api.utils.ByteArrayBuffer;
+
+import java.util.Random;
+
+/**
+ * Synthetic captures for the benchmarks. Bus activity density is the fraction of the capture time the bus is
+ *  transmitting, the rest are idle times of random length between transfers.
+ */
+final class Signals {
+
+    private Signals(){}
+
+    /**
+     * Writes the lines of a capture sample by sample
+     */
+    private static final class Writer {
+        final LogicBitSet[] lines;
+        final int length;
+        int index = 0;
+
+        Writer(int lines, int length){
+            this.lines = new LogicBitSet[lines];
+            for(int n = 0; n < lines; ++n) this.lines[n] = new LogicBitSet(length);
+            this.length = length;
+        }
+
+        /**
+         * Holds the lines in the given states
+         * @param samples number of samples
+         * @param states state of each line
+         */
+        void hold(int samples, boolean... states){
+            final int end = Math.min(length, index + samples);
+            for(int n = 0; n < lines.length; ++n) lines[n].set(index, end, states[n]);
+            index = end;
+        }
+
+        boolean full(){
+            return index >= length;
+        }
+    }
+
+    /**
+     * Idle samples after a transfer so the bus is busy the given fraction of the time
+     */
+    private static int idle(int transferSamples, double density, Random random){
+        final double mean = transferSamples * (1.0/density - 1.0);
+        return (int)(2.0 * mean * random.nextDouble()) + 1;
+    }
+
+    /**
+     * UART line with 8N1 frames of random data
+     */
+    static LogicBitSet uart(int length, int samplesPerBit, double density, Random random){
+        Writer w = new Writer(1, length);
+        while(!w.full()){
+            w.hold(idle(10*samplesPerBit, density, random), true);
+            w.hold(samplesPerBit, false);
+            int data = random.nextInt(256);
+            for(int bit = 0; bit < 8; ++bit) w.hold(samplesPerBit, (data & (1 << bit)) != 0);
+            w.hold(samplesPerBit, true);
+        }
+        return w.lines[0];
+    }
+
+    /**
+     * I2C write transactions of an address and 1 to 4 data bytes of random data
+     * @return SDA and SCL lines
+     */
+    static LogicBitSet[] i2c(int length, int samplesPerBit, double density, Random random){
+        Writer w = new Writer(2, length);
+        final int half = Math.max(1, samplesPerBit/2);
+        while(!w.full()){
+            int bytes = 2 + random.nextInt(4);
+            w.hold(idle(bytes*9*samplesPerBit, density, random), true, true);
+
+            // Start condition
+            w.hold(half, false, true);
+            for(int b = 0; b < bytes; ++b){
+                int data = b == 0 ? random.nextInt(128) << 1 : random.nextInt(256);
+                for(int bit = 8; bit >= 0; --bit){
+                    // Bit 0 is the ACK bit
+                    boolean sda = bit > 0 && (data & (1 << (bit-1))) != 0;
+                    w.hold(half, sda, false);
+                    w.hold(half, sda, true);
+                }
+            }
+            // Stop condition
+            w.hold(half, false, false);
+            w.hold(half, false, true);
+        }
+        return w.lines;
+    }
+
+    /**
+     * SPI mode 0 bytes of random data, clock idle low
+     * @return data and clock lines
+     */
+    static LogicBitSet[] spi(int length, int samplesPerBit, double density, Random random){
+        Writer w = new Writer(2, length);
+        final int half = Math.max(1, samplesPerBit/2);
+        while(!w.full()){
+            w.hold(idle(8*samplesPerBit, density, random), false, false);
+            int data = random.nextInt(256);
+            for(int bit = 0; bit < 8; ++bit){
+                boolean state = (data & (1 << bit)) != 0;
+                w.hold(half, state, false);
+                w.hold(half, state, true);
+            }
+        }
+        return w.lines;
+    }
+
+    /**
+     * Interleaves channels the way the logic analyzer sends them, bit N of each sample byte is channel N
+     */
+    static byte[] interleave(LogicBitSet[] channels, int length){
+        byte[] samples = new byte[length];
+        for(int ch = 0; ch < channels.length && ch < 8; ++ch){
+            for(int n = channels[ch].nextSetBit(0); n != -1 && n < length; n = channels[ch].nextSetBit(n+1)){
+                samples[n] |= 1 << ch;
+            }
+        }
+        return samples;
+    }
+
+    /**
+     * Run length encoding of interleaved samples, runs are count LSB, count MSB and sample byte
+     */
+    static ByteArrayBuffer runLengthEncode(byte[] samples){
+        ByteArrayBuffer buffer = new ByteArrayBuffer(1024);
+        for(int n = 0; n < samples.length; ){
+            int end = n + 1;
+            while(end < samples.length && samples[end] == samples[n] && end - n < 0xFFFF) ++end;
+            buffer.append((end - n) & 0xFF);
+            buffer.append(((end - n) >> 8) & 0xFF);
+            buffer.append(samples[n] & 0xFF);
+            n = end;
+        }
+        return buffer;
+    }
+}
@@ -0,0 +1,254 @@
+package com.protocolanalyzer.api;
+
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Buffers kept from one acquisition to the next so repeated captures don't allocate new ones: word buffers for the
+ *  channels ({@link com.protocolanalyzer.api.LogicBitSet#LogicBitSet(int, CapturePool)}) and byte buffers for the
+ *  run length expansion ({@link com.protocolanalyzer.api.LogicHelper#runLengthDecode(com.protocolanalyzer.api.utils.ByteArrayBuffer, byte[])}).
+ * Buffers are grouped in size classes of powers of 2, a request gets a buffer of the smallest class that fits it.
+ *  Each class keeps up to a maximum number of free buffers, the ones released after that are left to the garbage
+ *  collector. The pool can be used from several threads.
+ *
+ * <pre>
+ * {@code
+ * CapturePool pool = new CapturePool();
+ * for(Protocol channel : channels) channel.setChannelBitsData(new LogicBitSet(samples, pool));
+ * // Each acquisition
+ * byte[] buffer = pool.takeBytes(LogicHelper.runLengthSamples(compressed));
+ * int count = LogicHelper.runLengthDecode(compressed, buffer);
+ * LogicHelper.bufferToChannel(ByteBuffer.wrap(buffer, 0, count), 1, channels);
+ * pool.release(buffer);
+ * }
+ * </pre>
+ */
+public class CapturePool {
+
+    /** Smallest size class as a shift count, smaller requests get a buffer of this size */
+    private static final int MIN_CLASS = 6;
+    /** Largest size class as a shift count, larger buffers are not pooled */
+    private static final int MAX_CLASS = 30;
+    /** Default free buffers kept by each size class */
+    public static final int DEFAULT_MAX_FREE = 16;
+
+    private final SizeClasses<long[]> words;
+    private final SizeClasses<byte[]> bytes;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong released = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    public CapturePool(){
+        this(DEFAULT_MAX_FREE);
+    }
+
+    /**
+     * @param maxFree free buffers kept by each size class of each buffer type
+     */
+    public CapturePool(int maxFree){
+        if(maxFree < 0) throw new IllegalArgumentException("Maximum free buffers can't be negative");
+        words = new SizeClasses<>(maxFree);
+        bytes = new SizeClasses<>(maxFree);
+    }
+
+    /**
+     * @return size class of a buffer of the given length, -1 if it isn't pooled
+     */
+    private static int sizeClass(int length){
+        final int c = Math.max(MIN_CLASS, 32 - Integer.numberOfLeadingZeros(Math.max(length, 1) - 1));
+        return c <= MAX_CLASS ? c : -1;
+    }
+
+    /**
+     * @return size class of a released buffer, -1 if its length isn't the one of a size class
+     */
+    private static int releasedClass(int length){
+        final int c = sizeClass(length);
+        return c != -1 && length == 1 << c ? c : -1;
+    }
+
+    /**
+     * Gets a word buffer with all its words set to 0
+     * @param minWords minimum number of words
+     * @return buffer of at least minWords words
+     */
+    public long[] takeWords(int minWords){
+        final int c = sizeClass(minWords);
+        if(c == -1){
+            misses.incrementAndGet();
+            return new long[minWords];
+        }
+        long[] buffer = words.poll(c);
+        if(buffer != null){
+            hits.incrementAndGet();
+            return buffer;
+        }
+        misses.incrementAndGet();
+        return new long[1 << c];
+    }
+
+    /**
+     * Gives back a word buffer taken from {@link #takeWords(int)}, it must not be used anymore
+     */
+    public void release(long[] buffer){
+        release(buffer, buffer.length);
+    }
+
+    /**
+     * Gives back a word buffer whose words from usedWords are already 0
+     */
+    void release(long[] buffer, int usedWords){
+        final int c = releasedClass(buffer.length);
+        if(c != -1 && words.reserve(c)){
+            Arrays.fill(buffer, 0, Math.min(usedWords, buffer.length), 0);
+            words.add(c, buffer);
+            released.incrementAndGet();
+        }else{
+            dropped.incrementAndGet();
+        }
+    }
+
+    /**
+     * Gets a byte buffer, its content is not defined
+     * @param minLength minimum number of bytes
+     * @return buffer of at least minLength bytes
+     */
+    public byte[] takeBytes(int minLength){
+        final int c = sizeClass(minLength);
+        if(c == -1){
+            misses.incrementAndGet();
+            return new byte[minLength];
+        }
+        byte[] buffer = bytes.poll(c);
+        if(buffer != null){
+            hits.incrementAndGet();
+            return buffer;
+        }
+        misses.incrementAndGet();
+        return new byte[1 << c];
+    }
+
+    /**
+     * Gives back a byte buffer taken from {@link #takeBytes(int)}, it must not be used anymore
+     */
+    public void release(byte[] buffer){
+        final int c = releasedClass(buffer.length);
+        if(c != -1 && bytes.reserve(c)){
+            bytes.add(c, buffer);
+            released.incrementAndGet();
+        }else{
+            dropped.incrementAndGet();
+        }
+    }
+
+    /**
+     * Drops all the free buffers, the statistics are kept
+     */
+    public void clear(){
+        words.clear();
+        bytes.clear();
+    }
+
+    /**
+     * @return buffers taken that were reused
+     */
+    public long getHits(){
+        return hits.get();
+    }
+
+    /**
+     * @return buffers taken that had to be allocated
+     */
+    public long getMisses(){
+        return misses.get();
+    }
+
+    /**
+     * @return buffers released that were kept for reuse
+     */
+    public long getReleased(){
+        return released.get();
+    }
+
+    /**
+     * @return buffers released that were left to the garbage collector, because their class was full or their
+     *  length isn't the one of a size class
+     */
+    public long getDropped(){
+        return dropped.get();
+    }
+
+    /**
+     * @return bytes of the free buffers
+     */
+    public long getFreeBytes(){
+        return 8 * words.freeElements() + bytes.freeElements();
+    }
+
+    @Override
+    public String toString() {
+        return "CapturePool{hits=" + getHits() + ", misses=" + getMisses() + ", released=" + getReleased() +
+                ", dropped=" + getDropped() + ", free=" + getFreeBytes() + " bytes}";
+    }
+
+    /**
+     * Free buffers of one type for each size class
+     */
+    private static final class SizeClasses<T> {
+
+        private final int maxFree;
+        private final Queue<T>[] free;
+        /** Buffers in each queue plus the ones about to be added */
+        private final AtomicInteger[] counts;
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        SizeClasses(int maxFree){
+            this.maxFree = maxFree;
+            free = new Queue[MAX_CLASS + 1];
+            counts = new AtomicInteger[MAX_CLASS + 1];
+            for(int c = MIN_CLASS; c <= MAX_CLASS; ++c){
+                free[c] = new ConcurrentLinkedQueue<>();
+                counts[c] = new AtomicInteger();
+            }
+        }
+
+        T poll(int c){
+            T buffer = free[c].poll();
+            if(buffer != null) counts[c].decrementAndGet();
+            return buffer;
+        }
+
+        /**
+         * Reserves room for a buffer that is going to be added
+         * @return false if the class is full
+         */
+        boolean reserve(int c){
+            while(true){
+                int count = counts[c].get();
+                if(count >= maxFree) return false;
+                if(counts[c].compareAndSet(count, count + 1)) return true;
+            }
+        }
+
+        void add(int c, T buffer){
+            free[c].add(buffer);
+        }
+
+        void clear(){
+            for(int c = MIN_CLASS; c <= MAX_CLASS; ++c){
+                while(poll(c) != null);
+            }
+        }
+
+        long freeElements(){
+            long elements = 0;
+            for(int c = MIN_CLASS; c <= MAX_CLASS; ++c) elements += (long)counts[c].get() << c;
+            return elements;
+        }
+    }
+}
@@ -0,0 +1,271 @@
+package com.protocolanalyzer.api;
+
+import java.util.Arrays;
+
+/**
+ * Logic channel kept in chunks of {@link #CHUNK_SAMPLES} samples that can be shared between versions of the channel.
+ * {@link #snapshot()} takes a copy in constant time sharing all the chunks, then the first write to a shared chunk
+ *  copies only that chunk. While acquisition keeps appending samples only the last chunk is copied on each snapshot,
+ *  so the UI and the decoders can read a stable view of the channel without copying all of it.
+ * A snapshot can be read by other threads while this set keeps being written, as long as it is handed to them
+ *  safely, for example through a {@link java.util.concurrent.BlockingQueue} or a volatile field.
+ */
+public class ChunkedLogicBitSet implements WritableLogicSignal {
+
+    /** Samples per chunk as a shift count */
+    private static final int ADDRESS_SAMPLES_PER_CHUNK = 16;
+    public static final int CHUNK_SAMPLES = 1 << ADDRESS_SAMPLES_PER_CHUNK;
+    private static final int CHUNK_WORDS = CHUNK_SAMPLES / 64;
+
+    /** Chunks of samples, null if all their samples are '0' */
+    private long[][] chunks;
+    /** Bit c is '1' if chunks[c] belongs only to this set and can be written in place */
+    private long[] owned;
+    /** Whether the chunks array itself is shared with a snapshot */
+    private boolean sharedChunks;
+    /** Number of samples */
+    private int currentSize = 0;
+
+    public ChunkedLogicBitSet(){
+        chunks = new long[1][];
+        owned = new long[1];
+    }
+
+    /**
+     * Copies the samples of any {@link com.protocolanalyzer.api.LogicSignal} a word at a time
+     * @param signal signal to copy
+     */
+    public ChunkedLogicBitSet(LogicSignal signal){
+        this();
+        final int length = signal.length();
+        long[] words = new long[CHUNK_WORDS];
+        for(int n = 0; n < length; n += CHUNK_SAMPLES){
+            final int samples = Math.min(CHUNK_SAMPLES, length - n);
+            final int first = n >>> 6;
+            for(int w = 0; w < (samples + 63) >>> 6; ++w) words[w] = signal.getWord(first + w);
+            setWords(n, words, samples);
+        }
+    }
+
+    /**
+     * Snapshot constructor, both sets share all the chunks
+     */
+    private ChunkedLogicBitSet(ChunkedLogicBitSet original){
+        chunks = original.chunks;
+        owned = new long[original.owned.length];
+        sharedChunks = true;
+        currentSize = original.currentSize;
+    }
+
+    /**
+     * Copy of the current samples that doesn't change when this set is written. It takes constant time, the
+     *  chunks are copied when they are written, either in this set or in the snapshot.
+     * @return snapshot of the samples
+     */
+    public ChunkedLogicBitSet snapshot(){
+        ChunkedLogicBitSet snapshot = new ChunkedLogicBitSet(this);
+        // None of the chunks can be written in place anymore
+        sharedChunks = true;
+        Arrays.fill(owned, 0);
+        return snapshot;
+    }
+
+    private static int chunkIndex(int index){
+        return index >>> ADDRESS_SAMPLES_PER_CHUNK;
+    }
+
+    /**
+     * Chunk that can be written in place, copied or allocated if needed
+     */
+    private long[] writableChunk(int c){
+        if(sharedChunks || c >= chunks.length){
+            chunks = Arrays.copyOf(chunks, Math.max(c + 1, c >= chunks.length ? 2 * chunks.length : chunks.length));
+            if(owned.length < ((chunks.length + 63) >>> 6)) owned = Arrays.copyOf(owned, (chunks.length + 63) >>> 6);
+            sharedChunks = false;
+        }
+        if((owned[c >>> 6] & (1L << c)) == 0){
+            chunks[c] = chunks[c] == null ? new long[CHUNK_WORDS] : chunks[c].clone();
+            owned[c >>> 6] |= 1L << c;
+        }
+        return chunks[c];
+    }
+
+    private long[] chunk(int c){
+        return c < chunks.length ? chunks[c] : null;
+    }
+
+    /**
+     * Writes the bits of mask of one word
+     */
+    private void writeWord(int wordIndex, long mask, long value){
+        final int c = wordIndex / CHUNK_WORDS;
+        final long[] chunk = chunk(c);
+        // Writing '0' into a chunk that isn't there doesn't change anything
+        if(chunk == null && (value & mask) == 0) return;
+        if(chunk != null && ((chunk[wordIndex % CHUNK_WORDS] ^ value) & mask) == 0) return;
+
+        final long[] writable = writableChunk(c);
+        final int w = wordIndex % CHUNK_WORDS;
+        writable[w] = (writable[w] & ~mask) | (value & mask);
+    }
+
+    private void updateSize(int size){
+        if(size > currentSize) currentSize = size;
+    }
+
+    public void set(int index){
+        set(index, true);
+    }
+
+    public void set(int index, boolean value){
+        if(index < 0) throw new IndexOutOfBoundsException("index < 0: " + index);
+        writeWord(index >>> 6, 1L << index, value ? -1L : 0);
+        updateSize(index + 1);
+    }
+
+    /**
+     * Sets the samples from fromIndex (inclusive) to toIndex (exclusive) to the given value
+     */
+    public void set(int fromIndex, int toIndex, boolean value){
+        if(fromIndex < 0 || toIndex < fromIndex)
+            throw new IndexOutOfBoundsException("fromIndex: " + fromIndex + ", toIndex: " + toIndex);
+        if(fromIndex == toIndex) return;
+
+        final int startWord = fromIndex >>> 6;
+        final int endWord = (toIndex - 1) >>> 6;
+        final long firstWordMask = -1L << fromIndex;
+        final long lastWordMask = -1L >>> -toIndex;
+        final long bits = value ? -1L : 0;
+        if(startWord == endWord){
+            writeWord(startWord, firstWordMask & lastWordMask, bits);
+        }else{
+            writeWord(startWord, firstWordMask, bits);
+            for(int w = startWord + 1; w < endWord; ++w) writeWord(w, -1L, bits);
+            writeWord(endWord, lastWordMask, bits);
+        }
+        updateSize(toIndex);
+    }
+
+    /**
+     * Copies nBits samples from the given words starting at fromIndex, overwriting the samples already there.
+     * Written like {@link com.protocolanalyzer.api.LogicBitSet#setWords(int, long[], int)} so
+     *  {@link com.protocolanalyzer.api.LogicHelper#bufferToChannel(byte[], Protocol[])} can fill it.
+     *
+     * @param fromIndex index of the first sample to write
+     * @param src samples to write where bit 0 of src[0] is the first sample
+     * @param nBits number of samples to write
+     */
+    public void setWords(int fromIndex, long[] src, int nBits){
+        if(fromIndex < 0) throw new IndexOutOfBoundsException("fromIndex < 0: " + fromIndex);
+        if(nBits <= 0) return;
+
+        final int shift = fromIndex & 63;
+        int w = fromIndex >>> 6;
+        for(int n = 0; n < nBits; n += 64, ++w){
+            final int bits = Math.min(64, nBits - n);
+            final long mask = -1L >>> (64 - bits);
+            final long word = src[n >>> 6] & mask;
+            writeWord(w, mask << shift, word << shift);
+            if(shift != 0 && bits > 64 - shift) writeWord(w + 1, mask >>> (64 - shift), word >>> (64 - shift));
+        }
+        updateSize(fromIndex + nBits);
+    }
+
+    /**
+     * Removes all the samples, the chunks shared with snapshots are left to them
+     */
+    public void clear(){
+        chunks = new long[1][];
+        owned = new long[1];
+        sharedChunks = false;
+        currentSize = 0;
+    }
+
+    /**
+     * Number of chunks this set can write without copying them, the ones not shared with a snapshot
+     */
+    public int getOwnedChunksCount(){
+        int count = 0;
+        for(long bits : owned) count += Long.bitCount(bits);
+        return count;
+    }
+
+    /**
+     * Memory used by the chunks, including the ones shared with snapshots, without the object headers
+     */
+    public long sizeInBytes(){
+        long size = 4L * chunks.length;
+        for(long[] chunk : chunks){
+            if(chunk != null) size += 8L * chunk.length;
+        }
+        return size;
+    }
+
+    @Override
+    public boolean get(int index) {
+        if(index < 0) throw new IndexOutOfBoundsException("index < 0: " + index);
+        return (getWord(index >>> 6) & (1L << index)) != 0;
+    }
+
+    @Override
+    public int length() {
+        return currentSize;
+    }
+
+    @Override
+    public int nextSetBit(int fromIndex) {
+        if(fromIndex < 0) throw new IndexOutOfBoundsException("fromIndex < 0: " + fromIndex);
+
+        long mask = -1L << fromIndex;
+        for(int c = chunkIndex(fromIndex); c < chunks.length; ++c){
+            final long[] chunk = chunks[c];
+            if(chunk != null){
+                for(int w = c == chunkIndex(fromIndex) ? (fromIndex >>> 6) % CHUNK_WORDS : 0; w < CHUNK_WORDS; ++w){
+                    long word = chunk[w] & mask;
+                    mask = -1L;
+                    if(word != 0) return (c << ADDRESS_SAMPLES_PER_CHUNK) + (w << 6) + Long.numberOfTrailingZeros(word);
+                }
+            }
+            mask = -1L;
+        }
+        return -1;
+    }
+
+    /**
+     * Index of the next bit set to '0' starting in the given index
+     * @param fromIndex where to start searching
+     * @return index of the next '0'. There is always one since samples not written are '0'
+     */
+    @Override
+    public int nextClearBit(int fromIndex) {
+        if(fromIndex < 0) throw new IndexOutOfBoundsException("fromIndex < 0: " + fromIndex);
+
+        long mask = -1L << fromIndex;
+        int c = chunkIndex(fromIndex);
+        for(; c < chunks.length; ++c){
+            final long[] chunk = chunks[c];
+            final int first = c == chunkIndex(fromIndex) ? (fromIndex >>> 6) % CHUNK_WORDS : 0;
+            if(chunk == null) return Math.max(fromIndex, c << ADDRESS_SAMPLES_PER_CHUNK);
+            for(int w = first; w < CHUNK_WORDS; ++w){
+                long word = ~chunk[w] & mask;
+                mask = -1L;
+                if(word != 0) return (c << ADDRESS_SAMPLES_PER_CHUNK) + (w << 6) + Long.numberOfTrailingZeros(word);
+            }
+            mask = -1L;
+        }
+        return Math.max(fromIndex, c << ADDRESS_SAMPLES_PER_CHUNK);
+    }
+
+    @Override
+    public long getWord(int wordIndex) {
+        if(wordIndex < 0) throw new IndexOutOfBoundsException("wordIndex < 0: " + wordIndex);
+        final long[] chunk = chunk(wordIndex / CHUNK_WORDS);
+        return chunk != null ? chunk[wordIndex % CHUNK_WORDS] : 0;
+    }
+
+    @Override
+    public String toString() {
+        return "ChunkedLogicBitSet{" + currentSize + " samples, " + chunks.length + " chunks, " +
+                getOwnedChunksCount() + " owned}";
+    }
+}
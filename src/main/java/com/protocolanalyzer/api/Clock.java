@@ -10,6 +10,11 @@ public class Clock extends Protocol{
 	public void decode(double startTime) {
 	}
 
+	@Override
+	protected int decodeChunk(LogicSignal data, LogicSignal clock, int fromIndex, long sampleOffset, boolean lastChunk) {
+		return data.length();
+	}
+
 	@Override
 	public ProtocolType getProtocol() {
 		return ProtocolType.CLOCK;
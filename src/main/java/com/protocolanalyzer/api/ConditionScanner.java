@@ -0,0 +1,127 @@
+package com.protocolanalyzer.api;
+
+import java.util.Arrays;
+
+/**
+ * Finds the samples where a condition over several channels is true, like "SDA falling while SCL high".
+ *  The condition is the AND of terms, each one being a channel state or edge, and it is tested 64 samples
+ *  at once combining the words of each channel. Between words without a match the search jumps to the first
+ *  sample where every term could be true, so long idle times cost a few word searches.
+ *
+ * <pre>
+ * {@code
+ * ConditionScanner start = new ConditionScanner()
+ *      .add(sda, ConditionScanner.Condition.FALLING)
+ *      .add(scl, ConditionScanner.Condition.HIGH);
+ * int index = start.next(fromIndex);
+ * }
+ * </pre>
+ */
+public class ConditionScanner {
+
+    /**
+     * Condition of one channel at a sample
+     */
+    public enum Condition {
+        /** Sample is '1' */
+        HIGH,
+        /** Sample is '0' */
+        LOW,
+        /** Sample is '1' and the previous one '0' */
+        RISING,
+        /** Sample is '0' and the previous one '1' */
+        FALLING
+    }
+
+    private LogicSignal[] signals = new LogicSignal[0];
+    private Condition[] conditions = new Condition[0];
+
+    /**
+     * Adds a term to the condition
+     * @param signal channel
+     * @param condition what the channel must be doing
+     * @return this scanner
+     */
+    public ConditionScanner add(LogicSignal signal, Condition condition){
+        signals = Arrays.copyOf(signals, signals.length + 1);
+        conditions = Arrays.copyOf(conditions, conditions.length + 1);
+        signals[signals.length - 1] = signal;
+        conditions[conditions.length - 1] = condition;
+        return this;
+    }
+
+    /**
+     * Samples where the condition may be true, the longest channel sets the end
+     */
+    private int length(){
+        int length = 0;
+        for(LogicSignal signal : signals) length = Math.max(length, signal.length());
+        return length;
+    }
+
+    /**
+     * Searches the next sample where all the terms are true
+     * @param fromIndex where to start searching
+     * @return index of the first sample at or after fromIndex where the condition is true, -1 if there isn't any
+     * @throws IndexOutOfBoundsException if fromIndex is negative
+     */
+    public int next(int fromIndex){
+        if(fromIndex < 0) throw new IndexOutOfBoundsException("fromIndex < 0: " + fromIndex);
+        if(signals.length == 0) return -1;
+
+        final int length = length();
+        int index = fromIndex;
+        while(index < length){
+            final int u = index >>> 6;
+            long match = -1L << index;
+            for(int t = 0; t < signals.length && match != 0; ++t){
+                match &= termWord(t, u);
+            }
+            if(match != 0){
+                int found = (u << 6) + Long.numberOfTrailingZeros(match);
+                return found < length ? found : -1;
+            }
+
+            // Jump to where every term can be true again
+            index = (u + 1) << 6;
+            for(int t = 0; t < signals.length && index != -1; ++t){
+                int bound = lowerBound(t, index);
+                index = bound == -1 ? -1 : Math.max(index, bound);
+            }
+            if(index == -1) return -1;
+        }
+        return -1;
+    }
+
+    /**
+     * Samples of a word where a term is true
+     */
+    private long termWord(int term, int wordIndex){
+        final LogicSignal signal = signals[term];
+        final long word = signal.getWord(wordIndex);
+        switch (conditions[term]){
+            case HIGH:      return word;
+            case LOW:       return ~word;
+            default:
+                final long previous = (word << 1) | (wordIndex > 0 ? signal.getWord(wordIndex - 1) >>> 63 : 0);
+                return conditions[term] == Condition.RISING ? word & ~previous : ~word & previous;
+        }
+    }
+
+    /**
+     * First sample at or after index where a term can be true
+     * @return sample index, -1 if the term can't be true anymore
+     */
+    private int lowerBound(int term, int index){
+        final LogicSignal signal = signals[term];
+        switch (conditions[term]){
+            case HIGH:
+            case RISING:    return signal.nextSetBit(index);
+            case LOW:       return signal.nextClearBit(index);
+            default:
+                // A falling edge comes after a '1'
+                final int set = signal.nextSetBit(index - 1);
+                return set == -1 ? -1 : set + 1;
+        }
+    }
+}
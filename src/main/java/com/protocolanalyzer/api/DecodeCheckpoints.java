@@ -0,0 +1,185 @@
+package com.protocolanalyzer.api;
+
+import com.protocolanalyzer.api.utils.PrintDebug;
+
+import java.util.Arrays;
+
+/**
+ * Points of a capture where a decoder can start again to decode only a part of it. They are found in a first
+ *  pass over the whole capture that doesn't keep the events: every {@code interval} samples, if the decoder is idle
+ *  (see {@link com.protocolanalyzer.api.Protocol#isDecoderIdle()}) the index where it continues is a checkpoint.
+ *  A new decoder started there with the settings of the first pass decodes the same than the whole decode does, like
+ *  the segments of {@link com.protocolanalyzer.api.Protocol#decodeParallel(double)}.
+ * The capture must not change after the checkpoints are found.
+ *
+ * <pre>
+ * {@code
+ * DecodeCheckpoints checkpoints = DecodeCheckpoints.build(uart, 0, DecodeCheckpoints.DEFAULT_INTERVAL);
+ * // Events shown from 1.5 s to 1.6 s
+ * DecodedEventStore events = checkpoints.decode(1.5, 1.6);
+ * }
+ * </pre>
+ */
+public final class DecodeCheckpoints {
+
+    private static final boolean DEBUG = false;
+    /** Default samples between checkpoints */
+    public static final int DEFAULT_INTERVAL = 1 << 16;
+
+    /** Decoder of the first pass, only used to create the decoders of the windows */
+    private final Protocol template;
+    private final LogicSignal data, clock;
+    private final long sampleOffset;
+    private final int interval;
+    /** Indexes of data where decoding can start, in increasing order. The first one is always 0. */
+    private final int[] checkpoints;
+
+    private DecodeCheckpoints(Protocol template, LogicSignal data, LogicSignal clock, long sampleOffset, int interval,
+                              int[] checkpoints){
+        this.template = template;
+        this.data = data;
+        this.clock = clock;
+        this.sampleOffset = sampleOffset;
+        this.interval = interval;
+        this.checkpoints = checkpoints;
+    }
+
+    /**
+     * Goes through the capture of the protocol finding the checkpoints. The protocol events are not changed.
+     * @param protocol configured decoder with its samples
+     * @param startTime offset of start time, like the one given to {@link com.protocolanalyzer.api.Protocol#decode(double)}
+     * @param interval samples between checkpoints
+     * @return checkpoints of the capture
+     * @throws IllegalArgumentException if the interval isn't positive or the protocol clock source isn't set
+     * @throws UnsupportedOperationException if the protocol can't create segment decoders, see
+     *  {@link com.protocolanalyzer.api.Protocol#decodeParallel(double)}
+     */
+    public static DecodeCheckpoints build(Protocol protocol, double startTime, int interval){
+        if(interval <= 0) throw new IllegalArgumentException("Interval must be positive");
+        if(protocol.hasClock() && protocol.getClockSource() == null)
+            throw new IllegalArgumentException("Clock source must be defined for " + protocol.getProtocol() + " protocol");
+
+        final LogicSignal data = protocol.getChannelSignal();
+        final LogicSignal clock = protocol.hasClock() ? protocol.getClockSource().getChannelSignal() : null;
+        final int length = data.length();
+        final long sampleOffset = protocol.timeToSample(startTime);
+
+        // Events of the first pass are not needed
+        Protocol decoder = protocol.newSegmentDecoder();
+        decoder.resetDecoder();
+        decoder.setEventSink(new EventFilter(null, Long.MIN_VALUE, Long.MAX_VALUE));
+
+        int[] checkpoints = new int[16];
+        int count = 1;
+        int resume = 0;
+        // Steps checked before adding them so limit doesn't overflow on captures near 2^31 samples
+        for(int limit = interval; limit < length; limit = length - limit > interval ? limit + interval : length){
+            resume = decoder.decodeChunk(new Protocol.StreamWindow(data, limit+1),
+                    clock == null ? null : new Protocol.StreamWindow(clock, limit+1), resume, sampleOffset, false);
+            if(decoder.isDecoderIdle() && resume > checkpoints[count-1] && resume < length){
+                if(count == checkpoints.length) checkpoints = Arrays.copyOf(checkpoints, 2*count);
+                checkpoints[count++] = resume;
+            }
+        }
+        if(DEBUG) PrintDebug.printInfo(count + " checkpoints in " + length + " samples");
+
+        return new DecodeCheckpoints(decoder, data, clock, sampleOffset, interval, Arrays.copyOf(checkpoints, count));
+    }
+
+    /**
+     * Decodes the events in the given time
+     * @param fromTime start time in seconds, including the offset of start time
+     * @param toTime end time in seconds, including the offset of start time
+     * @return events that have at least one sample in the given time
+     */
+    public DecodedEventStore decode(double fromTime, double toTime){
+        DecodedEventStore events = new DecodedEventStore();
+        decode(template.timeToSample(fromTime), template.timeToSample(toTime), events);
+        return events;
+    }
+
+    /**
+     * Decodes the events with at least one sample between the given ones, the same events and in the same order
+     *  than a decode of the whole capture. Decoding starts at the second checkpoint before fromSample and stops once
+     *  the decoder is idle after toSample.
+     * @param fromSample first sample, with the sample indexes of the events
+     * @param toSample last sample, with the sample indexes of the events
+     * @param sink where the events are added
+     */
+    public void decode(long fromSample, long toSample, DecodedEventSink sink){
+        final int length = data.length();
+        // Samples of data, clamped to it
+        final int from = (int)Math.max(0, Math.min(length, fromSample - sampleOffset));
+        final int to = (int)Math.max(0, Math.min(length, toSample - sampleOffset));
+
+        Protocol decoder = template.newSegmentDecoder();
+        decoder.setEventSink(new EventFilter(sink, fromSample, toSample));
+
+        // One checkpoint more, the last events decoded before a checkpoint may end a few samples after it
+        int resume = checkpoints[Math.max(0, checkpointBefore(from) - 1)];
+        int limit = resume;
+        while(true){
+            if(length - limit <= interval){
+                decoder.decodeChunk(data, clock, resume, sampleOffset, true);
+                return;
+            }
+            limit += interval;
+            resume = decoder.decodeChunk(new Protocol.StreamWindow(data, limit+1),
+                    clock == null ? null : new Protocol.StreamWindow(clock, limit+1), resume, sampleOffset, false);
+            // Nothing in progress after the last sample, the next events start after it
+            if(resume > to && decoder.isDecoderIdle()) return;
+        }
+    }
+
+    /**
+     * @return position in {@link #checkpoints} of the last checkpoint not after the given index
+     */
+    private int checkpointBefore(int index){
+        int n = Arrays.binarySearch(checkpoints, index);
+        return n >= 0 ? n : -n - 2;
+    }
+
+    /**
+     * @return number of checkpoints, including the one at the first sample
+     */
+    public int getCount(){
+        return checkpoints.length;
+    }
+
+    /**
+     * @param n checkpoint number
+     * @return sample index of the checkpoint, with the sample indexes of the events
+     */
+    public long getCheckpointSample(int n){
+        return checkpoints[n] + sampleOffset;
+    }
+
+    /**
+     * Forwards the events that overlap a range of samples
+     */
+    private static final class EventFilter implements DecodedEventSink {
+
+        private final DecodedEventSink sink;
+        private final long fromSample, toSample;
+
+        EventFilter(DecodedEventSink sink, long fromSample, long toSample){
+            this.sink = sink;
+            this.fromSample = fromSample;
+            this.toSample = toSample;
+        }
+
+        private boolean accept(long startSample, long endSample){
+            return sink != null && startSample <= toSample && endSample >= fromSample;
+        }
+
+        @Override
+        public void addEvent(Kind kind, int payload, int bits, long startSample, long endSample) {
+            if(accept(startSample, endSample)) sink.addEvent(kind, payload, bits, startSample, endSample);
+        }
+
+        @Override
+        public void addText(String text, long startSample, long endSample) {
+            if(accept(startSample, endSample)) sink.addText(text, startSample, endSample);
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package com.protocolanalyzer.api;
+
+/**
+ * Decoder state and decoded events of one {@link com.protocolanalyzer.api.DecoderSpec}. A context isn't thread
+ *  safe but it can decode any number of captures, one after the other, reusing its buffers.
+ */
+public final class DecodeContext {
+
+    /** Decoder created from the spec, only used by this context */
+    private final Protocol decoder;
+
+    DecodeContext(Protocol decoder){
+        this.decoder = decoder;
+    }
+
+    /**
+     * Decodes a whole capture replacing the events of the previous one
+     * @param data samples of the channel
+     * @param clock samples of the clock channel, ignored if the protocol doesn't use a clock
+     * @param startTime offset of start time
+     * @return decoded events, the same store on every call so it is only valid until the next decode
+     * @throws IllegalArgumentException if the protocol uses a clock and it isn't given
+     */
+    public DecodedEventStore decode(LogicSignal data, LogicSignal clock, double startTime){
+        if(decoder.hasClock() && clock == null)
+            throw new IllegalArgumentException("Clock must be given for " + decoder.getProtocol() + " protocol");
+
+        decoder.mDecodedData.clear();
+        decoder.resetDecoder();
+        decoder.decodeChunk(data, decoder.hasClock() ? clock : null, 0, decoder.timeToSample(startTime), true);
+        return decoder.mDecodedData;
+    }
+
+    /**
+     * @return events of the last decode
+     */
+    public DecodedEventStore getEvents(){
+        return decoder.mDecodedData;
+    }
+}
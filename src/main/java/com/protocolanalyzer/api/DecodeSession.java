@@ -0,0 +1,190 @@
+package com.protocolanalyzer.api;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Decodes every {@link com.protocolanalyzer.api.Protocol} of a capture at the same time, like the list given to
+ *  {@link com.protocolanalyzer.api.LogicHelper#bufferToChannel(byte[], Protocol[])}.
+ * The samples are only read while decoding. A {@link com.protocolanalyzer.api.Clock} shared by several decoders
+ *  is handled first: it is decoded if it is in the list and its edge index, when enabled, is built once so the
+ *  decoders using it don't build it at the same time. Decoders without dependencies start right away.
+ *
+ * <pre>
+ * {@code
+ * DecodeSession session = new DecodeSession(i2c, uart, spi, clock);
+ * for(DecodeSession.Result result : session.decode(0)){
+ *     System.out.println(result.getProtocol().getProtocol() + " " + result.getDecodeNanos() + " ns");
+ * }
+ * }
+ * </pre>
+ */
+public class DecodeSession {
+
+    private final List<Protocol> protocols = new ArrayList<>();
+
+    /**
+     * @param protocols decoders to run, null entries are skipped and a decoder given twice is decoded once
+     */
+    public DecodeSession(Protocol... protocols){
+        for(Protocol protocol : protocols){
+            if(protocol != null && !containsSame(this.protocols, protocol)) this.protocols.add(protocol);
+        }
+    }
+
+    private static boolean containsSame(List<Protocol> list, Protocol protocol){
+        for(Protocol p : list){
+            if(p == protocol) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Decodes all the protocols on the common {@link java.util.concurrent.ForkJoinPool}
+     * @see #decode(double, java.util.concurrent.Executor)
+     */
+    public List<Result> decode(double startTime){
+        return decode(startTime, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Decodes all the protocols waiting until all of them are done. A decoder throwing an exception doesn't
+     *  stop the others, the exception is kept in its {@link Result}.
+     *
+     * @param startTime offset of start time given to each {@link com.protocolanalyzer.api.Protocol#decode(double)}
+     * @param executor where the decoders run
+     * @return one result for each protocol in the same order they were given
+     */
+    public List<Result> decode(final double startTime, final Executor executor){
+        final long sessionStart = System.nanoTime();
+
+        // Clocks go first, the listed ones and the ones used by listed decoders
+        final Map<Clock, CompletableFuture<Result>> clocks = new IdentityHashMap<>();
+        final Map<Protocol, CompletableFuture<Result>> tasks = new IdentityHashMap<>();
+        for(Protocol protocol : protocols){
+            Clock clock = protocol instanceof Clock ? (Clock)protocol : protocol.getClockSource();
+            if(clock != null && !clocks.containsKey(clock)){
+                final boolean listed = containsSame(protocols, clock);
+                CompletableFuture<Result> task = CompletableFuture.supplyAsync(
+                        () -> run(clock, startTime, sessionStart, listed), executor);
+                clocks.put(clock, task);
+                if(listed) tasks.put(clock, task);
+            }
+        }
+
+        for(final Protocol protocol : protocols){
+            if(tasks.containsKey(protocol)) continue;
+
+            CompletableFuture<Result> clock = protocol.getClockSource() != null ? clocks.get(protocol.getClockSource()) : null;
+            if(clock == null){
+                tasks.put(protocol, CompletableFuture.supplyAsync(() -> run(protocol, startTime, sessionStart, true), executor));
+            }else{
+                // Results of failed clocks are kept, the decoder runs anyway
+                tasks.put(protocol, clock.handle((result, error) -> null)
+                        .thenApplyAsync(ignored -> run(protocol, startTime, sessionStart, true), executor));
+            }
+        }
+
+        List<Result> results = new ArrayList<>(protocols.size());
+        for(Protocol protocol : protocols){
+            try {
+                results.add(tasks.get(protocol).join());
+            } catch (CompletionException e) {
+                // The task itself catches the decoder exceptions, this is an error of the executor
+                results.add(new Result(protocol, e.getCause(), 0, 0));
+            }
+        }
+        return Collections.unmodifiableList(results);
+    }
+
+    /**
+     * Decodes one protocol, or only prepares it when it is a clock that isn't in the list
+     */
+    private static Result run(Protocol protocol, double startTime, long sessionStart, boolean decode){
+        final long start = System.nanoTime();
+        try {
+            if(decode) protocol.decode(startTime);
+            if(protocol instanceof Clock){
+                LogicSignal signal = protocol.getChannelSignal();
+                if(signal instanceof LogicBitSet) ((LogicBitSet)signal).getEdgeIndex();
+            }
+            return new Result(protocol, null, start - sessionStart, System.nanoTime() - start);
+        } catch (RuntimeException e) {
+            return new Result(protocol, e, start - sessionStart, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * @return protocols decoded by this session
+     */
+    public List<Protocol> getProtocols(){
+        return Collections.unmodifiableList(protocols);
+    }
+
+    /**
+     * Outcome of one decoder
+     */
+    public static final class Result {
+
+        private final Protocol protocol;
+        private final Throwable error;
+        private final long startNanos;
+        private final long decodeNanos;
+
+        Result(Protocol protocol, Throwable error, long startNanos, long decodeNanos){
+            this.protocol = protocol;
+            this.error = error;
+            this.startNanos = startNanos;
+            this.decodeNanos = decodeNanos;
+        }
+
+        public Protocol getProtocol(){
+            return protocol;
+        }
+
+        /**
+         * @return decoded events, the same store returned by {@link com.protocolanalyzer.api.Protocol#getDecodedEvents()}
+         */
+        public DecodedEventStore getEvents(){
+            return protocol.getDecodedEvents();
+        }
+
+        /**
+         * @return exception thrown by the decoder, null if it finished
+         */
+        public Throwable getError(){
+            return error;
+        }
+
+        public boolean isSuccessful(){
+            return error == null;
+        }
+
+        /**
+         * @return nanoseconds between the start of the session and the start of this decoder
+         */
+        public long getStartNanos(){
+            return startNanos;
+        }
+
+        /**
+         * @return nanoseconds this decoder took
+         */
+        public long getDecodeNanos(){
+            return decodeNanos;
+        }
+
+        @Override
+        public String toString() {
+            return protocol.getProtocol() + (error != null ? " failed: " + error : " " + getEvents().size() + " events") +
+                    String.format(" in %.3f ms", decodeNanos / 1e6);
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.protocolanalyzer.api;
+
+/**
+ * Receives the events found by a {@link com.protocolanalyzer.api.Protocol} decoder. Events are plain values
+ *  (kind, payload and sample indexes) so decoding doesn't create any object per event, the text shown for
+ *  an event is created only when it is displayed.
+ *
+ * @see com.protocolanalyzer.api.DecodedEventStore
+ */
+public interface DecodedEventSink {
+
+    /**
+     * Decoded event kinds
+     */
+    enum Kind {
+        // I2C
+        START("S"), REPEATED_START("Sr"), STOP("P"), READ("\\R"), WRITE("\\W"), ACK("ACK"), NAK("NAK"),
+        ADDRESS(null), BUS_ERROR("E"),
+        // UART
+        START_BIT("[S]"), STOP_BIT("[SP]"), STOP_BIT_1("[SP1]"), STOP_BIT_2("[SP2]"), PARITY_OK("[P]"), PARITY_ERROR("[P*]"),
+        // SPI, WORD holds the data of the decoder channel and MISO_WORD the data of the MISO line
+        CHIP_SELECT("[CS]"), CHIP_DESELECT("[/CS]"), MISO_WORD(null),
+        // Data
+        DATA(null), WORD(null),
+        // Text added with Protocol.addString()
+        TEXT(null);
+
+        private final String label;
+        private Kind(String label){
+            this.label = label;
+        }
+
+        /**
+         * Text shown for this kind of event
+         * @param payload event payload
+         * @param bits number of bits of the payload
+         * @return text for the event, for {@link #TEXT} events it is null because the text is held by the store
+         */
+        public String format(int payload, int bits){
+            switch (this){
+                case ADDRESS:   return "A(" + payload + ")";
+                case DATA:      return Integer.toString(payload);
+                case WORD:      return bits + "b " + payload;
+                case MISO_WORD: return "MISO " + bits + "b " + payload;
+                default:        return label;
+            }
+        }
+    }
+
+    /**
+     * Adds a decoded event
+     * @param kind event kind
+     * @param payload data of the event, for example the data byte or the address. 0 if the kind doesn't have data.
+     * @param bits number of bits of payload, 0 if the kind doesn't have data
+     * @param startSample index of the first sample of the event
+     * @param endSample index of the last sample of the event
+     */
+    void addEvent(Kind kind, int payload, int bits, long startSample, long endSample);
+
+    /**
+     * Adds a {@link Kind#TEXT} event with a custom text
+     * @param text text of the event
+     * @param startSample index of the first sample of the event
+     * @param endSample index of the last sample of the event
+     */
+    void addText(String text, long startSample, long endSample);
+
+}
@@ -0,0 +1,336 @@
+package com.protocolanalyzer.api;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * {@link com.protocolanalyzer.api.DecodedEventSink} keeping the events in parallel primitive arrays, one
+ *  per field, so adding an event doesn't create any object.
+ * Events keep the order they were added in. The time queries ({@link #findStarting(long, long)},
+ *  {@link #findOverlapping(long, long)} and {@link #findNearest(long)}) use an index by start sample that is
+ *  built on the first query after adding events, it only needs sorting when the events were not added in order.
+ *  Along with the start order a tree keeps the greatest end sample of each range of it, so the events that
+ *  span a window edge or the sample of the cursor are found without going through the ones before.
+ */
+public class DecodedEventStore implements DecodedEventSink {
+
+    private static final Kind[] KINDS = Kind.values();
+
+    private byte[] kinds;
+    private byte[] bits;
+    private int[] payloads;
+    private long[] startSamples;
+    private long[] endSamples;
+    private int size = 0;
+    /** Texts of the {@link Kind#TEXT} events, their payload is the index in this list */
+    private final List<String> texts = new ArrayList<String>();
+
+    /** Whether the events were added in order of start sample */
+    private boolean sorted = true;
+    /** Events in order of start sample, null while {@link #sorted} as then it is the order they were added */
+    private int[] order = null;
+    /**
+     * Tree of the greatest end sample of the events in the start order, node 1 is the root, the children of node n
+     *  are 2n and 2n+1 and position p of the start order is the leaf {@link #leaves} + p
+     */
+    private long[] maxEnd = new long[0];
+    /** Leaves of {@link #maxEnd}, a power of 2. 0 when it has to be built again. */
+    private int leaves = 0;
+    /** Number of events in the index */
+    private int indexedSize = 0;
+
+    public DecodedEventStore(){
+        this(64);
+    }
+
+    /**
+     * @param capacity number of events that can be held without growing the internal storage
+     */
+    public DecodedEventStore(int capacity){
+        capacity = Math.max(capacity, 1);
+        kinds = new byte[capacity];
+        bits = new byte[capacity];
+        payloads = new int[capacity];
+        startSamples = new long[capacity];
+        endSamples = new long[capacity];
+    }
+
+    private void ensureCapacity(int capacity){
+        if(capacity <= kinds.length) return;
+
+        int newCapacity = Math.max(capacity, kinds.length + (kinds.length >> 1));
+        kinds = Arrays.copyOf(kinds, newCapacity);
+        bits = Arrays.copyOf(bits, newCapacity);
+        payloads = Arrays.copyOf(payloads, newCapacity);
+        startSamples = Arrays.copyOf(startSamples, newCapacity);
+        endSamples = Arrays.copyOf(endSamples, newCapacity);
+    }
+
+    @Override
+    public void addEvent(Kind kind, int payload, int bits, long startSample, long endSample) {
+        ensureCapacity(size + 1);
+        if(size > 0 && startSample < startSamples[size-1]) sorted = false;
+        this.kinds[size] = (byte)kind.ordinal();
+        this.bits[size] = (byte)bits;
+        this.payloads[size] = payload;
+        this.startSamples[size] = startSample;
+        this.endSamples[size] = endSample;
+        ++size;
+    }
+
+    @Override
+    public void addText(String text, long startSample, long endSample){
+        texts.add(text);
+        addEvent(Kind.TEXT, texts.size()-1, 0, startSample, endSample);
+    }
+
+    /**
+     * Adds all the events of another store to this one
+     * @param sink where to add the events
+     */
+    public void copyTo(DecodedEventSink sink){
+        for(int n = 0; n < size; ++n){
+            if(kinds[n] == Kind.TEXT.ordinal()){
+                sink.addText(texts.get(payloads[n]), startSamples[n], endSamples[n]);
+            }else{
+                sink.addEvent(KINDS[kinds[n]], payloads[n], bits[n], startSamples[n], endSamples[n]);
+            }
+        }
+    }
+
+    /**
+     * Removes all the events
+     */
+    public void clear(){
+        size = 0;
+        texts.clear();
+        sorted = true;
+        order = null;
+        leaves = 0;
+        indexedSize = 0;
+    }
+
+    public int size(){
+        return size;
+    }
+
+    public Kind getKind(int index){
+        checkIndex(index);
+        return KINDS[kinds[index]];
+    }
+
+    public int getPayload(int index){
+        checkIndex(index);
+        return payloads[index];
+    }
+
+    public int getBits(int index){
+        checkIndex(index);
+        return bits[index];
+    }
+
+    public long getStartSample(int index){
+        checkIndex(index);
+        return startSamples[index];
+    }
+
+    public long getEndSample(int index){
+        checkIndex(index);
+        return endSamples[index];
+    }
+
+    /**
+     * Text shown for the event
+     * @param index event index
+     * @return text shown for the event
+     * @see com.protocolanalyzer.api.DecodedEventSink.Kind#format(int, int)
+     */
+    public String getString(int index){
+        Kind kind = getKind(index);
+        if(kind == Kind.TEXT) return texts.get(payloads[index]);
+        return kind.format(payloads[index], bits[index]);
+    }
+
+    /**
+     * Events starting between the given samples
+     * @param fromSample first sample
+     * @param toSample last sample
+     * @return indexes of the events in order of start sample
+     */
+    public int[] findStarting(long fromSample, long toSample){
+        updateIndex();
+        final int from = firstStartingAfter(fromSample - 1);
+        final int to = firstStartingAfter(toSample);
+        int[] events = new int[Math.max(0, to - from)];
+        for(int p = from; p < to; ++p) events[p - from] = event(p);
+        return events;
+    }
+
+    /**
+     * Events with at least one sample between the given ones, including the ones that start before fromSample
+     *  and end after it. Only the events found are visited, each one in O(log n), so a long event that spans
+     *  many others doesn't make the query go through them.
+     * @param fromSample first sample
+     * @param toSample last sample
+     * @return indexes of the events in order of start sample
+     */
+    public int[] findOverlapping(long fromSample, long toSample){
+        updateIndex();
+        final int to = firstStartingAfter(toSample);
+
+        int[] events = new int[16];
+        int count = 0;
+        for(int p = nextReaching(0, fromSample); p < to; p = nextReaching(p + 1, fromSample)){
+            if(count == events.length) events = Arrays.copyOf(events, 2 * count);
+            events[count++] = event(p);
+        }
+        return Arrays.copyOf(events, count);
+    }
+
+    /**
+     * Event nearest to a sample, like the one under the cursor, found in O(log n). The distance to an event is the
+     *  one to its start or end, 0 if it contains the sample. When several events contain the sample the one that
+     *  starts last is taken, and between an event before the sample and one after it at the same distance the one
+     *  after.
+     * @param sample sample index
+     * @return index of the event, -1 if there are no events
+     */
+    public int findNearest(long sample){
+        updateIndex();
+        if(size == 0) return -1;
+
+        final int after = firstStartingAfter(sample);
+        final int next = after < size ? event(after) : -1;
+        if(after == 0) return next;
+
+        // The last one to start that contains the sample, or if none does the last one ending the latest
+        final long end = Math.min(sample, maxEndBefore(after));
+        final int previous = event(previousReaching(after - 1, end));
+        if(end >= sample || next == -1 || sample - endSamples[previous] < startSamples[next] - sample) return previous;
+        return next;
+    }
+
+    /**
+     * @return first position of the start order with a start sample greater than the given one
+     */
+    private int firstStartingAfter(long sample){
+        int low = 0, high = size;
+        while(low < high){
+            int mid = (low + high) >>> 1;
+            if(startSamples[event(mid)] <= sample) low = mid + 1;
+            else high = mid;
+        }
+        return low;
+    }
+
+    /**
+     * @return index of the event at the given position of the start order
+     */
+    private int event(int position){
+        return order == null ? position : order[position];
+    }
+
+    /**
+     * @return greatest end sample of the events before the given position of the start order
+     */
+    private long maxEndBefore(int position){
+        long max = Long.MIN_VALUE;
+        for(int low = leaves, high = leaves + position; low < high; low >>>= 1, high >>>= 1){
+            if((low & 1) != 0) max = Math.max(max, maxEnd[low++]);
+            if((high & 1) != 0) max = Math.max(max, maxEnd[--high]);
+        }
+        return max;
+    }
+
+    /**
+     * @return first position of the start order from the given one whose event ends at or after sample, a position
+     *  not before {@link #size} if there is none
+     */
+    private int nextReaching(int position, long sample){
+        if(position >= leaves) return leaves;
+        int node = leaves + position;
+        if(maxEnd[node] >= sample) return position;
+        // Up until a subtree to the right has one, then down to its first one
+        while(true){
+            if(node == 1) return leaves;
+            if((node & 1) == 0 && maxEnd[node + 1] >= sample){
+                ++node;
+                break;
+            }
+            node >>>= 1;
+        }
+        while(node < leaves) node = maxEnd[2 * node] >= sample ? 2 * node : 2 * node + 1;
+        return node - leaves;
+    }
+
+    /**
+     * @return last position of the start order up to the given one whose event ends at or after sample, -1 if
+     *  there is none
+     */
+    private int previousReaching(int position, long sample){
+        int node = leaves + position;
+        if(maxEnd[node] >= sample) return position;
+        // Up until a subtree to the left has one, then down to its last one
+        while(true){
+            if(node == 1) return -1;
+            if((node & 1) != 0 && maxEnd[node - 1] >= sample){
+                --node;
+                break;
+            }
+            node >>>= 1;
+        }
+        while(node < leaves) node = maxEnd[2 * node + 1] >= sample ? 2 * node + 1 : 2 * node;
+        return node - leaves;
+    }
+
+    /**
+     * Adds the events added since the last query to the index
+     */
+    private void updateIndex(){
+        if(indexedSize == size) return;
+
+        if(!sorted){
+            // Stable so events starting at the same sample keep the order they were added in
+            order = new int[size];
+            for(int n = 0; n < size; ++n) order[n] = n;
+            mergeSort(order, new int[size], 0, size);
+        }
+        if(!sorted || size > leaves){
+            // Built again with room for the events that can be added without growing the storage
+            leaves = Integer.highestOneBit(Math.max(kinds.length, 1));
+            if(leaves < kinds.length) leaves <<= 1;
+            maxEnd = new long[2 * leaves];
+            Arrays.fill(maxEnd, Long.MIN_VALUE);
+            for(int p = 0; p < size; ++p) maxEnd[leaves + p] = endSamples[event(p)];
+            for(int node = leaves - 1; node > 0; --node) maxEnd[node] = Math.max(maxEnd[2 * node], maxEnd[2 * node + 1]);
+        }else{
+            for(int p = indexedSize; p < size; ++p){
+                final long end = endSamples[p];
+                for(int node = leaves + p; node > 0 && maxEnd[node] < end; node >>>= 1) maxEnd[node] = end;
+            }
+        }
+        indexedSize = size;
+    }
+
+    /**
+     * Sorts the event indexes from 'from' to 'to' - 1 by start sample
+     */
+    private void mergeSort(int[] events, int[] scratch, int from, int to){
+        if(to - from < 2) return;
+        final int mid = (from + to) >>> 1;
+        mergeSort(events, scratch, from, mid);
+        mergeSort(events, scratch, mid, to);
+        if(startSamples[events[mid-1]] <= startSamples[events[mid]]) return;
+
+        System.arraycopy(events, from, scratch, from, to - from);
+        for(int n = from, a = from, b = mid; n < to; ++n){
+            if(b >= to || (a < mid && startSamples[scratch[a]] <= startSamples[scratch[b]])) events[n] = scratch[a++];
+            else events[n] = scratch[b++];
+        }
+    }
+
+    private void checkIndex(int index){
+        if(index < 0 || index >= size) throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+    }
+}
@@ -0,0 +1,72 @@
+package com.protocolanalyzer.api;
+
+/**
+ * Settings of a decoder that can't be changed, taken from a configured {@link com.protocolanalyzer.api.Protocol}.
+ * A spec can be shared by any number of threads, each of them decodes with its own
+ *  {@link com.protocolanalyzer.api.DecodeContext} which keeps the decoder state and the decoded events.
+ *
+ * <pre>
+ * {@code
+ * UARTProtocol uart = new UARTProtocol(sampleRate);
+ * uart.setBaudRate(115200);
+ * DecoderSpec spec = DecoderSpec.of(uart);
+ *
+ * // On each worker thread
+ * DecodeContext context = spec.newContext();
+ * DecodedEventStore events = context.decode(samples, null, 0);
+ * }
+ * </pre>
+ */
+public final class DecoderSpec {
+
+    /** Decoder with the settings, it never decodes so it can be read from any thread */
+    private final Protocol template;
+
+    private DecoderSpec(Protocol template){
+        this.template = template;
+    }
+
+    /**
+     * Takes the settings of a decoder, changes made to it later don't change the spec
+     * @param protocol configured decoder
+     * @return spec with the settings of the decoder
+     * @throws IllegalArgumentException if the decoder reads lines other than its channel and clock, like
+     *  the MISO and chip select lines of {@link com.protocolanalyzer.api.SPIProtocol}
+     * @throws UnsupportedOperationException if the protocol can't create segment decoders, see
+     *  {@link com.protocolanalyzer.api.Protocol#decodeParallel(double)}
+     */
+    public static DecoderSpec of(Protocol protocol){
+        if(protocol instanceof SPIProtocol){
+            SPIProtocol spi = (SPIProtocol)protocol;
+            if(spi.getMisoSource() != null || spi.getChipSelectSource() != null)
+                throw new IllegalArgumentException("SPI decoder with MISO or chip select lines can't be used as a spec");
+        }
+
+        Protocol template = protocol.newSegmentDecoder();
+        // Only the settings are kept, not what was measured on the last capture
+        template.resetDecoder();
+        return new DecoderSpec(template);
+    }
+
+    /**
+     * @return new context to decode with these settings, to be used by one thread at a time
+     */
+    public DecodeContext newContext(){
+        return new DecodeContext(template.newSegmentDecoder());
+    }
+
+    public Protocol.ProtocolType getProtocol(){
+        return template.getProtocol();
+    }
+
+    /**
+     * @return true if the clock samples must be given to {@link com.protocolanalyzer.api.DecodeContext#decode(LogicSignal, LogicSignal, double)}
+     */
+    public boolean hasClock(){
+        return template.hasClock();
+    }
+
+    public long getSampleFrequency(){
+        return template.getSampleFrequency();
+    }
+}
@@ -0,0 +1,244 @@
+package com.protocolanalyzer.api;
+
+import com.protocolanalyzer.api.utils.PrintDebug;
+
+import java.io.Closeable;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+
+/**
+ * One bit per sample kept outside the Java heap in a direct {@link java.nio.ByteBuffer}, so big captures don't
+ *  need huge arrays in the heap. The memory is released with {@link #close()}, after that the samples
+ *  can't be used anymore.
+ */
+public class DirectLogicBitSet implements WritableLogicSignal, Closeable {
+
+    private static final int ADDRESS_BITS_PER_WORD = 6;
+    private static final int BITS_PER_WORD = 1 << ADDRESS_BITS_PER_WORD;
+    private static final long WORD_MASK = 0xFFFFFFFFFFFFFFFFL;
+
+    private ByteBuffer memory;
+    private LongBuffer words;
+    /** Number of samples */
+    private int currentSize = 0;
+
+    /**
+     * @param size number of samples that can be held without growing the memory
+     */
+    public DirectLogicBitSet(int size){
+        if(size < 0) throw new NegativeArraySizeException("size < 0: " + size);
+        allocate(Math.max(wordIndex(size-1) + 1, 1));
+    }
+
+    private static int wordIndex(int bitIndex){
+        return bitIndex >> ADDRESS_BITS_PER_WORD;
+    }
+
+    private void allocate(int nWords){
+        memory = ByteBuffer.allocateDirect(nWords * 8).order(ByteOrder.nativeOrder());
+        words = memory.asLongBuffer();
+    }
+
+    private LongBuffer words(){
+        if(words == null) throw new IllegalStateException("DirectLogicBitSet is closed");
+        return words;
+    }
+
+    /**
+     * Grows the memory so the given word exists, new words are '0'
+     */
+    private void expandTo(int wordIndex){
+        final LongBuffer current = words();
+        if(wordIndex < current.capacity()) return;
+
+        ByteBuffer oldMemory = memory;
+        allocate(Math.max(wordIndex + 1, current.capacity() + (current.capacity() >> 1)));
+        for(int n = 0; n < current.capacity(); ++n) words.put(n, current.get(n));
+        free(oldMemory);
+    }
+
+    private void updateSize(int size){
+        if(size > currentSize) currentSize = size;
+    }
+
+    @Override
+    public boolean get(int index) {
+        if(index < 0) throw new IndexOutOfBoundsException("index < 0: " + index);
+        final LongBuffer w = words();
+        final int u = wordIndex(index);
+        return u < w.capacity() && (w.get(u) & (1L << index)) != 0;
+    }
+
+    @Override
+    public int length() {
+        return currentSize;
+    }
+
+    public void set(int index){
+        set(index, true);
+    }
+
+    public void set(int index, boolean value){
+        if(index < 0) throw new IndexOutOfBoundsException("index < 0: " + index);
+        final int u = wordIndex(index);
+        expandTo(u);
+        if(value) words.put(u, words.get(u) | (1L << index));
+        else words.put(u, words.get(u) & ~(1L << index));
+        updateSize(index + 1);
+    }
+
+    /**
+     * Sets the samples from fromIndex (inclusive) to toIndex (exclusive) to the given value
+     */
+    public void set(int fromIndex, int toIndex, boolean value){
+        if(fromIndex < 0 || toIndex < fromIndex)
+            throw new IndexOutOfBoundsException("fromIndex: " + fromIndex + ", toIndex: " + toIndex);
+        if(fromIndex == toIndex) return;
+
+        expandTo(wordIndex(toIndex - 1));
+        for(int n = fromIndex; n < toIndex; ){
+            final int end = Math.min(toIndex, (n | (BITS_PER_WORD - 1)) + 1);
+            final long mask = (WORD_MASK << n) & (WORD_MASK >>> -end);
+            final int u = wordIndex(n);
+            words.put(u, value ? words.get(u) | mask : words.get(u) & ~mask);
+            n = end;
+        }
+        updateSize(toIndex);
+    }
+
+    /**
+     * Copies nBits samples from the given words starting at fromIndex, overwriting the samples
+     *  already there
+     * @param fromIndex index of the first sample to write
+     * @param src samples to write where bit 0 of src[0] is the first sample
+     * @param nBits number of samples to write
+     * @see com.protocolanalyzer.api.LogicBitSet#setWords(int, long[], int)
+     */
+    public void setWords(int fromIndex, long[] src, int nBits){
+        if(fromIndex < 0) throw new IndexOutOfBoundsException("fromIndex < 0: " + fromIndex);
+        if(nBits <= 0) return;
+
+        final int toIndex = fromIndex + nBits;
+        final int startWord = wordIndex(fromIndex);
+        final int shift = fromIndex & (BITS_PER_WORD - 1);
+        final int srcWords = wordIndex(nBits - 1) + 1;
+        expandTo(wordIndex(toIndex - 1));
+
+        for(int n = 0; n < srcWords; ++n){
+            int bits = Math.min(BITS_PER_WORD, nBits - (n << ADDRESS_BITS_PER_WORD));
+            long mask = WORD_MASK >>> (BITS_PER_WORD - bits);
+            long word = src[n] & mask;
+
+            // Low part goes in this word, the part that doesn't fit goes in the next one
+            words.put(startWord+n, (words.get(startWord+n) & ~(mask << shift)) | (word << shift));
+            if(shift != 0 && bits + shift > BITS_PER_WORD){
+                long highMask = mask >>> (BITS_PER_WORD - shift);
+                words.put(startWord+n+1, (words.get(startWord+n+1) & ~highMask) | (word >>> (BITS_PER_WORD - shift)));
+            }
+        }
+        updateSize(toIndex);
+    }
+
+    @Override
+    public long getWord(int wordIndex){
+        if(wordIndex < 0) throw new IndexOutOfBoundsException("wordIndex < 0: " + wordIndex);
+        final LongBuffer w = words();
+        return wordIndex < w.capacity() ? w.get(wordIndex) : 0;
+    }
+
+    /**
+     * Removes all the samples keeping the memory
+     */
+    public void clear(){
+        final LongBuffer w = words();
+        for(int n = 0; n <= wordIndex(currentSize - 1) && n < w.capacity(); ++n) w.put(n, 0);
+        currentSize = 0;
+    }
+
+    @Override
+    public int nextSetBit(int fromIndex) {
+        if(fromIndex < 0) throw new IndexOutOfBoundsException("fromIndex < 0: " + fromIndex);
+        final LongBuffer w = words();
+        if(fromIndex >= currentSize) return -1;
+
+        final int lastWord = wordIndex(currentSize - 1);
+        int u = wordIndex(fromIndex);
+        long word = w.get(u) & (WORD_MASK << fromIndex);
+        while(true){
+            if(word != 0){
+                int index = (u * BITS_PER_WORD) + Long.numberOfTrailingZeros(word);
+                return index < currentSize ? index : -1;
+            }
+            if(++u > lastWord) return -1;
+            word = w.get(u);
+        }
+    }
+
+    @Override
+    public int nextClearBit(int fromIndex) {
+        if(fromIndex < 0) throw new IndexOutOfBoundsException("fromIndex < 0: " + fromIndex);
+        final LongBuffer w = words();
+        if(fromIndex >= currentSize) return fromIndex;
+
+        final int lastWord = wordIndex(currentSize - 1);
+        int u = wordIndex(fromIndex);
+        long word = ~w.get(u) & (WORD_MASK << fromIndex);
+        while(true){
+            if(word != 0) return Math.min((u * BITS_PER_WORD) + Long.numberOfTrailingZeros(word), currentSize);
+            if(++u > lastWord) return currentSize;
+            word = ~w.get(u);
+        }
+    }
+
+    /**
+     * Whether {@link #close()} was called
+     */
+    public boolean isClosed(){
+        return words == null;
+    }
+
+    /**
+     * Releases the memory of the samples
+     */
+    @Override
+    public void close(){
+        if(memory == null) return;
+        ByteBuffer oldMemory = memory;
+        memory = null;
+        words = null;
+        currentSize = 0;
+        free(oldMemory);
+    }
+
+    /** sun.misc.Unsafe#invokeCleaner(ByteBuffer) and its Unsafe instance, null if the runtime doesn't have it */
+    private static Method invokeCleaner;
+    private static Object unsafe;
+    static {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            unsafe = field.get(null);
+            invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+        } catch (Exception e) {
+            // Java 8 or a runtime without Unsafe, direct memory is released when the buffer is collected
+            invokeCleaner = null;
+        }
+    }
+
+    /**
+     * Releases the memory of a direct buffer right now if the runtime allows it, otherwise it is released
+     *  when the buffer is collected
+     */
+    private static void free(ByteBuffer buffer){
+        if(invokeCleaner == null) return;
+        try {
+            invokeCleaner.invoke(unsafe, buffer);
+        } catch (Exception e) {
+            PrintDebug.printWarning("Direct memory couldn't be released: " + e);
+        }
+    }
+}
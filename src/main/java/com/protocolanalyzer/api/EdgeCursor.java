@@ -0,0 +1,89 @@
+package com.protocolanalyzer.api;
+
+/**
+ * Walks the edges of a {@link com.protocolanalyzer.api.LogicSignal} remembering where the last edge was
+ *  found. When the signal is a {@link com.protocolanalyzer.api.LogicBitSet} with the edge index enabled,
+ *  searching forward from the previous result is O(1) amortized, otherwise the searches go to the signal.
+ * A cursor is meant to be used by a single decode, it is not thread safe.
+ *
+ * @see com.protocolanalyzer.api.LogicBitSet#setEdgeIndexEnabled(boolean)
+ */
+public class EdgeCursor {
+
+    private final LogicSignal signal;
+    private LogicBitSet.EdgeIndex edges = null;
+    private int risingPosition = 0;
+    private int fallingPosition = 0;
+
+    /**
+     * @param signal signal to search
+     */
+    public EdgeCursor(LogicSignal signal){
+        this.signal = signal;
+    }
+
+    /**
+     * Edge index of the signal, resetting the positions if it was built again since the last search
+     * @return edge index, null if the signal doesn't have one
+     */
+    private LogicBitSet.EdgeIndex edgeIndex(){
+        if(!(signal instanceof LogicBitSet)) return null;
+
+        LogicBitSet.EdgeIndex index = ((LogicBitSet)signal).getEdgeIndex();
+        if(index != edges){
+            edges = index;
+            risingPosition = fallingPosition = 0;
+        }
+        return index;
+    }
+
+    /**
+     * Search for the next falling edge starting in the given index
+     * @param index where to start searching
+     * @return falling edge index where it's already '0', -1 if no falling edge exists
+     * @see com.protocolanalyzer.api.LogicSignal#nextFallingEdge(int)
+     */
+    public int nextFallingEdge(int index){
+        LogicBitSet.EdgeIndex edges = edgeIndex();
+        if(edges == null) return signal.nextFallingEdge(index);
+        if(index < 0) return -1;
+
+        fallingPosition = LogicBitSet.EdgeIndex.edgeAfter(edges.falling, edges.fallingCount, index, fallingPosition);
+        return fallingPosition < edges.fallingCount ? edges.falling[fallingPosition] : -1;
+    }
+
+    /**
+     * Search for the next rising edge starting in the given index
+     * @param index where to start searching
+     * @return rising edge index where it's already '1', -1 if no rising edge exists
+     * @see com.protocolanalyzer.api.LogicSignal#nextRisingEdge(int)
+     */
+    public int nextRisingEdge(int index){
+        LogicBitSet.EdgeIndex edges = edgeIndex();
+        if(edges == null) return signal.nextRisingEdge(index);
+        if(index < 0) return -1;
+
+        risingPosition = LogicBitSet.EdgeIndex.edgeAfter(edges.rising, edges.risingCount, index, risingPosition);
+        return risingPosition < edges.risingCount ? edges.rising[risingPosition] : -1;
+    }
+
+    /**
+     * Search for the next set bit and returns the index in the middle of it
+     * @param index where to start searching
+     * @return bit index in the middle of it, -1 if it doesn't exist
+     * @see com.protocolanalyzer.api.LogicSignal#nextSetBitToTest(int)
+     */
+    public int nextSetBitToTest(int index){
+        int rising = nextRisingEdge(index);
+        int fall = nextFallingEdge(rising);
+
+        // Test if valid
+        if(rising == -1 || fall == -1) return -1;
+
+        return ( rising + ((fall - rising)/2) );
+    }
+
+    public LogicSignal getSignal(){
+        return signal;
+    }
+}
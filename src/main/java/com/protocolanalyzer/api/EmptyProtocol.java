@@ -9,6 +9,11 @@ public class EmptyProtocol extends Protocol{
 	@Override
 	public void decode(double startTime) {}
 
+	@Override
+	protected int decodeChunk(LogicSignal data, LogicSignal clock, int fromIndex, long sampleOffset, boolean lastChunk) {
+		return data.length();
+	}
+
 	@Override
 	public ProtocolType getProtocol() {
 		return ProtocolType.NONE;
@@ -0,0 +1,382 @@
+package com.protocolanalyzer.api;
+
+import java.util.Arrays;
+
+/**
+ * Logic channel split in chunks of {@link #CHUNK_SAMPLES} samples where each chunk is kept in the smallest of
+ *  two forms: dense 64 bit words, or the sorted list of the edges inside the chunk, which holds the runs of
+ *  equal samples. Idle chunks cost a few bytes and bursts of activity cost one bit per sample.
+ * The chunk being appended is always dense, when it is completed it is converted to an edge list if that is
+ *  smaller. Samples can only be appended.
+ */
+public class HybridLogicBitSet implements WritableLogicSignal {
+
+    /** Samples per chunk as a shift count */
+    private static final int ADDRESS_SAMPLES_PER_CHUNK = 16;
+    public static final int CHUNK_SAMPLES = 1 << ADDRESS_SAMPLES_PER_CHUNK;
+    private static final int CHUNK_MASK = CHUNK_SAMPLES - 1;
+    private static final int CHUNK_WORDS = CHUNK_SAMPLES / 64;
+    /** Chunks with more edges than this are smaller as dense words (2 bytes per edge against 8 per word) */
+    private static final int MAX_EDGES = CHUNK_WORDS * 4;
+
+    /** Chunks without edges */
+    private static final EdgeChunk LOW = new EdgeChunk(false, new char[0]);
+    private static final EdgeChunk HIGH = new EdgeChunk(true, new char[0]);
+
+    private Chunk[] chunks = new Chunk[16];
+    private int chunksCount = 0;
+    /** Last chunk while it is not complete */
+    private DenseChunk tail = null;
+    /** Number of samples */
+    private int currentSize = 0;
+
+    /**
+     * Appends a run of samples with the same state
+     * @param state state of the samples
+     * @param count number of samples
+     */
+    public void addRun(boolean state, int count){
+        while(count > 0){
+            final int offset = currentSize & CHUNK_MASK;
+            final int n = Math.min(count, CHUNK_SAMPLES - offset);
+
+            if(offset == 0 && n == CHUNK_SAMPLES){
+                // Whole chunk, no need to write the words
+                addChunk(state ? HIGH : LOW);
+            }else{
+                DenseChunk chunk = getTail();
+                if(state) chunk.set(offset, offset + n);
+                if(offset + n == CHUNK_SAMPLES) seal();
+            }
+            currentSize += n;
+            count -= n;
+        }
+    }
+
+    /**
+     * Appends samples given as words. Written like {@link com.protocolanalyzer.api.LogicBitSet#setWords(int, long[], int)}
+     *  so {@link com.protocolanalyzer.api.LogicHelper#bufferToChannel(byte[], Protocol[])} can fill it.
+     *
+     * @param fromIndex index of the first sample to write, it must be {@link #length()}
+     * @param src samples to write where bit 0 of src[0] is the first sample
+     * @param nBits number of samples to write
+     * @throws IllegalArgumentException if fromIndex isn't the end of the signal
+     */
+    public void setWords(int fromIndex, long[] src, int nBits){
+        if(fromIndex != currentSize)
+            throw new IllegalArgumentException("Samples can only be appended at " + currentSize + ", not " + fromIndex);
+
+        for(int n = 0; nBits > 0; ++n){
+            int bits = Math.min(64, nBits);
+            appendWord(src[n], bits);
+            nBits -= bits;
+        }
+    }
+
+    /**
+     * Appends the samples of any {@link com.protocolanalyzer.api.LogicSignal}
+     * @param signal samples to append
+     */
+    public void append(LogicSignal signal){
+        final int length = signal.length();
+        int n = 0;
+        while(n < length){
+            boolean state = signal.get(n);
+            int end = state ? signal.nextClearBit(n) : signal.nextSetBit(n);
+            if(end == -1 || end > length) end = length;
+            addRun(state, end - n);
+            n = end;
+        }
+    }
+
+    /**
+     * Appends up to 64 samples
+     */
+    private void appendWord(long word, int bits){
+        while(bits > 0){
+            final int offset = currentSize & CHUNK_MASK;
+            final int shift = offset & 63;
+            // Samples that fit in the current word of the tail
+            final int n = Math.min(bits, 64 - shift);
+
+            getTail().words[offset >>> 6] |= (word & (-1L >>> (64 - n))) << shift;
+            currentSize += n;
+            bits -= n;
+            word = n == 64 ? 0 : word >>> n;
+            if((currentSize & CHUNK_MASK) == 0) seal();
+        }
+    }
+
+    private DenseChunk getTail(){
+        if(tail == null){
+            tail = new DenseChunk(new long[CHUNK_WORDS]);
+            addChunk(tail);
+        }
+        return tail;
+    }
+
+    private void addChunk(Chunk chunk){
+        if(chunksCount == chunks.length) chunks = Arrays.copyOf(chunks, 2 * chunks.length);
+        chunks[chunksCount++] = chunk;
+    }
+
+    /**
+     * Converts the completed tail into an edge list if that is smaller
+     */
+    private void seal(){
+        final long[] words = tail.words;
+        int count = 0;
+        long carry = words[0] & 1;
+        for(long word : words){
+            count += Long.bitCount(word ^ ((word << 1) | carry));
+            carry = word >>> 63;
+        }
+
+        if(count <= MAX_EDGES){
+            Chunk chunk;
+            if(count == 0) chunk = (words[0] & 1) != 0 ? HIGH : LOW;
+            else{
+                char[] edges = new char[count];
+                int n = 0;
+                carry = words[0] & 1;
+                for(int w = 0; w < CHUNK_WORDS; ++w){
+                    long word = words[w];
+                    for(long t = word ^ ((word << 1) | carry); t != 0; t &= t - 1){
+                        edges[n++] = (char)((w << 6) + Long.numberOfTrailingZeros(t));
+                    }
+                    carry = word >>> 63;
+                }
+                chunk = new EdgeChunk((words[0] & 1) != 0, edges);
+            }
+            chunks[chunksCount-1] = chunk;
+        }
+        tail = null;
+    }
+
+    /**
+     * Removes all the samples
+     */
+    public void clear(){
+        Arrays.fill(chunks, 0, chunksCount, null);
+        chunksCount = currentSize = 0;
+        tail = null;
+    }
+
+    /**
+     * Memory used by the samples, without the object headers
+     */
+    public long sizeInBytes(){
+        long size = 4L * chunks.length;
+        for(int n = 0; n < chunksCount; ++n) size += chunks[n].sizeInBytes();
+        return size;
+    }
+
+    /**
+     * Number of chunks kept as dense words, including the incomplete last chunk
+     */
+    public int getDenseChunksCount(){
+        int count = 0;
+        for(int n = 0; n < chunksCount; ++n){
+            if(chunks[n] instanceof DenseChunk) ++count;
+        }
+        return count;
+    }
+
+    @Override
+    public boolean get(int index) {
+        if(index < 0) throw new IndexOutOfBoundsException("index < 0: " + index);
+        return index < currentSize && chunks[index >>> ADDRESS_SAMPLES_PER_CHUNK].get(index & CHUNK_MASK);
+    }
+
+    @Override
+    public int length() {
+        return currentSize;
+    }
+
+    @Override
+    public int nextSetBit(int fromIndex) {
+        if(fromIndex < 0) throw new IndexOutOfBoundsException("fromIndex < 0: " + fromIndex);
+        if(fromIndex >= currentSize) return -1;
+
+        int offset = fromIndex & CHUNK_MASK;
+        for(int c = fromIndex >>> ADDRESS_SAMPLES_PER_CHUNK; c < chunksCount; ++c, offset = 0){
+            int n = chunks[c].nextSetBit(offset);
+            if(n != -1) return (c << ADDRESS_SAMPLES_PER_CHUNK) + n;
+        }
+        return -1;
+    }
+
+    @Override
+    public int nextClearBit(int fromIndex) {
+        if(fromIndex < 0) throw new IndexOutOfBoundsException("fromIndex < 0: " + fromIndex);
+        if(fromIndex >= currentSize) return fromIndex;
+
+        int offset = fromIndex & CHUNK_MASK;
+        for(int c = fromIndex >>> ADDRESS_SAMPLES_PER_CHUNK; c < chunksCount; ++c, offset = 0){
+            int n = chunks[c].nextClearBit(offset);
+            // Samples of the tail after the last one are '0'
+            if(n != -1) return Math.min((c << ADDRESS_SAMPLES_PER_CHUNK) + n, currentSize);
+        }
+        return currentSize;
+    }
+
+    @Override
+    public long getWord(int wordIndex) {
+        if(wordIndex < 0) throw new IndexOutOfBoundsException("wordIndex < 0: " + wordIndex);
+        final int c = wordIndex / CHUNK_WORDS;
+        return c < chunksCount ? chunks[c].getWord(wordIndex % CHUNK_WORDS) : 0;
+    }
+
+    @Override
+    public String toString() {
+        return "HybridLogicBitSet{" + currentSize + " samples, " + chunksCount + " chunks, " +
+                getDenseChunksCount() + " dense}";
+    }
+
+    /**
+     * Samples of one chunk, offsets go from 0 to {@link #CHUNK_SAMPLES} - 1
+     */
+    private static abstract class Chunk {
+        abstract boolean get(int offset);
+        /** @return offset of the next '1', -1 if there isn't any in this chunk */
+        abstract int nextSetBit(int offset);
+        /** @return offset of the next '0', -1 if there isn't any in this chunk */
+        abstract int nextClearBit(int offset);
+        abstract long getWord(int wordIndex);
+        abstract long sizeInBytes();
+    }
+
+    private static final class DenseChunk extends Chunk {
+
+        final long[] words;
+
+        DenseChunk(long[] words){
+            this.words = words;
+        }
+
+        void set(int fromOffset, int toOffset){
+            int startWord = fromOffset >>> 6;
+            int endWord = (toOffset - 1) >>> 6;
+            long firstWordMask = -1L << fromOffset;
+            long lastWordMask = -1L >>> -toOffset;
+            if(startWord == endWord){
+                words[startWord] |= (firstWordMask & lastWordMask);
+            }else{
+                words[startWord] |= firstWordMask;
+                for(int n = startWord+1; n < endWord; ++n) words[n] = -1L;
+                words[endWord] |= lastWordMask;
+            }
+        }
+
+        @Override
+        boolean get(int offset) {
+            return (words[offset >>> 6] & (1L << offset)) != 0;
+        }
+
+        @Override
+        int nextSetBit(int offset) {
+            int w = offset >>> 6;
+            long word = words[w] & (-1L << offset);
+            while(true){
+                if(word != 0) return (w << 6) + Long.numberOfTrailingZeros(word);
+                if(++w == CHUNK_WORDS) return -1;
+                word = words[w];
+            }
+        }
+
+        @Override
+        int nextClearBit(int offset) {
+            int w = offset >>> 6;
+            long word = ~words[w] & (-1L << offset);
+            while(true){
+                if(word != 0) return (w << 6) + Long.numberOfTrailingZeros(word);
+                if(++w == CHUNK_WORDS) return -1;
+                word = ~words[w];
+            }
+        }
+
+        @Override
+        long getWord(int wordIndex) {
+            return words[wordIndex];
+        }
+
+        @Override
+        long sizeInBytes() {
+            return 8L * words.length;
+        }
+    }
+
+    private static final class EdgeChunk extends Chunk {
+
+        /** State of the first sample */
+        final boolean firstState;
+        /** Offsets where the samples change their state, in increasing order */
+        final char[] edges;
+
+        EdgeChunk(boolean firstState, char[] edges){
+            this.firstState = firstState;
+            this.edges = edges;
+        }
+
+        /**
+         * @return position in {@link #edges} of the first edge after the given offset
+         */
+        private int edgeAfter(int offset){
+            int low = 0, high = edges.length;
+            while(low < high){
+                int mid = (low + high) >>> 1;
+                if(edges[mid] <= offset) low = mid + 1;
+                else high = mid;
+            }
+            return low;
+        }
+
+        /**
+         * State of the samples right before the given edge
+         */
+        private boolean stateBefore(int edge){
+            return firstState ^ ((edge & 1) != 0);
+        }
+
+        @Override
+        boolean get(int offset) {
+            return stateBefore(edgeAfter(offset));
+        }
+
+        @Override
+        int nextSetBit(int offset) {
+            int edge = edgeAfter(offset);
+            if(stateBefore(edge)) return offset;
+            return edge < edges.length ? edges[edge] : -1;
+        }
+
+        @Override
+        int nextClearBit(int offset) {
+            int edge = edgeAfter(offset);
+            if(!stateBefore(edge)) return offset;
+            return edge < edges.length ? edges[edge] : -1;
+        }
+
+        @Override
+        long getWord(int wordIndex) {
+            final int start = wordIndex << 6;
+            int edge = edgeAfter(start);
+            boolean state = stateBefore(edge);
+            long word = 0;
+            int n = start;
+            while(n < start + 64){
+                int end = edge < edges.length ? Math.min(edges[edge], start + 64) : start + 64;
+                if(state) word |= (-1L << n) & (-1L >>> -end);
+                n = end;
+                state = !state;
+                ++edge;
+            }
+            return word;
+        }
+
+        @Override
+        long sizeInBytes() {
+            return 2L * edges.length;
+        }
+    }
+}
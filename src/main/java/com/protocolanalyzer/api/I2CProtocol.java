@@ -1,11 +1,34 @@
 package com.protocolanalyzer.api;
 
+import com.protocolanalyzer.api.DecodedEventSink.Kind;
 import com.protocolanalyzer.api.utils.PrintDebug;
 
 public class I2CProtocol extends Protocol{
 
 	private static final boolean DEBUG = false;
+	// Possible finite state machine states
+	private static final int START_CONDITION = 0;
+	private static final int READ_BYTE = 1;
+	private static final int READ_ADDRESS = 2;
+	private static final int STOP_CONDITION = 3;
+
 	private Clock clockSource = null;
+	/** Data and clock lines for the decode in progress */
+	private LogicSignal dataLine, clockLine;
+	/** Edges of the clock line for the decode in progress */
+	private EdgeCursor clockEdges;
+	/** SDA and SCL high, and SDA falling while SCL is high (start condition) for the decode in progress */
+	private ConditionScanner busIdle, startCondition;
+	/** Whether the decode in progress has all the samples or more chunks are coming */
+	private boolean lastChunk;
+	/** State machine state, kept between chunks */
+	private int i2cState = START_CONDITION;
+	/** SCL clock period in samples, 0 until it is calculated */
+	private int clockDuration = 0;
+	/** Index of sample 0 of the chunk being decoded */
+	private long sampleOffset;
+	/** Events of the state being decoded, they are added to the sink only if the state is complete */
+	private final DecodedEventStore stateEvents = new DecodedEventStore(16);
 
     /**
      * @param freq sample frequency in Hz
@@ -42,7 +65,7 @@ public class I2CProtocol extends Protocol{
 		if(clockSource == null) 
 			throw new IllegalArgumentException("Clock source must be defined for I2C protocol");
 		
-		final LogicBitSet clock = clockSource.getChannelBitsData();
+		final LogicSignal clock = clockSource.getChannelSignal();
 
         if(DEBUG) {
             PrintDebug.printInfo("Data length:  "   + logicData.length());
@@ -50,149 +73,245 @@ public class I2CProtocol extends Protocol{
             PrintDebug.printInfo("BitSet data:  "   + logicData.toString());
             PrintDebug.printInfo("BitSet clock: "   + clock.toString());
         }
-		
-		// Possible finite state machine states
-		final int startCondition = 0;
-		final int readByte = 1;
-		final int readAddress = 2;
-		final int stopCondition = 3;
-		
-		// Initial state machine state
-		int i2cState = startCondition;
+
+		resetDecoder();
+		decodeChunk(logicData, clock, 0, timeToSample(startTime), true);
+	}
+
+	@Override
+	protected int decodeChunk(LogicSignal data, LogicSignal clock, int fromIndex, long sampleOffset, boolean lastChunk) {
+		dataLine = data;
+		this.sampleOffset = sampleOffset;
+		clockLine = clock;
+		this.lastChunk = lastChunk;
+		clockEdges = new EdgeCursor(clock);
+		busIdle = new ConditionScanner()
+				.add(data, ConditionScanner.Condition.HIGH)
+				.add(clock, ConditionScanner.Condition.HIGH);
+		startCondition = new ConditionScanner()
+				.add(data, ConditionScanner.Condition.FALLING)
+				.add(clock, ConditionScanner.Condition.HIGH);
+
 		// Time between each sample
 		final double sampleTime = 1.0d/sampleFrec;
+		int index = fromIndex;			// Samples index
 
-		// SCL clock period
-		final int clockDuration;
-		int index = 0;					// Samples index
-		int[] data;						// Data read from I2C
-		boolean rwBit = false;
-		boolean ackBit = false;
+		if(clockDuration == 0){
+			final int firstRisingEdge = clockEdges.nextRisingEdge(fromIndex);
+			final int secondRisingEdge = clockEdges.nextRisingEdge(firstRisingEdge);
 
-        // Not enough data, get out of here!
-		if(clock.nextRisingEdge(0) == -1 || clock.nextRisingEdge(clock.nextRisingEdge(0)) == -1){
-            PrintDebug.printError("Not enough data!");
-            return;
-        }
-		
-		// Calculate clock period between two rising edges
-		clockDuration = clock.nextRisingEdge(clock.nextRisingEdge(0)) - clock.nextRisingEdge(0);
+			// Not enough data, get out of here!
+			if(firstRisingEdge == -1 || secondRisingEdge == -1){
+				if(lastChunk) PrintDebug.printError("Not enough data!");
+				// Without any clock edge nothing before the last sample is needed
+				return firstRisingEdge == -1 ? Math.max(fromIndex, data.length()-1) : fromIndex;
+			}
 
-		// We need at least 3 samples otherwise data may be corrupted (low sample rate)
-		if( ((double)clockDuration / sampleTime) < 3){
-            PrintDebug.printWarning("Low sample rate! Data decoding may not be correct");
-        }
+			// Calculate clock period between two rising edges
+			clockDuration = secondRisingEdge - firstRisingEdge;
+
+			// We need at least 3 samples otherwise data may be corrupted (low sample rate)
+			if( ((double)clockDuration / sampleTime) < 3){
+				PrintDebug.printWarning("Low sample rate! Data decoding may not be correct");
+			}
+		}
 		
 		// Decode while we have data
-		while(index < logicData.length()) {
-			
+		while(index < data.length()) {
+			final int previousState = i2cState;
+
+			stateEvents.clear();
+			int nextIndex = decodeState(index);
+			if(nextIndex == -1){
+				// Without more samples the events found before the state failed are kept
+				if(lastChunk){
+					stateEvents.copyTo(eventSink);
+					return index;
+				}
+
+				// Not enough samples, this state is decoded again with the next chunk
+				i2cState = previousState;
+				// Start condition can't be before its SDA falling edge or, if there isn't any yet, the last sample
+				if(i2cState == START_CONDITION){
+					int fallIndex = nextStartFallingEdge(index);
+					return fallIndex == -1 ? Math.max(index, data.length()-1) : Math.max(index, fallIndex-1);
+				}
+				return index;
+			}
+			stateEvents.copyTo(eventSink);
+			index = nextIndex;
+		}
+		return index;
+	}
+
+	/**
+	 * Decodes the current state machine state
+	 * @param index samples index where the state starts
+	 * @return index where the next state starts, -1 if the state couldn't be decoded
+	 */
+	private int decodeState(int index){
+		int[] data;						// Data read from I2C
+		boolean rwBit;
+		boolean ackBit;
+
+		try{
 			// State machine
 			switch(i2cState) {
 			
 			// Start condition
-			case startCondition:					
+			case START_CONDITION:
 				// Check start condition, if it doesn't exists, get out of here
 				int[] start = nextStartCondition(index);
-				if(start != null){
-					if(DEBUG) PrintDebug.printInfo("Start Condition - index: " + index);
-					addString("S", (start[0]*sampleTime), start[1]*sampleTime, startTime);
-					index = start[1];
-					i2cState = readAddress;
-				}
-				else return;
-				break;
+				if(start == null) return -1;
+
+				if(DEBUG) PrintDebug.printInfo("Start Condition - index: " + index);
+				addStateEvent(Kind.START, 0, 0, start[0], start[1]);
+				i2cState = READ_ADDRESS;
+				return start[1];
 				
 			// Stop condition
-			case stopCondition:
+			case STOP_CONDITION:
 				data = getStopCondition(index, clockDuration);
-				addString("P", data[0]*sampleTime, data[1]*sampleTime, startTime);
-				index = data[1];
-				i2cState = startCondition;
-				break;
+				if(data == null) return -1;
+
+				addStateEvent(Kind.STOP, 0, 0, data[0], data[1]);
+				i2cState = START_CONDITION;
+				return data[1];
 				
 			// Address
-			case readAddress:
+			case READ_ADDRESS:
 				// Read the 7 bits address
 				data = readBits(index, 7);
-				if(data == null) return;
-				try {
-					if(DEBUG) PrintDebug.printInfo("I2CAddress: " + Integer.toBinaryString(data[2] & 0xFF) + " -> " + data[2]);
-					// Address
-					addString("A("+data[2]+")", data[0]*sampleTime,data[1]*sampleTime, startTime);	
-		
-					// Get RW bit (8th bit)
-					index = clock.nextSetBitToTest(data[1]);
-					rwBit = logicData.get(index);
-						
-					if(rwBit) addString("\\R", data[1]*sampleTime, index*sampleTime, startTime);	
-					else addString("\\W", data[1]*sampleTime, index*sampleTime, startTime);
-						
-					// ACK bit
-					index = clock.nextSetBitToTest(index);	
-					ackBit = logicData.get(index);	
-						
-					if(!ackBit) addString("ACK", index*sampleTime, (index+clockDuration)*sampleTime, startTime);
-					else addString("NAK", index*sampleTime, (index+clockDuration)*sampleTime, startTime);
+				if(data == null) return -1;
+
+				if(DEBUG) PrintDebug.printInfo("I2CAddress: " + Integer.toBinaryString(data[2] & 0xFF) + " -> " + data[2]);
+				// Address
+				addStateEvent(Kind.ADDRESS, data[2], 7, data[0], data[1]);	
+	
+				// Get RW bit (8th bit)
+				index = clockEdges.nextSetBitToTest(data[1]);
+				rwBit = dataLine.get(index);
+					
+				if(rwBit) addStateEvent(Kind.READ, 0, 0, data[1], index);
+				else addStateEvent(Kind.WRITE, 0, 0, data[1], index);
+					
+				// ACK bit
+				index = clockEdges.nextSetBitToTest(index);	
+				ackBit = dataLine.get(index);	
 					
-					// If we have a stop condition exit, nothing more to read
-					if (existsStopCondition(index, clockDuration)){
-						i2cState = stopCondition;
-						break;
-					}
-
-                    // Check ACK bit, if we got an ACK bit read the incoming data byte, otherwise it's an error
-                    //  because we have a NAK but we don't have the stop condition!
-					if(!ackBit) i2cState = readByte;
-					else {
-						i2cState = startCondition;
-						addString("E", index*sampleTime, (index+clockDuration)*sampleTime, startTime);
-					}
-				} catch (IndexOutOfBoundsException e) {
-					if(DEBUG) PrintDebug.printError("IndexOutOfBoundsException - Returning");
-					return;
+				if(!ackBit) addStateEvent(Kind.ACK, 0, 0, index, index+clockDuration);
+				else addStateEvent(Kind.NAK, 0, 0, index, index+clockDuration);
+				
+				// If we have a stop condition exit, nothing more to read
+				if (existsStopCondition(index, clockDuration)){
+					i2cState = STOP_CONDITION;
+					return index;
+				}
+
+				// Check ACK bit, if we got an ACK bit read the incoming data byte, otherwise it's an error
+				//  because we have a NAK but we don't have the stop condition!
+				if(!ackBit) i2cState = READ_BYTE;
+				else {
+					i2cState = START_CONDITION;
+					addStateEvent(Kind.BUS_ERROR, 0, 0, index, index+clockDuration);
 				}
-				break;
+				return index;
 			
 			// Leo un byte de dato
-			case readByte:		
+			case READ_BYTE:
 				if(DEBUG) PrintDebug.printInfo("Read Byte - index: " + index);
-				i2cState = startCondition;
+				i2cState = START_CONDITION;
 				
 				data = readBits(index, 8);
-				if(data == null) return;
-				try{
-					if(DEBUG) PrintDebug.printInfo("I2CData: " + Integer.toBinaryString(data[2] & 0xFF) + " -> " + data[2]);
-					
-					// Byte read
-					addString(""+data[2], data[0]*sampleTime, data[1]*sampleTime, startTime);
-					
-					// ACK bit
-					index = clock.nextSetBitToTest(data[1]);
-					ackBit = logicData.get(index);
-					
-					if(!ackBit) addString("ACK", data[1]*sampleTime, index*sampleTime, startTime);
-					else addString("NAK", data[1]*sampleTime, index*sampleTime, startTime);
-
-                    // If we have a stop condition exit, nothing more to read
-					if (existsStopCondition(index, clockDuration)){
-						i2cState = stopCondition;
-						break;
-					}
-
-                    // Check ACK bit, if we got an ACK bit read another incoming data byte, otherwise it's an error
-                    //  because we have a NAK but we don't have the stop condition!
-					if(!ackBit) i2cState = readByte;
-					else {
-						i2cState = startCondition;
-						addString("E", index*sampleTime, (index+clockDuration)*sampleTime, startTime);
-					}
-				} catch (IndexOutOfBoundsException e) {
-					if(DEBUG) PrintDebug.printError("IndexOutOfBoundsException - Returning");
-					return;
+				if(data == null) return -1;
+
+				if(DEBUG) PrintDebug.printInfo("I2CData: " + Integer.toBinaryString(data[2] & 0xFF) + " -> " + data[2]);
+				
+				// Byte read
+				addStateEvent(Kind.DATA, data[2], 8, data[0], data[1]);
+				
+				// ACK bit
+				index = clockEdges.nextSetBitToTest(data[1]);
+				ackBit = dataLine.get(index);
+				
+				if(!ackBit) addStateEvent(Kind.ACK, 0, 0, data[1], index);
+				else addStateEvent(Kind.NAK, 0, 0, data[1], index);
+
+				// If we have a stop condition exit, nothing more to read
+				if (existsStopCondition(index, clockDuration)){
+					i2cState = STOP_CONDITION;
+					return index;
 				}
-				break;
+
+				// Check ACK bit, if we got an ACK bit read another incoming data byte, otherwise it's an error
+				//  because we have a NAK but we don't have the stop condition!
+				if(!ackBit) i2cState = READ_BYTE;
+				else {
+					i2cState = START_CONDITION;
+					addStateEvent(Kind.BUS_ERROR, 0, 0, index, index+clockDuration);
+				}
+				return index;
 			}
+		} catch (IndexOutOfBoundsException e) {
+			if(DEBUG) PrintDebug.printError("IndexOutOfBoundsException - Returning");
 		}
+		return -1;
+	}
+
+	/**
+	 * Adds an event of the state being decoded
+	 * @param kind event kind
+	 * @param payload event data
+	 * @param bits number of bits of payload
+	 * @param startIndex first sample of the event in the chunk
+	 * @param endIndex last sample of the event in the chunk
+	 */
+	private void addStateEvent(Kind kind, int payload, int bits, int startIndex, int endIndex){
+		stateEvents.addEvent(kind, payload, bits, sampleOffset + startIndex, sampleOffset + Math.max(startIndex, endIndex));
+	}
+
+	@Override
+	protected void resetDecoder() {
+		i2cState = START_CONDITION;
+		clockDuration = 0;
+	}
+
+	@Override
+	protected boolean prepareParallelDecode(LogicSignal data, LogicSignal clock) {
+		// Segment decoders use the clock period of the beginning of the capture like the sequential decode
+		EdgeCursor edges = new EdgeCursor(clock);
+		final int firstRisingEdge = edges.nextRisingEdge(0);
+		final int secondRisingEdge = edges.nextRisingEdge(firstRisingEdge);
+		if(firstRisingEdge == -1 || secondRisingEdge == -1) return false;
+
+		clockDuration = secondRisingEdge - firstRisingEdge;
+		if( ((double)clockDuration / (1.0d/sampleFrec)) < 3){
+			PrintDebug.printWarning("Low sample rate! Data decoding may not be correct");
+		}
+		return true;
+	}
+
+	/**
+	 * SCL stays high while the bus is idle, a split point is the middle of an idle time of several clock periods
+	 */
+	@Override
+	protected int nextSplitPoint(LogicSignal data, LogicSignal clock, int fromIndex) {
+		int[] idle = ParallelDecoder.findRun(clock, true, fromIndex, 4*clockDuration + 2);
+		if(idle == null) return -1;
+		return idle[0] + (idle[1] - idle[0])/2;
+	}
+
+	@Override
+	protected Protocol newSegmentDecoder() {
+		I2CProtocol decoder = new I2CProtocol(sampleFrec);
+		decoder.clockSource = clockSource;
+		decoder.clockDuration = clockDuration;
+		return decoder;
+	}
+
+	@Override
+	protected boolean isDecoderIdle() {
+		return i2cState == START_CONDITION;
 	}
 	
 	/**
@@ -205,25 +324,27 @@ public class I2CProtocol extends Protocol{
 	 */
 	private int[] nextStartCondition (int index){
 		if (index < 0) return null;
-		// Search until we found SDA and SCL in high state
-		for(int n = index; n < logicData.length(); ++n){
-			if(logicData.get(n) && clockSource.getChannelBitsData().get(n)){
-				index = n;
-				break;
-			}
-		}
+		int fallIndex = nextStartFallingEdge(index);
+		int clockFallIndex = clockEdges.nextFallingEdge(fallIndex);
+		if(clockFallIndex == -1) return null;
 		
-		int fallIndex = logicData.nextFallingEdge(index);
+		return new int[] {fallIndex, clockFallIndex};
+	}
+	
+	/**
+	 * Search for the falling edge of the SDA line of the next start condition
+	 * @param index from where start searching
+	 * @return falling edge in the SDA line while SCL is high, -1 if it doesn't exist
+	 */
+	private int nextStartFallingEdge (int index){
+		// Search until we found SDA and SCL in high state
+		int idleIndex = busIdle.next(index);
+		if(idleIndex != -1 && idleIndex < dataLine.length()) index = idleIndex;
 
         // Start condition: falling edge in SDA while SCL is high
-		while(fallIndex != -1 && !clockSource.getChannelBitsData().get(fallIndex)){
-			fallIndex = logicData.nextFallingEdge(fallIndex);
-		}
-		if(clockSource.getChannelBitsData().nextFallingEdge(fallIndex) == -1) return null;
-		
-		return new int[] {fallIndex, clockSource.getChannelBitsData().nextFallingEdge(fallIndex)};
+		return startCondition.next(index + 1);
 	}
-	
+
 	/**
 	 * Read nBits from SDA line starting from the MSB
 	 * @param index index from where to start reading
@@ -234,16 +355,15 @@ public class I2CProtocol extends Protocol{
 		int[] i2cData = new int[3];
 
 		// Starting index
-		if(clockSource.getChannelBitsData().nextRisingEdge(index) != -1) 
-			i2cData[0] = clockSource.getChannelBitsData().nextRisingEdge(index);
-		else return null;
+		i2cData[0] = clockEdges.nextRisingEdge(index);
+		if(i2cData[0] == -1) return null;
 		
 		// Read nBits starting from the MSB one
 		for(int bit = nBits; bit > 0; --bit){			
-			index = clockSource.getChannelBitsData().nextSetBitToTest(index);
+			index = clockEdges.nextSetBitToTest(index);
 			if(index == -1) return null;
             // Check SDA bit in the middle of a SCL clock
-			i2cData[2] = LogicHelper.bitSet(i2cData[2], logicData.get(index), bit-1);
+			i2cData[2] = LogicHelper.bitSet(i2cData[2], dataLine.get(index), bit-1);
 		}
 
 		// Final index
@@ -262,12 +382,16 @@ public class I2CProtocol extends Protocol{
 	private boolean existsStopCondition (int index, int clockDuration){
 		int dataRisingEdge = -1;
 		
-		int clockRisingEdge = clockSource.getChannelBitsData().nextRisingEdge(index);
-		if(clockRisingEdge != -1) dataRisingEdge = logicData.nextRisingEdge(clockRisingEdge);
+		int clockRisingEdge = clockEdges.nextRisingEdge(index);
+		if(clockRisingEdge != -1) dataRisingEdge = dataLine.nextRisingEdge(clockRisingEdge);
+
+		// The edges may be in the next chunk
+		if(dataRisingEdge == -1 && !lastChunk)
+			throw new IndexOutOfBoundsException("Stop condition needs the next chunk");
 		
 		return dataRisingEdge != -1 &&
-               clockSource.getChannelBitsData().get(dataRisingEdge+(clockDuration/2)+1) &&
-               logicData.get(dataRisingEdge+(clockDuration/2)+1);
+               clockLine.get(dataRisingEdge+(clockDuration/2)+1) &&
+               dataLine.get(dataRisingEdge+(clockDuration/2)+1);
 	}
 
     /**
@@ -281,11 +405,11 @@ public class I2CProtocol extends Protocol{
 	private int[] getStopCondition (int index, int clockDuration) {
 		int dataRisingEdge = -1;
 		
-		int clockRisingEdge = clockSource.getChannelBitsData().nextRisingEdge(index);
-		if(clockRisingEdge != -1) dataRisingEdge = logicData.nextRisingEdge(clockRisingEdge);
+		int clockRisingEdge = clockEdges.nextRisingEdge(index);
+		if(clockRisingEdge != -1) dataRisingEdge = dataLine.nextRisingEdge(clockRisingEdge);
 		
-		if(dataRisingEdge != -1 && clockSource.getChannelBitsData().get(dataRisingEdge+(clockDuration/2)+1)
-				&& logicData.get(dataRisingEdge+(clockDuration/2)+1)) 
+		if(dataRisingEdge != -1 && clockLine.get(dataRisingEdge+(clockDuration/2)+1)
+				&& dataLine.get(dataRisingEdge+(clockDuration/2)+1)) 
 			return new int[] {clockRisingEdge, dataRisingEdge};
 		
 		else return null;
@@ -304,6 +428,7 @@ public class I2CProtocol extends Protocol{
 		clockSource = channel;
 	}
 	
+	@Override
 	public Clock getClockSource() {
 		return clockSource;
 	}
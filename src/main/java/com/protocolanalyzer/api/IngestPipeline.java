@@ -0,0 +1,303 @@
+package com.protocolanalyzer.api;
+
+import com.protocolanalyzer.api.utils.ByteArrayBuffer;
+import com.protocolanalyzer.api.utils.PrintDebug;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Decodes a capture as it is expanded instead of after expanding and demultiplexing all of it. The capture goes
+ *  through three stages, each one on its own thread, handing blocks of samples to the next one through bounded
+ *  queues:
+ * <ol>
+ *  <li>Expansion of the run length encoded data (or copy of the raw samples) into blocks of one byte per sample</li>
+ *  <li>Demultiplexing of each block into one {@link com.protocolanalyzer.api.LogicBitSet} per channel</li>
+ *  <li>One decoder thread per protocol giving the blocks to {@link com.protocolanalyzer.api.Protocol#feed(LogicBitSet, LogicBitSet)}</li>
+ * </ol>
+ * The events of the first block are decoded while the next blocks are being expanded. The channels are given like
+ *  in {@link com.protocolanalyzer.api.LogicHelper#bufferToChannel(byte[], Protocol[])}, a
+ *  {@link com.protocolanalyzer.api.Clock} in the list isn't decoded but its samples are given to the protocols that
+ *  use it. Events go to the sink of each protocol from its decoder thread.
+ *
+ * <pre>
+ * {@code
+ * new IngestPipeline(new Protocol[]{ i2c, clock, uart }).decodeRunLength(compressed);
+ * }
+ * </pre>
+ */
+public class IngestPipeline {
+
+    private static final boolean DEBUG = false;
+    /** Default samples of each block */
+    public static final int DEFAULT_BLOCK_SAMPLES = 1 << 16;
+    /** Default blocks each queue can hold */
+    public static final int DEFAULT_QUEUE_BLOCKS = 4;
+
+    /** Marks the end of the capture in the queues */
+    private static final byte[] END_SAMPLES = new byte[0];
+    private static final LogicBitSet[] END_CHANNELS = new LogicBitSet[0];
+
+    private final Protocol[] channels;
+    private final int blockSamples;
+    private final int queueBlocks;
+
+    /**
+     * @param channels channels[N] gets bit N of each sample, null channels are skipped
+     */
+    public IngestPipeline(Protocol[] channels){
+        this(channels, DEFAULT_BLOCK_SAMPLES, DEFAULT_QUEUE_BLOCKS);
+    }
+
+    /**
+     * @param channels channels[N] gets bit N of each sample, null channels are skipped
+     * @param blockSamples samples of each block
+     * @param queueBlocks blocks each queue can hold before the previous stage waits
+     */
+    public IngestPipeline(Protocol[] channels, int blockSamples, int queueBlocks){
+        if(blockSamples <= 0 || queueBlocks <= 0)
+            throw new IllegalArgumentException("Block samples and queue blocks must be positive");
+        this.channels = channels.clone();
+        this.blockSamples = blockSamples;
+        this.queueBlocks = queueBlocks;
+    }
+
+    /**
+     * Decodes run length encoded samples
+     * @param data runs of the count LSB, the count MSB and the value where bit 0 is channel 0 to bit 7 channel 7,
+     *             like the ones of {@link com.protocolanalyzer.api.LogicHelper#runLengthDecode(ByteArrayBuffer)}
+     * @see #decode(Source)
+     */
+    public void decodeRunLength(final ByteArrayBuffer data){
+        decode(new Source() {
+            private int run = 0, left = 0, value;
+
+            @Override
+            public int read(byte[] block) {
+                int n = 0;
+                while(n < block.length){
+                    if(left == 0){
+                        if(run >= data.length()) break;
+                        left = LogicHelper.byteToInt((byte)data.byteAt(run), (byte)data.byteAt(run+1));
+                        value = data.byteAt(run+2);
+                        run += 3;
+                        continue;
+                    }
+                    final int count = Math.min(left, block.length - n);
+                    for(int k = n; k < n + count; ++k) block[k] = (byte)value;
+                    n += count;
+                    left -= count;
+                }
+                return n;
+            }
+        });
+    }
+
+    /**
+     * Decodes samples of one byte each
+     * @param data samples, bit N of each byte belongs to channel N
+     * @see #decode(Source)
+     */
+    public void decode(final byte[] data){
+        decode(new Source() {
+            private int position = 0;
+
+            @Override
+            public int read(byte[] block) {
+                final int n = Math.min(block.length, data.length - position);
+                System.arraycopy(data, position, block, 0, n);
+                position += n;
+                return n;
+            }
+        });
+    }
+
+    /**
+     * Runs the stages until all the samples are decoded and {@link com.protocolanalyzer.api.Protocol#flush()} is
+     *  called on every decoder. Samples are given to the decoders with {@link com.protocolanalyzer.api.Protocol#feed(LogicBitSet, LogicBitSet)}
+     *  so the events are added after the ones of the last stream. A stage throwing an exception or error doesn't
+     *  stop the others, the first one is thrown once all of them finished.
+     * @param source samples to decode
+     * @throws IllegalArgumentException if a protocol uses a clock that isn't in the channels
+     */
+    public void decode(Source source){
+        final List<Protocol> decoders = new ArrayList<>();
+        final List<int[]> decoderChannels = new ArrayList<>();
+        for(int ch = 0; ch < channels.length && ch < 8; ++ch){
+            Protocol protocol = channels[ch];
+            if(protocol == null || protocol instanceof Clock) continue;
+            int clock = -1;
+            if(protocol.hasClock()){
+                clock = indexOf(protocol.getClockSource());
+                if(clock == -1) throw new IllegalArgumentException("Clock of " + protocol.getProtocol() + " protocol isn't a channel");
+            }
+            decoders.add(protocol);
+            decoderChannels.add(new int[]{ ch, clock });
+        }
+
+        final BlockingQueue<byte[]> expanded = new ArrayBlockingQueue<>(queueBlocks);
+        // Expanded blocks go back to the first stage once they are demultiplexed
+        final BlockingQueue<byte[]> free = new ArrayBlockingQueue<>(queueBlocks + 2);
+        for(int n = 0; n < queueBlocks + 2; ++n) free.add(new byte[blockSamples]);
+        final List<BlockingQueue<LogicBitSet[]>> demuxed = new ArrayList<>();
+        for(int n = 0; n < decoders.size(); ++n) demuxed.add(new ArrayBlockingQueue<LogicBitSet[]>(queueBlocks));
+
+        final Stage[] stages = new Stage[2 + decoders.size()];
+        stages[0] = new Stage("expand") {
+            @Override
+            void process() throws InterruptedException {
+                try {
+                    while(true){
+                        byte[] block = free.take();
+                        int n = source.read(block);
+                        if(n <= 0) break;
+                        expanded.put(n == block.length ? block : Arrays.copyOf(block, n));
+                    }
+                } finally {
+                    if(!isStopped()) expanded.put(END_SAMPLES);
+                }
+            }
+        };
+        stages[1] = new Stage("demux") {
+            @Override
+            void process() throws InterruptedException {
+                final long[][] words = new long[8][(blockSamples + 63) / 64];
+                final SampleKernels kernels = SampleKernels.getDefault();
+                boolean failed = true;
+                try {
+                    while(true){
+                        final byte[] block = expanded.take();
+                        if(block == END_SAMPLES) break;
+
+                        kernels.demuxBlock(ByteBuffer.wrap(block).order(ByteOrder.LITTLE_ENDIAN), 0, block.length, words);
+                        if(block.length == blockSamples) free.put(block);
+                        else free.put(new byte[blockSamples]);
+
+                        LogicBitSet[] signals = new LogicBitSet[8];
+                        for(int ch = 0; ch < signals.length; ++ch){
+                            if(ch >= channels.length || channels[ch] == null) continue;
+                            signals[ch] = new LogicBitSet(block.length);
+                            signals[ch].setWords(0, words[ch], block.length);
+                        }
+                        for(BlockingQueue<LogicBitSet[]> queue : demuxed) queue.put(signals);
+                    }
+                    failed = false;
+                } finally {
+                    if(!isStopped()) for(BlockingQueue<LogicBitSet[]> queue : demuxed) queue.put(END_CHANNELS);
+                    // Keep taking the blocks so the expansion stage doesn't wait for this one
+                    if(failed && !isStopped()){
+                        byte[] block;
+                        while((block = expanded.take()) != END_SAMPLES){
+                            if(block.length == blockSamples) free.put(block);
+                            else free.put(new byte[blockSamples]);
+                        }
+                    }
+                }
+            }
+        };
+        for(int n = 0; n < decoders.size(); ++n){
+            final Protocol decoder = decoders.get(n);
+            final int[] lines = decoderChannels.get(n);
+            final BlockingQueue<LogicBitSet[]> queue = demuxed.get(n);
+            stages[2 + n] = new Stage(decoder.getProtocol() + " decoder") {
+                @Override
+                void process() throws InterruptedException {
+                    boolean failed = true;
+                    try {
+                        LogicBitSet[] signals;
+                        while((signals = queue.take()) != END_CHANNELS){
+                            decoder.feed(signals[lines[0]], lines[1] == -1 ? null : signals[lines[1]]);
+                        }
+                        decoder.flush();
+                        failed = false;
+                    } finally {
+                        // Keep taking the blocks so the demux stage doesn't wait for this one
+                        if(failed && !isStopped()) while(queue.take() != END_CHANNELS);
+                    }
+                }
+            };
+        }
+
+        for(Stage stage : stages) stage.start();
+        Throwable error = null;
+        for(Stage stage : stages){
+            try {
+                stage.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                for(Stage s : stages) s.interrupt();
+                throw new IllegalStateException("Interrupted while decoding", e);
+            }
+            if(error == null && stage.error != null) error = stage.error;
+        }
+        if(error instanceof RuntimeException) throw (RuntimeException)error;
+        if(error instanceof Error) throw (Error)error;
+        if(error != null) throw new IllegalStateException(error);
+    }
+
+    private int indexOf(Protocol protocol){
+        for(int ch = 0; ch < channels.length && ch < 8; ++ch){
+            if(channels[ch] == protocol) return ch;
+        }
+        return -1;
+    }
+
+    /**
+     * Samples of a capture read one block at a time by the expansion stage
+     */
+    public interface Source {
+        /**
+         * Copies the next samples
+         * @param block where the samples are copied, one byte per sample
+         * @return number of samples copied, less than the block length only at the end of the capture
+         *  and 0 when there aren't more samples
+         */
+        int read(byte[] block);
+    }
+
+    /**
+     * Thread of one stage keeping the exception that stopped it
+     */
+    private static abstract class Stage extends Thread {
+
+        volatile Throwable error;
+        /** Set when the decode is interrupted, the other stages don't wait for this one anymore */
+        private volatile boolean stopped = false;
+
+        Stage(String name){
+            super("IngestPipeline " + name);
+            setDaemon(true);
+        }
+
+        abstract void process() throws InterruptedException;
+
+        /**
+         * @return true if the stage was interrupted, even after the interrupted status was cleared
+         */
+        boolean isStopped(){
+            return stopped;
+        }
+
+        @Override
+        public void interrupt() {
+            stopped = true;
+            super.interrupt();
+        }
+
+        @Override
+        public void run() {
+            try {
+                process();
+            } catch (InterruptedException e) {
+                if(DEBUG) PrintDebug.printInfo(getName() + " interrupted");
+            } catch (Throwable e) {
+                error = e;
+            }
+        }
+    }
+}
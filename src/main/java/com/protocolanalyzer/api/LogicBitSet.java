@@ -1,121 +1,758 @@
 package com.protocolanalyzer.api;
 
+import java.util.Arrays;
 import java.util.BitSet;
 
 /**
- * Extended functionality of the {@link java.util.BitSet} class adding features like falling/rising edge detection
+ * Bit set holding the samples of one logic channel, adding features like falling/rising edge detection.
+ * Samples are kept in 64 bit words (bit 0 of word 0 is sample 0) so whole words can be written at once
+ *  by the channel demultiplexer instead of setting one sample at a time.
  */
-public class LogicBitSet extends BitSet{
+public class LogicBitSet implements WritableLogicSignal {
 
-	private static final long serialVersionUID = 1L;
+    /** Bits per word as a shift count */
+    private static final int ADDRESS_BITS_PER_WORD = 6;
+    private static final int BITS_PER_WORD = 1 << ADDRESS_BITS_PER_WORD;
+    private static final long WORD_MASK = 0xFFFFFFFFFFFFFFFFL;
+    /** Samples summarized by each bit of the activity map, as a shift count */
+    private static final int ADDRESS_SAMPLES_PER_BLOCK = 12;
+    public static final int ACTIVITY_BLOCK_SAMPLES = 1 << ADDRESS_SAMPLES_PER_BLOCK;
+    private static final int ACTIVITY_BLOCK_WORDS = ACTIVITY_BLOCK_SAMPLES / BITS_PER_WORD;
+
+    /** Sample words, bit n of word w is sample (w*64 + n) */
+    private long[] words;
+    /** Number of words that may contain a '1', words above this are all '0' */
+    private int wordsInUse = 0;
+    /** Number of samples written */
 	private int currentSize = 0;
+    /** Whether {@link #edgeIndex} is used for the edge searches */
+    private boolean edgeIndexEnabled = false;
+    /** Rising and falling edges, built on the first edge search and dropped on every write */
+    private EdgeIndex edgeIndex = null;
+    /**
+     * Activity map, bit b is '1' if there is any edge in the samples of block b (from b*{@link #ACTIVITY_BLOCK_SAMPLES}
+     *  to (b+1)*{@link #ACTIVITY_BLOCK_SAMPLES} - 1). Only valid for the blocks whose bit in {@link #activityKnown}
+     *  is '1', blocks are summarized when {@link #setWords(int, long[], int)} completes them and forgotten when
+     *  they are written sample by sample. Searches jump over the known blocks without edges.
+     */
+    private long[] activity = new long[1];
+    private long[] activityKnown = new long[1];
+    /** Pool where the words come from and go back to, null if they are allocated */
+    private CapturePool pool = null;
 
     public LogicBitSet(){
-        super();
+        this(BITS_PER_WORD);
     }
 
     public LogicBitSet(int size){
-        super(size);
+        if(size < 0) throw new NegativeArraySizeException("size < 0: " + size);
+        words = new long[wordIndex(size-1) + 1];
+    }
+
+    /**
+     * Creates a bit set whose words are taken from a pool, they are given back with {@link #release()} and when
+     *  they are replaced by bigger ones
+     * @param size number of samples that can be held without growing
+     * @param pool pool of word buffers
+     */
+    public LogicBitSet(int size, CapturePool pool){
+        if(size < 0) throw new NegativeArraySizeException("size < 0: " + size);
+        this.pool = pool;
+        words = pool.takeWords(wordIndex(size-1) + 1);
     }
 
     // Copy constructor
     public LogicBitSet(LogicBitSet logicBitSet){
-        for(int n = 0; n < logicBitSet.length(); ++n){
-            set(n, logicBitSet.get(n));
+        words = Arrays.copyOf(logicBitSet.words, Math.max(logicBitSet.wordsInUse, 1));
+        wordsInUse = logicBitSet.wordsInUse;
+        currentSize = logicBitSet.currentSize;
+    }
+
+    /**
+     * Creates a dense copy of any {@link com.protocolanalyzer.api.LogicSignal}
+     * @param signal signal to copy
+     */
+    public LogicBitSet(LogicSignal signal){
+        this(Math.max(signal.length(), 1));
+        int n = signal.nextSetBit(0);
+        while(n != -1 && n < signal.length()){
+            int end = Math.min(signal.nextClearBit(n), signal.length());
+            set(n, end);
+            n = signal.nextSetBit(end);
         }
+        updateSize(signal.length());
+    }
+
+    private static int wordIndex(int bitIndex){
+        return bitIndex >> ADDRESS_BITS_PER_WORD;
+    }
+
+    private static void checkRange(int fromIndex, int toIndex){
+        if(fromIndex < 0) throw new IndexOutOfBoundsException("fromIndex < 0: " + fromIndex);
+        if(toIndex < 0) throw new IndexOutOfBoundsException("toIndex < 0: " + toIndex);
+        if(fromIndex > toIndex) throw new IndexOutOfBoundsException("fromIndex: " + fromIndex + " > toIndex: " + toIndex);
+    }
+
+    /**
+     * Makes sure the words array can hold the given word index and marks it as in use
+     * @param wordIndex index of the word that is going to be written
+     */
+    private void expandTo(int wordIndex){
+        int wordsRequired = wordIndex + 1;
+        if(words.length < wordsRequired){
+            if(pool == null) words = Arrays.copyOf(words, Math.max(2 * words.length, wordsRequired));
+            else{
+                long[] grown = pool.takeWords(Math.max(2 * words.length, wordsRequired));
+                System.arraycopy(words, 0, grown, 0, wordsInUse);
+                pool.release(words, wordsInUse);
+                words = grown;
+            }
+        }
+        if(wordsInUse < wordsRequired) wordsInUse = wordsRequired;
+    }
+
+    /**
+     * Drops the trailing words that are all '0' from {@link #wordsInUse}
+     */
+    private void recalculateWordsInUse(){
+        int n;
+        for(n = wordsInUse-1; n >= 0; --n){
+            if(words[n] != 0) break;
+        }
+        wordsInUse = n + 1;
+    }
+
+    private void updateSize(int size){
+        if(size > currentSize) currentSize = size;
+    }
+
+    private static int blockIndex(int bitIndex){
+        return bitIndex >> ADDRESS_SAMPLES_PER_BLOCK;
+    }
+
+    /**
+     * Forgets the activity of the blocks that may have changed after writing samples from fromIndex to
+     *  toIndex - 1, including the block of toIndex whose first edge depends on sample toIndex - 1
+     */
+    private void invalidateActivity(int fromIndex, int toIndex){
+        final int last = Math.min(blockIndex(toIndex), (activityKnown.length << ADDRESS_BITS_PER_WORD) - 1);
+        for(int block = blockIndex(fromIndex); block <= last; ++block){
+            activityKnown[block >>> ADDRESS_BITS_PER_WORD] &= ~(1L << block);
+        }
+    }
+
+    /**
+     * Summarizes the blocks from fromBlock to toBlock - 1 and forgets the activity of toBlock
+     */
+    private void updateActivity(int fromBlock, int toBlock){
+        final int required = (toBlock >>> ADDRESS_BITS_PER_WORD) + 1;
+        if(activityKnown.length < required){
+            int length = Math.max(2 * activityKnown.length, required);
+            activity = Arrays.copyOf(activity, length);
+            activityKnown = Arrays.copyOf(activityKnown, length);
+        }
+
+        for(int block = fromBlock; block < toBlock; ++block){
+            final int start = block * ACTIVITY_BLOCK_WORDS;
+            final int end = Math.min(start + ACTIVITY_BLOCK_WORDS, wordsInUse + 1);
+            long carry = (start > 0 && start <= wordsInUse) ? words[start-1] >>> (BITS_PER_WORD - 1) : 0;
+            long edges = 0;
+            for(int w = start; w < end && edges == 0; ++w){
+                long word = w < wordsInUse ? words[w] : 0;
+                edges = word ^ ((word << 1) | carry);
+                // First sample has no edge
+                if(w == 0) edges &= ~1L;
+                carry = word >>> (BITS_PER_WORD - 1);
+            }
+
+            final int n = block >>> ADDRESS_BITS_PER_WORD;
+            if(edges != 0) activity[n] |= 1L << block;
+            else activity[n] &= ~(1L << block);
+            activityKnown[n] |= 1L << block;
+        }
+        activityKnown[toBlock >>> ADDRESS_BITS_PER_WORD] &= ~(1L << toBlock);
+    }
+
+    /**
+     * @return true if the block is known to have no edges, so all its samples are equal to the sample before it
+     */
+    private boolean isQuietBlock(int block){
+        final int n = block >>> ADDRESS_BITS_PER_WORD;
+        return n < activityKnown.length && ((activityKnown[n] & ~activity[n]) & (1L << block)) != 0;
+    }
+
+    /**
+     * Jumps over the quiet blocks starting at the given word
+     * @param w word index, the first word of a block whose previous sample isn't the one being searched
+     * @return first word that must be scanned
+     */
+    private int skipQuietBlocks(int w){
+        while(w < wordsInUse && isQuietBlock(w / ACTIVITY_BLOCK_WORDS)) w += ACTIVITY_BLOCK_WORDS;
+        return w;
+    }
+
+    /**
+     * Summarizes every block of the activity map. Blocks written with {@link #setWords(int, long[], int)} are
+     *  summarized as they are completed, this is only useful for signals written sample by sample that are
+     *  searched many times.
+     */
+    public void updateActivityMap(){
+        updateActivity(0, blockIndex(wordsInUse * BITS_PER_WORD) + 1);
+    }
+
+    /**
+     * @param fromIndex first sample
+     * @param toIndex sample after the last one
+     * @return false if the activity map knows there isn't any edge from fromIndex to toIndex - 1, true if there
+     *  may be one
+     */
+    public boolean mayHaveEdges(int fromIndex, int toIndex){
+        checkRange(fromIndex, toIndex);
+        if(fromIndex == toIndex) return false;
+        for(int block = blockIndex(fromIndex); block <= blockIndex(toIndex - 1); ++block){
+            if(!isQuietBlock(block)) return true;
+        }
+        return false;
+    }
+
+	@Override
+	public boolean get(int index){
+        if(index < 0) throw new IndexOutOfBoundsException("index < 0: " + index);
+        int w = wordIndex(index);
+        return (w < wordsInUse) && ((words[w] & (1L << index)) != 0);
     }
 
-    @Override
 	public void set(int index, boolean state) {
-		if(index >= currentSize) currentSize = index;
-		super.set(index, state);
+		if(state) set(index);
+        else clear(index);
 	}
 
-	@Override
 	public void set(int index) {
-		if(index >= currentSize) currentSize = index;
-		super.set(index);
+        edgeIndex = null;
+        if(index < 0) throw new IndexOutOfBoundsException("index < 0: " + index);
+        invalidateActivity(index, index + 1);
+        int w = wordIndex(index);
+        expandTo(w);
+        words[w] |= (1L << index);
+        updateSize(index + 1);
 	}
 
-	@Override
 	public void set(int fromIndex, int toIndex, boolean state) {
-		if(toIndex >= currentSize) currentSize = toIndex;
-		super.set(fromIndex, toIndex, state);
+		if(state) set(fromIndex, toIndex);
+        else clear(fromIndex, toIndex);
 	}
 
-	@Override
 	public void set(int fromIndex, int toIndex) {
-		if(toIndex >= currentSize) currentSize = toIndex;
-		super.set(fromIndex, toIndex);
+        edgeIndex = null;
+        checkRange(fromIndex, toIndex);
+        invalidateActivity(fromIndex, toIndex);
+        updateSize(toIndex);
+        if(fromIndex == toIndex) return;
+
+        int startWord = wordIndex(fromIndex);
+        int endWord = wordIndex(toIndex - 1);
+        expandTo(endWord);
+
+        long firstWordMask = WORD_MASK << fromIndex;
+        long lastWordMask = WORD_MASK >>> -toIndex;
+        if(startWord == endWord){
+            words[startWord] |= (firstWordMask & lastWordMask);
+        }else{
+            words[startWord] |= firstWordMask;
+            for(int n = startWord+1; n < endWord; ++n) words[n] = WORD_MASK;
+            words[endWord] |= lastWordMask;
+        }
 	}
 
-	@Override
 	public void clear() {
+        edgeIndex = null;
 		currentSize = 0;
-		super.clear();
+        Arrays.fill(words, 0, wordsInUse, 0);
+        wordsInUse = 0;
+        Arrays.fill(activityKnown, 0);
 	}
 
-	@Override
+    /**
+     * Removes all the samples giving the words back to the pool of {@link #LogicBitSet(int, CapturePool)}. The bit
+     *  set can still be used, it takes new words from the pool when it is written.
+     */
+    public void release(){
+        clear();
+        if(pool != null){
+            pool.release(words, 0);
+            words = pool.takeWords(1);
+        }
+    }
+
 	public void clear(int index) {
-		if(index >= currentSize) currentSize = index;
-		super.clear(index);
+        edgeIndex = null;
+        if(index < 0) throw new IndexOutOfBoundsException("index < 0: " + index);
+        invalidateActivity(index, index + 1);
+        updateSize(index + 1);
+        int w = wordIndex(index);
+        if(w >= wordsInUse) return;
+        words[w] &= ~(1L << index);
+        recalculateWordsInUse();
 	}
-	
-	@Override
+
 	public void clear(int fromIndex, int toIndex) {
-		if(toIndex >= currentSize) currentSize = toIndex;
-		super.clear(fromIndex, toIndex);
+        edgeIndex = null;
+        checkRange(fromIndex, toIndex);
+        invalidateActivity(fromIndex, toIndex);
+        updateSize(toIndex);
+        if(fromIndex == toIndex) return;
+
+        int startWord = wordIndex(fromIndex);
+        if(startWord >= wordsInUse) return;
+        int endWord = wordIndex(toIndex - 1);
+        if(endWord >= wordsInUse){
+            toIndex = wordsInUse * BITS_PER_WORD;
+            endWord = wordsInUse - 1;
+        }
+
+        long firstWordMask = WORD_MASK << fromIndex;
+        long lastWordMask = WORD_MASK >>> -toIndex;
+        if(startWord == endWord){
+            words[startWord] &= ~(firstWordMask & lastWordMask);
+        }else{
+            words[startWord] &= ~firstWordMask;
+            for(int n = startWord+1; n < endWord; ++n) words[n] = 0;
+            words[endWord] &= ~lastWordMask;
+        }
+        recalculateWordsInUse();
 	}
 
+    /**
+     * Gets 64 samples at once
+     * @param wordIndex word number, word n holds samples from n*64 to n*64 + 63
+     * @return samples where bit 0 is the sample n*64
+     */
+    @Override
+    public long getWord(int wordIndex){
+        if(wordIndex < 0) throw new IndexOutOfBoundsException("wordIndex < 0: " + wordIndex);
+        return wordIndex < wordsInUse ? words[wordIndex] : 0;
+    }
+
+    /**
+     * Copies nBits samples from the given words starting at fromIndex, overwriting the samples
+     *  already there. fromIndex doesn't need to be aligned to a word.
+     *
+     * @param fromIndex index of the first sample to write
+     * @param src samples to write where bit 0 of src[0] is the first sample
+     * @param nBits number of samples to write
+     */
+    public void setWords(int fromIndex, long[] src, int nBits){
+        edgeIndex = null;
+        if(fromIndex < 0) throw new IndexOutOfBoundsException("fromIndex < 0: " + fromIndex);
+        if(nBits <= 0) return;
+
+        final int toIndex = fromIndex + nBits;
+        final int startWord = wordIndex(fromIndex);
+        final int shift = fromIndex & (BITS_PER_WORD - 1);
+        final int srcWords = wordIndex(nBits - 1) + 1;
+        expandTo(wordIndex(toIndex - 1));
+
+        if(shift == 0){
+            int fullWords = nBits >>> ADDRESS_BITS_PER_WORD;
+            System.arraycopy(src, 0, words, startWord, fullWords);
+            if(fullWords < srcWords){
+                long mask = WORD_MASK >>> -nBits;
+                words[startWord+fullWords] = (words[startWord+fullWords] & ~mask) | (src[fullWords] & mask);
+            }
+        }else{
+            for(int n = 0; n < srcWords; ++n){
+                int bits = Math.min(BITS_PER_WORD, nBits - (n << ADDRESS_BITS_PER_WORD));
+                long mask = WORD_MASK >>> (BITS_PER_WORD - bits);
+                long word = src[n] & mask;
+
+                // Low part goes in this word, the part that doesn't fit goes in the next one
+                words[startWord+n] = (words[startWord+n] & ~(mask << shift)) | (word << shift);
+                if(bits + shift > BITS_PER_WORD){
+                    long highMask = mask >>> (BITS_PER_WORD - shift);
+                    words[startWord+n+1] = (words[startWord+n+1] & ~highMask) | (word >>> (BITS_PER_WORD - shift));
+                }
+            }
+        }
+
+        recalculateWordsInUse();
+        updateSize(toIndex);
+        updateActivity(blockIndex(fromIndex), blockIndex(toIndex));
+    }
+
+    /**
+     * Appends the samples of another {@link com.protocolanalyzer.api.LogicBitSet} after the last sample
+     * @param bits samples to append
+     */
+    public void append(LogicBitSet bits){
+        final int fromIndex = currentSize;
+        setWords(fromIndex, bits.words, Math.min(bits.length(), bits.wordsInUse * BITS_PER_WORD));
+        updateSize(fromIndex + bits.length());
+    }
+
+    /**
+     * Removes the samples before the given index moving the rest down, so sample index becomes sample 0
+     * @param index number of samples to remove from the start
+     */
+    public void discardBefore(int index){
+        if(index <= 0) return;
+        edgeIndex = null;
+        if(index >= currentSize){
+            clear();
+            return;
+        }
+
+        final int wordShift = wordIndex(index);
+        final int bitShift = index & (BITS_PER_WORD - 1);
+        final int newWordsInUse = Math.max(wordsInUse - wordShift, 0);
+
+        if(bitShift == 0){
+            System.arraycopy(words, wordShift, words, 0, newWordsInUse);
+        }else{
+            for(int n = 0; n < newWordsInUse; ++n){
+                long high = (n + wordShift + 1 < wordsInUse) ? words[n + wordShift + 1] << (BITS_PER_WORD - bitShift) : 0;
+                words[n] = (words[n + wordShift] >>> bitShift) | high;
+            }
+        }
+        Arrays.fill(words, newWordsInUse, wordsInUse, 0);
+        Arrays.fill(activityKnown, 0);
+        wordsInUse = newWordsInUse;
+        recalculateWordsInUse();
+        currentSize -= index;
+    }
+
+    /**
+     * Index of the next bit set to '1' starting in the given index
+     * @param fromIndex where to start searching
+     * @return index of the next '1', -1 if there is none
+     */
+    @Override
+    public int nextSetBit(int fromIndex){
+        if(fromIndex < 0) throw new IndexOutOfBoundsException("fromIndex < 0: " + fromIndex);
+        int w = wordIndex(fromIndex);
+        if(w >= wordsInUse) return -1;
+
+        long word = words[w] & (WORD_MASK << fromIndex);
+        while(true){
+            if(word != 0) return (w * BITS_PER_WORD) + Long.numberOfTrailingZeros(word);
+            if(++w % ACTIVITY_BLOCK_WORDS == 0) w = skipQuietBlocks(w);
+            if(w >= wordsInUse) return -1;
+            word = words[w];
+        }
+    }
+
+    /**
+     * Index of the next bit set to '0' starting in the given index
+     * @param fromIndex where to start searching
+     * @return index of the next '0'. There is always one since samples not written are '0'
+     */
+    @Override
+    public int nextClearBit(int fromIndex){
+        if(fromIndex < 0) throw new IndexOutOfBoundsException("fromIndex < 0: " + fromIndex);
+        int w = wordIndex(fromIndex);
+        if(w >= wordsInUse) return fromIndex;
+
+        long word = ~words[w] & (WORD_MASK << fromIndex);
+        while(true){
+            if(word != 0) return (w * BITS_PER_WORD) + Long.numberOfTrailingZeros(word);
+            if(++w % ACTIVITY_BLOCK_WORDS == 0) w = skipQuietBlocks(w);
+            if(w >= wordsInUse) return wordsInUse * BITS_PER_WORD;
+            word = ~words[w];
+        }
+    }
+
 	/**
-     * Index of the last bit that was set to '1' or '0'
+     * Number of samples, that is the index of the last bit that was set to '1' or '0' plus one
 	 */
 	@Override
 	public int length() {
-		return currentSize == 0 ? 0 : currentSize + 1;
+		return currentSize;
 	}
 
-	/**
-     * Search for the next falling edge starting in the given index
-	 * @param index where to start searching
-	 * @return falling edge index where it's already '0', -1 if no falling edge exists
-	 */
-	public int nextFallingEdge(int index){
-		if(index >= 0) {
-			int t = super.nextSetBit(index);
-			if(t != -1) return super.nextClearBit(t);
-		}
-		return -1;
-	}
-	
-	/**
-     * Search for the next rising edge starting in the given index
-     * @param index where to start searching
-     * @return rising edge index where it's already '1', -1 if no rising edge exists
-	 */
-	public int nextRisingEdge(int index){
-		if(index >= 0) {
-			return super.nextSetBit( super.nextClearBit(index) );
-		}
-		return -1;
-	}
-	
-	/**
-     * Search for the next set bit and returns the index in the middle of it. It is
-     *  intended for usage with clock signal so we get into the middle of the clock
-     *  pulse.
+    /**
+     * Number of samples that can be held without growing the internal storage
+     */
+    public int size(){
+        return words.length * BITS_PER_WORD;
+    }
+
+    /**
+     * Number of bits set to '1'
+     */
+    public int cardinality(){
+        int sum = 0;
+        for(int n = 0; n < wordsInUse; ++n) sum += Long.bitCount(words[n]);
+        return sum;
+    }
+
+    /**
+     * @return true if there isn't any bit set to '1'
+     */
+    public boolean isEmpty(){
+        return wordsInUse == 0;
+    }
+
+    /**
+     * Copy of the samples as a {@link java.util.BitSet}
+     */
+    public BitSet toBitSet(){
+        return BitSet.valueOf(Arrays.copyOf(words, wordsInUse));
+    }
+
+    /**
+     * Enables or disables the edge index. When enabled the first edge search lists every rising and falling
+     *  edge of the channel so the next searches are binary searches instead of scanning the words. The list
+     *  is built again after any write. It is intended for clock channels which are searched edge by edge.
      *
-	 * @param index where to start searching
-	 * @return bit index in the middle of it, -1 if it doesn't exist
-	 */
-	public int nextSetBitToTest(int index) {
-		int rising = nextRisingEdge(index);
-		int fall = nextFallingEdge(rising);
-		
-		// Test if valid
-		if(rising == -1 || fall == -1) return -1;
-				
-		return ( rising + ((fall - rising)/2) );
-	}
+     * @param enabled true to use the edge index
+     * @see com.protocolanalyzer.api.EdgeCursor
+     */
+    public void setEdgeIndexEnabled(boolean enabled){
+        edgeIndexEnabled = enabled;
+        if(!enabled) edgeIndex = null;
+    }
+
+    public boolean isEdgeIndexEnabled(){
+        return edgeIndexEnabled;
+    }
+
+    /**
+     * Gets the edge index building it if needed
+     * @return edge index, null if it is disabled
+     */
+    EdgeIndex getEdgeIndex(){
+        if(!edgeIndexEnabled) return null;
+
+        EdgeIndex index = edgeIndex;
+        if(index == null) edgeIndex = index = new EdgeIndex(words, wordsInUse);
+        return index;
+    }
+
+    @Override
+    public int nextFallingEdge(int index) {
+        EdgeIndex edges = getEdgeIndex();
+        if(edges == null) return WritableLogicSignal.super.nextFallingEdge(index);
+        if(index < 0) return -1;
+
+        int n = EdgeIndex.edgeAfter(edges.falling, edges.fallingCount, index, 0);
+        return n < edges.fallingCount ? edges.falling[n] : -1;
+    }
+
+    @Override
+    public int nextRisingEdge(int index) {
+        EdgeIndex edges = getEdgeIndex();
+        if(edges == null) return WritableLogicSignal.super.nextRisingEdge(index);
+        if(index < 0) return -1;
+
+        int n = EdgeIndex.edgeAfter(edges.rising, edges.risingCount, index, 0);
+        return n < edges.risingCount ? edges.rising[n] : -1;
+    }
+
+    /** Kinds of edges copied by {@link #copyEdges(int, int, int[], int)} */
+    private static final int RISING_EDGES = 1;
+    private static final int FALLING_EDGES = 2;
+
+    @Override
+    public int getRisingEdges(int fromIndex, int toIndex, int[] out){
+        EdgeIndex edges = getEdgeIndex();
+        if(edges != null) return copyIndexedEdges(edges.rising, edges.risingCount, fromIndex, toIndex, out);
+        return copyEdges(fromIndex, toIndex, out, RISING_EDGES);
+    }
+
+    @Override
+    public int getFallingEdges(int fromIndex, int toIndex, int[] out){
+        EdgeIndex edges = getEdgeIndex();
+        if(edges != null) return copyIndexedEdges(edges.falling, edges.fallingCount, fromIndex, toIndex, out);
+        return copyEdges(fromIndex, toIndex, out, FALLING_EDGES);
+    }
+
+    @Override
+    public int getEdges(int fromIndex, int toIndex, int[] out){
+        return copyEdges(fromIndex, toIndex, out, RISING_EDGES | FALLING_EDGES);
+    }
+
+    /**
+     * Copies the edges of the range from the edge index
+     */
+    private static int copyIndexedEdges(int[] edges, int count, int fromIndex, int toIndex, int[] out){
+        if(fromIndex < 0) throw new IndexOutOfBoundsException("fromIndex < 0: " + fromIndex);
+
+        final int start = EdgeIndex.edgeAfter(edges, count, fromIndex - 1, 0);
+        final int end = EdgeIndex.edgeAfter(edges, count, toIndex - 1, start);
+        final int n = Math.min(end - start, out.length);
+        System.arraycopy(edges, start, out, 0, n);
+        return n;
+    }
+
+    /**
+     * Copies the edges of the range comparing each word with itself shifted one sample
+     * @param kinds {@link #RISING_EDGES}, {@link #FALLING_EDGES} or both
+     */
+    private int copyEdges(int fromIndex, int toIndex, int[] out, int kinds){
+        if(fromIndex < 0) throw new IndexOutOfBoundsException("fromIndex < 0: " + fromIndex);
+
+        // First sample has no edge
+        fromIndex = Math.max(fromIndex, 1);
+        if(toIndex <= fromIndex || out.length == 0) return 0;
+
+        // Words after wordsInUse are '0', only the first of them can have an edge
+        final int firstWord = wordIndex(fromIndex);
+        final int lastWord = wordIndex(toIndex - 1);
+        final int endWord = Math.min(lastWord, wordsInUse);
+        long carry = firstWord > 0 && firstWord <= wordsInUse ? words[firstWord-1] >>> (BITS_PER_WORD - 1) : 0;
+        int count = 0;
+
+        for(int w = firstWord; w <= endWord; ++w){
+            // A quiet block has no edges and ends with the same sample than the carry
+            if(w % ACTIVITY_BLOCK_WORDS == 0 && w > firstWord){
+                w = skipQuietBlocks(w);
+                if(w > endWord) break;
+            }
+            long word = w < wordsInUse ? words[w] : 0;
+            long previous = (word << 1) | carry;
+            carry = word >>> (BITS_PER_WORD - 1);
+
+            long edges = 0;
+            if((kinds & RISING_EDGES) != 0) edges |= word & ~previous;
+            if((kinds & FALLING_EDGES) != 0) edges |= ~word & previous;
+            if(w == firstWord) edges &= WORD_MASK << fromIndex;
+            if(w == lastWord) edges &= WORD_MASK >>> -toIndex;
+
+            for(; edges != 0; edges &= edges - 1){
+                if(count == out.length) return count;
+                out[count++] = (w * BITS_PER_WORD) + Long.numberOfTrailingZeros(edges);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Sorted indexes of every rising and falling edge of a {@link com.protocolanalyzer.api.LogicBitSet}
+     */
+    static final class EdgeIndex {
+
+        /** Words whose transitions are found at once */
+        private static final int EDGE_BLOCK_WORDS = 1024;
+
+        final int[] rising;
+        final int[] falling;
+        final int risingCount;
+        final int fallingCount;
+
+        EdgeIndex(long[] words, int wordsInUse){
+            int[] rising = new int[16];
+            int[] falling = new int[16];
+            int risingCount = 0, fallingCount = 0;
+            long carry = 0;
+
+            final SampleKernels kernels = SampleKernels.getDefault();
+            final long[] blockRises = new long[EDGE_BLOCK_WORDS];
+            final long[] blockFalls = new long[EDGE_BLOCK_WORDS];
+
+            for(int block = 0; block <= wordsInUse; block += EDGE_BLOCK_WORDS){
+                int count = Math.min(EDGE_BLOCK_WORDS, wordsInUse - block);
+                carry = kernels.transitions(words, block, count, carry, blockRises, blockFalls);
+
+                // One more word so a channel ending in '1' gets its last falling edge
+                if(count < EDGE_BLOCK_WORDS){
+                    blockRises[count] = 0;
+                    blockFalls[count] = carry;
+                    ++count;
+                }
+
+                for(int n = 0; n < count; ++n){
+                    int w = block + n;
+                    long rises = blockRises[n];
+                    long falls = blockFalls[n];
+                    // First sample has no edge
+                    if(w == 0) rises &= ~1L;
+
+                    int nRises = Long.bitCount(rises);
+                    if(risingCount + nRises > rising.length) rising = Arrays.copyOf(rising, Math.max(2 * rising.length, risingCount + nRises));
+                    for(; rises != 0; rises &= rises - 1){
+                        rising[risingCount++] = (w * BITS_PER_WORD) + Long.numberOfTrailingZeros(rises);
+                    }
+
+                    int nFalls = Long.bitCount(falls);
+                    if(fallingCount + nFalls > falling.length) falling = Arrays.copyOf(falling, Math.max(2 * falling.length, fallingCount + nFalls));
+                    for(; falls != 0; falls &= falls - 1){
+                        falling[fallingCount++] = (w * BITS_PER_WORD) + Long.numberOfTrailingZeros(falls);
+                    }
+                }
+            }
+
+            this.rising = rising;
+            this.falling = falling;
+            this.risingCount = risingCount;
+            this.fallingCount = fallingCount;
+        }
+
+        /**
+         * Position of the first edge after the given index. The search gallops from hint so walking the
+         *  edges forward costs O(1) amortized.
+         *
+         * @param edges sorted edge indexes
+         * @param count number of edges
+         * @param index sample index
+         * @param hint position from where to start searching, a previous result
+         * @return position of the first edge greater than index, count if there isn't any
+         */
+        static int edgeAfter(int[] edges, int count, int index, int hint){
+            int low, high;
+            if(hint > 0 && hint <= count && edges[hint-1] > index){
+                // Searching backwards, plain binary search
+                low = 0;
+                high = hint;
+            }else{
+                low = Math.max(Math.min(hint, count), 0);
+                int bound = 1;
+                while(low + bound <= count && edges[low + bound - 1] <= index){
+                    low += bound;
+                    bound <<= 1;
+                }
+                high = Math.min(low + bound, count);
+            }
+
+            while(low < high){
+                int mid = (low + high) >>> 1;
+                if(edges[mid] <= index) low = mid + 1;
+                else high = mid;
+            }
+            return low;
+        }
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if(this == obj) return true;
+        if(!(obj instanceof LogicBitSet)) return false;
+
+        LogicBitSet set = (LogicBitSet)obj;
+        if(wordsInUse != set.wordsInUse) return false;
+        for(int n = 0; n < wordsInUse; ++n){
+            if(words[n] != set.words[n]) return false;
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        long h = 1234;
+        for(int n = wordsInUse; --n >= 0; ) h ^= words[n] * (n + 1);
+        return (int)((h >> 32) ^ h);
+    }
+
+    /**
+     * Indexes of the bits set to '1' in the same format as {@link java.util.BitSet#toString()}
+     */
+    @Override
+    public String toString() {
+        StringBuilder b = new StringBuilder("{");
+        int n = nextSetBit(0);
+        if(n != -1){
+            b.append(n);
+            while((n = nextSetBit(n+1)) != -1) b.append(", ").append(n);
+        }
+        return b.append('}').toString();
+    }
 
 }
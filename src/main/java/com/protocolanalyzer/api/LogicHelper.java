@@ -2,9 +2,16 @@ package com.protocolanalyzer.api;
 
 import com.protocolanalyzer.api.utils.ByteArrayBuffer;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
 public class LogicHelper {
     
-	private static final boolean DEBUG = true;
+	private static final boolean DEBUG = false;
+    /** Samples demultiplexed before writing them into each channel */
+    private static final int DEMUX_BLOCK_SAMPLES = 4096;
+    private static final int DEMUX_BLOCK_WORDS = DEMUX_BLOCK_SAMPLES / 64;
                 
 	/**
 	 * Test bit inside a byte
@@ -108,67 +115,374 @@ public class LogicHelper {
 	 * @return byte[] array containing the decompressed data
 	 */
 	public static byte[] runLengthDecode(final ByteArrayBuffer data){
-		
-		int length = data.length();
-		int repeat;
-		ByteArrayBuffer returnData = new ByteArrayBuffer(data.length());
-		
+		byte[] samples = new byte[runLengthSamples(data)];
+		runLengthDecode(data, samples);
+		return samples;
+	}
+
+	/**
+	 * Number of samples of run length encoded data
+	 * @param data {@link com.protocolanalyzer.api.utils.ByteArrayBuffer} with the compressed data
+	 * @return number of bytes {@link #runLengthDecode(ByteArrayBuffer, byte[])} writes
+	 */
+	public static int runLengthSamples(final ByteArrayBuffer data){
+		final int length = data.length();
+		int samples = 0;
+		for(int n = 0; n < length; n += 3){
+			samples += LogicHelper.byteToInt((byte)data.byteAt(n), (byte)data.byteAt(n+1));
+		}
+		return samples;
+	}
+
+	/**
+	 * Decodes the Run Length Algorithm into the given buffer, which can be reused from one capture to the next
+	 *  (see {@link com.protocolanalyzer.api.CapturePool#takeBytes(int)})
+	 * @param data {@link com.protocolanalyzer.api.utils.ByteArrayBuffer} with the compressed data
+	 * @param out where the decompressed data is written, at least {@link #runLengthSamples(ByteArrayBuffer)} bytes
+	 * @return number of bytes written
+	 */
+	public static int runLengthDecode(final ByteArrayBuffer data, final byte[] out){
+		final int length = data.length();
+		int samples = 0;
+		for(int n = 0; n < length; n += 3){
+			int repeat = LogicHelper.byteToInt((byte)data.byteAt(n), (byte)data.byteAt(n+1));
+			Arrays.fill(out, samples, samples + repeat, (byte)data.byteAt(n+2));
+			samples += repeat;
+		}
+		return samples;
+	}
+	
+	/**
+	 * Decodes the Run Length Algorithm straight into a {@link com.protocolanalyzer.api.RunLengthBitSet} for each
+	 *  {@link com.protocolanalyzer.api.Protocol} so the samples are never expanded to one byte each
+	 * @param data {@link com.protocolanalyzer.api.utils.ByteArrayBuffer} with the compressed data, being each run
+	 *             the count LSB, the count MSB and the value where bit 0 is channel 0 to bit 7 channel 7
+	 * @param list list[N] gets bit N of each sample, null channels are skipped
+	 */
+	public static void runLengthToChannel(final ByteArrayBuffer data, Protocol[] list){
+		final int channels = Math.min(list.length, 8);
+		final int length = data.length();
+		final RunLengthBitSet[] signals = new RunLengthBitSet[channels];
+
+		for(int ch = 0; ch < channels; ++ch){
+			if(list[ch] != null) signals[ch] = new RunLengthBitSet();
+		}
+
 		for(int n = 0; n < length; n += 3){
-			repeat = LogicHelper.byteToInt((byte)data.byteAt(n), (byte)data.byteAt(n+1));
-			for(int k = 0; k < repeat; ++k){
-				returnData.append(data.byteAt(n+2));
+			int repeat = LogicHelper.byteToInt((byte)data.byteAt(n), (byte)data.byteAt(n+1));
+			int value = data.byteAt(n+2);
+			for(int ch = 0; ch < channels; ++ch){
+				if(signals[ch] != null) signals[ch].addRun(LogicHelper.bitTest(value, ch), repeat);
 			}
 		}
-		
-		return returnData.toByteArray();
+
+		for(int ch = 0; ch < channels; ++ch){
+			if(signals[ch] != null) list[ch].setChannelSignal(signals[ch]);
+		}
 	}
 	
 	/**
      * Copy a byte buffer to each {@link com.protocolanalyzer.api.Protocol}
 	 * @param data byte[] array containing the data from each channel being bit 0 the data from channel 0
      *             to bit 7 the data from channel 7
+     * @param list list[N] gets bit N of each sample, null channels are skipped
 	 */
 	 public static void bufferToChannel (final byte[] data, Protocol[] list) {
 		
 		if(DEBUG) System.out.println("LogicHelper - Lenght data array: " + data.length);
 
-         for (Protocol aList : list) aList.getChannelBitsData().clear();
-		
-		for(int n=0; n < data.length; ++n){						// Go through received bytes
-			for(int bit=0; bit < list.length; ++bit){			// Go through each channel
-				if(LogicHelper.bitTest(data[n], bit)){			// Bit is 1
-					list[bit].getChannelBitsData().set(n);		// bit is the channel number
-				}
-				else{											// Bit is 0
-					list[bit].getChannelBitsData().clear(n);
-				}
-			}
-		}
+         clearChannels(list);
+         demuxToChannels(ByteBuffer.wrap(data), 0, data.length, 0, list);
 	}
 	 
 	/**
-	 * Adds a byte buffer to each {@link com.protocolanalyzer.api.Protocol}
+	 * Adds a byte buffer to each {@link com.protocolanalyzer.api.Protocol} after the samples it already has
 	 * @param data byte[] array containing the data from each channel being bit 0 the data from channel 0
      *             to bit 7 the data from channel 7
+     * @param list list[N] gets bit N of each sample, null channels are skipped
 	 */
 	 public static void addBufferToChannel (final byte[] data, Protocol[] list) {
 		
 		if(DEBUG) System.out.println("LogicHelper - Lenght data array: " + data.length);
-		if(DEBUG) System.out.println("LogicHelper - Lenght BitSet: " + list[0].getChannelBitsData().length());
-		int initialLength = list[0].getBitsNumber()+1;
 
-		for(int n=initialLength; n < (initialLength+data.length); ++n){		// Go through received bytes
-			for(int bit=0; bit < list.length; ++bit){			            // Go through each channel
-				if(LogicHelper.bitTest(data[n], bit)){			            // Bit is 1
-					list[bit].getChannelBitsData().set(n);		            // bit is the channel number
-				}
-				else{											            // Bit is 0
-					list[bit].getChannelBitsData().clear(n);
-				}
-			}
-		}
+         demuxToChannels(ByteBuffer.wrap(data), 0, data.length, firstChannel(list).getBitsNumber(), list);
 	}
 
+    /**
+     * Copy 16 channels samples to each {@link com.protocolanalyzer.api.Protocol}
+     * @param data samples, bit N of each sample belongs to channel N
+     * @param list list[N] gets bit N of each sample, null channels are skipped
+     */
+    public static void bufferToChannel (final short[] data, Protocol[] list) {
+        clearChannels(list);
+        demuxWideToChannels(shortReader(data), data.length, 2, 0, list);
+    }
+
+    /**
+     * Copy 32 channels samples to each {@link com.protocolanalyzer.api.Protocol}
+     * @param data samples, bit N of each sample belongs to channel N
+     * @param list list[N] gets bit N of each sample, null channels are skipped
+     */
+    public static void bufferToChannel (final int[] data, Protocol[] list) {
+        clearChannels(list);
+        demuxWideToChannels(intReader(data), data.length, 4, 0, list);
+    }
+
+    /**
+     * Copy 64 channels samples to each {@link com.protocolanalyzer.api.Protocol}
+     * @param data samples, bit N of each sample belongs to channel N
+     * @param list list[N] gets bit N of each sample, null channels are skipped
+     */
+    public static void bufferToChannel (final long[] data, Protocol[] list) {
+        clearChannels(list);
+        demuxWideToChannels(longReader(data), data.length, 8, 0, list);
+    }
+
+    /**
+     * Copy the samples between the position and the limit of a buffer to each
+     *  {@link com.protocolanalyzer.api.Protocol}. The buffer position is not modified.
+     * @param data samples in the buffer byte order, bit N of each sample belongs to channel N
+     * @param bytesPerSample 1, 2, 4 or 8 for 8, 16, 32 or 64 channels
+     * @param list list[N] gets bit N of each sample, null channels are skipped
+     */
+    public static void bufferToChannel (final ByteBuffer data, final int bytesPerSample, Protocol[] list) {
+        clearChannels(list);
+        demuxBufferToChannels(data, bytesPerSample, 0, list);
+    }
+
+    /**
+     * Adds 16 channels samples to each {@link com.protocolanalyzer.api.Protocol} after the samples it already has
+     * @see #bufferToChannel(short[], Protocol[])
+     */
+    public static void addBufferToChannel (final short[] data, Protocol[] list) {
+        demuxWideToChannels(shortReader(data), data.length, 2, firstChannel(list).getBitsNumber(), list);
+    }
+
+    /**
+     * Adds 32 channels samples to each {@link com.protocolanalyzer.api.Protocol} after the samples it already has
+     * @see #bufferToChannel(int[], Protocol[])
+     */
+    public static void addBufferToChannel (final int[] data, Protocol[] list) {
+        demuxWideToChannels(intReader(data), data.length, 4, firstChannel(list).getBitsNumber(), list);
+    }
+
+    /**
+     * Adds 64 channels samples to each {@link com.protocolanalyzer.api.Protocol} after the samples it already has
+     * @see #bufferToChannel(long[], Protocol[])
+     */
+    public static void addBufferToChannel (final long[] data, Protocol[] list) {
+        demuxWideToChannels(longReader(data), data.length, 8, firstChannel(list).getBitsNumber(), list);
+    }
+
+    /**
+     * Adds the samples of a buffer to each {@link com.protocolanalyzer.api.Protocol} after the samples it
+     *  already has
+     * @see #bufferToChannel(ByteBuffer, int, Protocol[])
+     */
+    public static void addBufferToChannel (final ByteBuffer data, final int bytesPerSample, Protocol[] list) {
+        demuxBufferToChannels(data, bytesPerSample, firstChannel(list).getBitsNumber(), list);
+    }
+
+    /**
+     * Samples of a buffer from its position, one byte samples go through {@link com.protocolanalyzer.api.SampleKernels#demuxBlock(ByteBuffer, int, int, long[][])}
+     *  like the ones of a byte[]
+     */
+    private static void demuxBufferToChannels (final ByteBuffer data, final int bytesPerSample, final int startIndex,
+                                               final Protocol[] list){
+        if(bytesPerSample != 1 && bytesPerSample != 2 && bytesPerSample != 4 && bytesPerSample != 8)
+            throw new IllegalArgumentException("Bytes per sample must be 1, 2, 4 or 8: " + bytesPerSample);
+        final int length = data.remaining() / bytesPerSample;
+        // Duplicated so the byte order and position of the caller buffer are not changed
+        final ByteBuffer buffer = data.duplicate().order(data.order());
+
+        if(bytesPerSample == 1){
+            demuxToChannels(buffer, data.position(), length, startIndex, list);
+            return;
+        }
+        final int position = data.position();
+        demuxWideToChannels((from, count, out) -> {
+            int index = position + from * bytesPerSample;
+            for(int n = 0; n < count; ++n, index += bytesPerSample){
+                switch (bytesPerSample){
+                    case 2: out[n] = buffer.getShort(index) & 0xFFFFL; break;
+                    case 4: out[n] = buffer.getInt(index) & 0xFFFFFFFFL; break;
+                    default: out[n] = buffer.getLong(index); break;
+                }
+            }
+        }, length, bytesPerSample, startIndex, list);
+    }
+
+    private static void clearChannels (final Protocol[] list){
+        for (Protocol aList : list){
+            if(aList == null) continue;
+            LogicSignal signal = aList.getChannelSignal();
+            if(signal instanceof WritableLogicSignal) ((WritableLogicSignal)signal).clear();
+            // Signals that can't be written, like a mapped channel, are replaced instead of copied
+            else aList.setChannelBitsData(new LogicBitSet());
+        }
+    }
+
+    private static Protocol firstChannel (final Protocol[] list){
+        for (Protocol aList : list){
+            if(aList != null) return aList;
+        }
+        throw new IllegalArgumentException("No channels to demultiplex");
+    }
+
+    /**
+     * Writes demultiplexed words into the storage of one channel
+     * @throws IllegalStateException if the channel holds a signal that can't be written
+     */
+    private static void writeChannel (final Protocol channel, final int startIndex, final long[] words, final int samples){
+        LogicSignal signal = channel.getChannelSignal();
+        if(!(signal instanceof WritableLogicSignal))
+            throw new IllegalStateException("Channel of " + channel.getProtocol() + " protocol can't be written: " +
+                    signal.getClass().getSimpleName());
+        ((WritableLogicSignal)signal).setWords(startIndex, words, samples);
+    }
+
+    /**
+     * Splits the samples into each channel 64 samples at a time. Each group of 8 samples is an 8x8 bit
+     *  matrix (sample x channel) that is transposed so every channel gets its 8 samples in one byte, then
+     *  whole words are written into the {@link com.protocolanalyzer.api.WritableLogicSignal} of each channel.
+     * The demultiplexing is done by {@link com.protocolanalyzer.api.SampleKernels#getDefault()}.
+     *
+     * @param data samples, bit N of each byte belongs to channel N
+     * @param offset index of the buffer of the first sample
+     * @param length number of samples
+     * @param startIndex index of the channels where the first sample is written
+     * @param list channels, list[N] gets bit N of each sample
+     */
+    private static void demuxToChannels (final ByteBuffer data, final int offset, final int length, final int startIndex,
+                                         final Protocol[] list){
+        final int channels = Math.min(list.length, 8);
+        final long[][] block = new long[channels][DEMUX_BLOCK_WORDS];
+        final ByteBuffer buffer = data.order(ByteOrder.LITTLE_ENDIAN);
+        final SampleKernels kernels = SampleKernels.getDefault();
+
+        for(int n = 0; n < length; n += DEMUX_BLOCK_SAMPLES){
+            int samples = Math.min(DEMUX_BLOCK_SAMPLES, length - n);
+            kernels.demuxBlock(buffer, offset + n, samples, block);
+            for(int ch = 0; ch < channels; ++ch){
+                if(list[ch] != null) writeChannel(list[ch], startIndex + n, block[ch], samples);
+            }
+        }
+    }
+
+    /**
+     * Splits samples of 16, 32 or 64 channels. Each sample is copied into a long before it is demultiplexed by
+     *  {@link com.protocolanalyzer.api.SampleKernels#demuxWords(long[], int, long[][])}.
+     *
+     * @param data reader of the samples
+     * @param length number of samples
+     * @param bytesPerSample bytes of each sample
+     * @param startIndex index of the channels where the first sample is written
+     * @param list channels, list[N] gets bit N of each sample
+     */
+    private static void demuxWideToChannels (final SampleReader data, final int length, final int bytesPerSample,
+                                             final int startIndex, final Protocol[] list){
+        final int channels = Math.min(list.length, 8 * bytesPerSample);
+        final long[] samples = new long[DEMUX_BLOCK_SAMPLES];
+        final long[][] block = new long[channels][];
+        for(int ch = 0; ch < channels; ++ch){
+            if(list[ch] != null) block[ch] = new long[DEMUX_BLOCK_WORDS];
+        }
+        final SampleKernels kernels = SampleKernels.getDefault();
+
+        for(int n = 0; n < length; n += DEMUX_BLOCK_SAMPLES){
+            int count = Math.min(DEMUX_BLOCK_SAMPLES, length - n);
+            data.read(n, count, samples);
+            kernels.demuxWords(samples, count, block);
+            for(int ch = 0; ch < channels; ++ch){
+                if(block[ch] != null) writeChannel(list[ch], startIndex + n, block[ch], count);
+            }
+        }
+    }
+
+    /**
+     * Copies samples of a source into longs without sign extension
+     */
+    private interface SampleReader {
+        /**
+         * @param from first sample
+         * @param count number of samples
+         * @param out where sample from + N is copied to out[N]
+         */
+        void read(int from, int count, long[] out);
+    }
+
+    private static SampleReader shortReader (final short[] data){
+        return (from, count, out) -> {
+            for(int n = 0; n < count; ++n) out[n] = data[from + n] & 0xFFFFL;
+        };
+    }
+
+    private static SampleReader intReader (final int[] data){
+        return (from, count, out) -> {
+            for(int n = 0; n < count; ++n) out[n] = data[from + n] & 0xFFFFFFFFL;
+        };
+    }
+
+    private static SampleReader longReader (final long[] data){
+        return (from, count, out) -> System.arraycopy(data, from, out, 0, count);
+    }
+
+    /**
+     * Demultiplex samples, scalar kernel of {@link com.protocolanalyzer.api.SampleKernels}
+     * @param data samples, bit N of each byte belongs to channel N
+     * @param offset first sample to demultiplex
+     * @param nSamples number of samples to demultiplex
+     * @param out out[N] gets the words for channel N, bit 0 of out[N][0] being the first sample
+     */
+    static void demuxBlock (final ByteBuffer data, final int offset, final int nSamples, final long[][] out){
+        final int channels = out.length;
+        final int end = offset + nSamples;
+
+        for(int n = offset, word = 0; n < end; n += 64, ++word){
+            for(int ch = 0; ch < channels; ++ch) out[ch][word] = 0;
+
+            // 8 samples (one byte each) at a time
+            for(int k = 0; k < 8 && n + 8*k < end; ++k){
+                int pos = n + 8*k;
+                long samples;
+                if(pos + 8 <= end) samples = data.getLong(pos);
+                else{
+                    samples = 0;
+                    for(int b = pos; b < end; ++b) samples |= (data.get(b) & 0xFFL) << (8*(b-pos));
+                }
+
+                // Now byte N has the 8 samples of channel N
+                long transposed = transpose8x8(samples);
+                for(int ch = 0; ch < channels; ++ch){
+                    out[ch][word] |= ((transposed >>> (8*ch)) & 0xFFL) << (8*k);
+                }
+            }
+        }
+    }
+
+    /**
+     * Gathers one channel of 8 samples
+     * @param samples 8 samples, sample N in byte N
+     * @param channel channel number from 0 to 7
+     * @return bit N is the state of the channel in sample N
+     */
+    static int gatherChannel (long samples, int channel){
+        return (int)((((samples >>> channel) & 0x0101010101010101L) * 0x0102040810204080L) >>> 56);
+    }
+
+    /**
+     * Transposes an 8x8 bit matrix where byte N is row N and bit M of it is column M, so bit
+     *  (8*row + column) goes to (8*column + row)
+     * @see <a href="http://www.hackersdelight.org/">Hacker's Delight, section 7-3</a>
+     */
+    static long transpose8x8 (long x){
+        long t;
+        t = (x ^ (x >>> 7))  & 0x00AA00AA00AA00AAL; x = x ^ t ^ (t << 7);
+        t = (x ^ (x >>> 14)) & 0x0000CCCC0000CCCCL; x = x ^ t ^ (t << 14);
+        t = (x ^ (x >>> 28)) & 0x00000000F0F0F0F0L; x = x ^ t ^ (t << 28);
+        return x;
+    }
+
     /**
      * Reverse the bits in the given 32 bit integer but only considering nBits as the
      *  variable length. For examples, turns 1101 to 1011
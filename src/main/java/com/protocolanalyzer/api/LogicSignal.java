@@ -0,0 +1,151 @@
+package com.protocolanalyzer.api;
+
+/**
+ * Samples of one logic channel as seen by the decoders. Samples after {@link #length()} are considered '0'.
+ * Implemented by {@link com.protocolanalyzer.api.LogicBitSet} (one bit per sample) and
+ *  {@link com.protocolanalyzer.api.RunLengthBitSet} (one entry per transition).
+ */
+public interface LogicSignal {
+
+    /**
+     * @param index sample index
+     * @return sample state
+     * @throws IndexOutOfBoundsException if index is negative
+     */
+    boolean get(int index);
+
+    /**
+     * Number of samples
+     */
+    int length();
+
+    /**
+     * Index of the next '1' starting in the given index
+     * @param fromIndex where to start searching
+     * @return index of the next '1', -1 if there is none
+     * @throws IndexOutOfBoundsException if fromIndex is negative
+     */
+    int nextSetBit(int fromIndex);
+
+    /**
+     * Index of the next '0' starting in the given index
+     * @param fromIndex where to start searching
+     * @return index of the next '0', -1 if it isn't known yet
+     * @throws IndexOutOfBoundsException if fromIndex is negative
+     */
+    int nextClearBit(int fromIndex);
+
+    /**
+     * Gets 64 samples at once, built from {@link #get(int)} unless the signal has a faster way. Only the samples of
+     *  the word are read, the searches could go through a whole idle line on each word.
+     * @param wordIndex word number, word n holds samples from n*64 to n*64 + 63
+     * @return samples where bit 0 is the sample n*64
+     * @throws IndexOutOfBoundsException if wordIndex is negative
+     */
+    default long getWord(int wordIndex){
+        if(wordIndex < 0) throw new IndexOutOfBoundsException("wordIndex < 0: " + wordIndex);
+
+        final long start = (long)wordIndex << 6;
+        final int end = (int)Math.min(start + 64, length());
+        long word = 0;
+        for(int n = (int)Math.min(start, end); n < end; ++n){
+            if(get(n)) word |= 1L << n;
+        }
+        return word;
+    }
+
+    /**
+     * Search for the next falling edge starting in the given index
+     * @param index where to start searching
+     * @return falling edge index where it's already '0', -1 if no falling edge exists
+     */
+    default int nextFallingEdge(int index){
+        if(index >= 0) {
+            int t = nextSetBit(index);
+            if(t != -1) return nextClearBit(t);
+        }
+        return -1;
+    }
+
+    /**
+     * Search for the next rising edge starting in the given index
+     * @param index where to start searching
+     * @return rising edge index where it's already '1', -1 if no rising edge exists
+     */
+    default int nextRisingEdge(int index){
+        if(index >= 0) {
+            int t = nextClearBit(index);
+            if(t != -1) return nextSetBit(t);
+        }
+        return -1;
+    }
+
+    /**
+     * Copies the rising edges of a range, an edge at index p being a '1' at p after a '0' at p-1
+     * @param fromIndex first index of the range
+     * @param toIndex index after the last one of the range
+     * @param out where the edge indexes are written in increasing order
+     * @return number of edges copied, less than out.length only if there aren't more edges in the range
+     */
+    default int getRisingEdges(int fromIndex, int toIndex, int[] out){
+        int count = 0;
+        for(int n = nextRisingEdge(Math.max(fromIndex - 1, 0)); n != -1 && n < toIndex && count < out.length; n = nextRisingEdge(n)){
+            out[count++] = n;
+        }
+        return count;
+    }
+
+    /**
+     * Copies the falling edges of a range, an edge at index p being a '0' at p after a '1' at p-1
+     * @param fromIndex first index of the range
+     * @param toIndex index after the last one of the range
+     * @param out where the edge indexes are written in increasing order
+     * @return number of edges copied, less than out.length only if there aren't more edges in the range
+     */
+    default int getFallingEdges(int fromIndex, int toIndex, int[] out){
+        int count = 0;
+        for(int n = nextFallingEdge(Math.max(fromIndex - 1, 0)); n != -1 && n < toIndex && count < out.length; n = nextFallingEdge(n)){
+            out[count++] = n;
+        }
+        return count;
+    }
+
+    /**
+     * Copies the rising and falling edges of a range
+     * @param fromIndex first index of the range
+     * @param toIndex index after the last one of the range
+     * @param out where the edge indexes are written in increasing order
+     * @return number of edges copied, less than out.length only if there aren't more edges in the range
+     */
+    default int getEdges(int fromIndex, int toIndex, int[] out){
+        int count = 0;
+        int n = Math.max(fromIndex - 1, 0);
+        while(count < out.length){
+            int rising = nextRisingEdge(n);
+            int falling = nextFallingEdge(n);
+            n = rising == -1 ? falling : (falling == -1 ? rising : Math.min(rising, falling));
+            if(n == -1 || n >= toIndex) break;
+            out[count++] = n;
+        }
+        return count;
+    }
+
+    /**
+     * Search for the next set bit and returns the index in the middle of it. It is
+     *  intended for usage with clock signal so we get into the middle of the clock
+     *  pulse.
+     *
+     * @param index where to start searching
+     * @return bit index in the middle of it, -1 if it doesn't exist
+     */
+    default int nextSetBitToTest(int index) {
+        int rising = nextRisingEdge(index);
+        int fall = nextFallingEdge(rising);
+
+        // Test if valid
+        if(rising == -1 || fall == -1) return -1;
+
+        return ( rising + ((fall - rising)/2) );
+    }
+
+}
@@ -0,0 +1,91 @@
+package com.protocolanalyzer.api;
+
+/**
+ * Samples of one logic channel addressed with 64 bit indexes, for captures longer than the 2^31 samples a
+ *  {@link com.protocolanalyzer.api.LogicSignal} can hold. Samples after {@link #length()} are considered '0'.
+ * Decoders read it window by window, see {@link com.protocolanalyzer.api.Protocol#decode(LongLogicSignal, LongLogicSignal, double)}.
+ */
+public interface LongLogicSignal {
+
+    /**
+     * @param index sample index
+     * @return sample state
+     * @throws IndexOutOfBoundsException if index is negative
+     */
+    boolean get(long index);
+
+    /**
+     * Number of samples
+     */
+    long length();
+
+    /**
+     * Index of the next '1' starting in the given index
+     * @param fromIndex where to start searching
+     * @return index of the next '1', -1 if there is none
+     * @throws IndexOutOfBoundsException if fromIndex is negative
+     */
+    long nextSetBit(long fromIndex);
+
+    /**
+     * Index of the next '0' starting in the given index
+     * @param fromIndex where to start searching
+     * @return index of the next '0'
+     * @throws IndexOutOfBoundsException if fromIndex is negative
+     */
+    long nextClearBit(long fromIndex);
+
+    /**
+     * Gets 64 samples at once, built from {@link #get(long)} unless the signal has a faster way
+     * @param wordIndex word number, word n holds samples from n*64 to n*64 + 63
+     * @return samples where bit 0 is the sample n*64
+     * @throws IndexOutOfBoundsException if wordIndex is negative
+     */
+    default long getWord(long wordIndex){
+        if(wordIndex < 0) throw new IndexOutOfBoundsException("wordIndex < 0: " + wordIndex);
+
+        final long start = wordIndex << 6;
+        final long end = Math.min(start + 64, length());
+        long word = 0;
+        for(long n = start; n < end; ++n){
+            if(get(n)) word |= 1L << n;
+        }
+        return word;
+    }
+
+    /**
+     * Search for the next falling edge starting in the given index
+     * @param index where to start searching
+     * @return falling edge index where it's already '0', -1 if no falling edge exists
+     */
+    default long nextFallingEdge(long index){
+        if(index >= 0) {
+            long t = nextSetBit(index);
+            if(t != -1) return nextClearBit(t);
+        }
+        return -1;
+    }
+
+    /**
+     * Search for the next rising edge starting in the given index
+     * @param index where to start searching
+     * @return rising edge index where it's already '1', -1 if no rising edge exists
+     */
+    default long nextRisingEdge(long index){
+        if(index >= 0) {
+            long t = nextClearBit(index);
+            if(t != -1) return nextSetBit(t);
+        }
+        return -1;
+    }
+
+    /**
+     * View of a window of samples with int indexes, sample 0 of the window being fromIndex
+     * @param fromIndex first sample of the window
+     * @param length number of samples of the window
+     * @return {@link com.protocolanalyzer.api.LogicSignal} view of the window
+     */
+    default LogicSignal window(long fromIndex, int length){
+        return new LongSignalWindow(this, fromIndex, length);
+    }
+}
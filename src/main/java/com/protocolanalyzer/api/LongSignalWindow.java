@@ -0,0 +1,60 @@
+package com.protocolanalyzer.api;
+
+/**
+ * Window of a {@link com.protocolanalyzer.api.LongLogicSignal} seen as a {@link com.protocolanalyzer.api.LogicSignal}
+ */
+final class LongSignalWindow implements LogicSignal {
+
+    private final LongLogicSignal signal;
+    private final long offset;
+    private final int length;
+
+    LongSignalWindow(LongLogicSignal signal, long offset, int length){
+        if(offset < 0 || length < 0) throw new IndexOutOfBoundsException("offset: " + offset + ", length: " + length);
+        this.signal = signal;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    @Override
+    public boolean get(int index) {
+        if(index < 0) throw new IndexOutOfBoundsException("index < 0: " + index);
+        return index < length && signal.get(offset + index);
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public int nextSetBit(int fromIndex) {
+        if(fromIndex < 0) throw new IndexOutOfBoundsException("fromIndex < 0: " + fromIndex);
+        if(fromIndex >= length) return -1;
+
+        long n = signal.nextSetBit(offset + fromIndex);
+        return n == -1 || n - offset >= length ? -1 : (int)(n - offset);
+    }
+
+    @Override
+    public int nextClearBit(int fromIndex) {
+        if(fromIndex < 0) throw new IndexOutOfBoundsException("fromIndex < 0: " + fromIndex);
+        if(fromIndex >= length) return fromIndex;
+
+        return (int)Math.min(signal.nextClearBit(offset + fromIndex) - offset, length);
+    }
+
+    @Override
+    public long getWord(int wordIndex) {
+        if(wordIndex < 0) throw new IndexOutOfBoundsException("wordIndex < 0: " + wordIndex);
+        final long start = (long)wordIndex << 6;
+        if(start >= length) return 0;
+
+        // The window doesn't need to start at a word of the signal, the word is taken from the two it spans
+        final long index = offset + start;
+        final int shift = (int)(index & 63);
+        long word = signal.getWord(index >>> 6) >>> shift;
+        if(shift != 0) word |= signal.getWord((index >>> 6) + 1) << (64 - shift);
+        return length - start < 64 ? word & ~(-1L << (length - start)) : word;
+    }
+}
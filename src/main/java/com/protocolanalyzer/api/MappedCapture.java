@@ -0,0 +1,230 @@
+package com.protocolanalyzer.api;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Raw capture file mapped in memory, one byte per sample being bit N of each byte channel N like the data given to
+ *  {@link com.protocolanalyzer.api.LogicHelper#bufferToChannel(byte[], Protocol[])}. Samples are never copied to the
+ *  heap as a whole, each channel is a {@link com.protocolanalyzer.api.LongLogicSignal} view that demultiplexes the window
+ *  of samples being read when it is needed, so the memory used doesn't depend on the capture length.
+ */
+public class MappedCapture implements Closeable {
+
+    /** Bytes mapped by each buffer, a multiple of {@link #WINDOW_SAMPLES} so a window is never split */
+    private static final int REGION_BYTES = 1 << 30;
+    private static final int REGION_SHIFT = 30;
+    /** Samples demultiplexed at once by a channel view */
+    static final int WINDOW_SAMPLES = 1 << 16;
+    private static final int WINDOW_WORDS = WINDOW_SAMPLES / 64;
+
+    private final RandomAccessFile file;
+    private final MappedByteBuffer[] regions;
+    private final long samplesNumber;
+    private final Channel[] channels = new Channel[8];
+
+    /**
+     * Maps the given capture file
+     * @param captureFile file with one byte per sample
+     * @throws IOException if the file can't be read
+     */
+    public MappedCapture(File captureFile) throws IOException {
+        file = new RandomAccessFile(captureFile, "r");
+        try {
+            final long size = file.length();
+            samplesNumber = size;
+
+            final FileChannel fileChannel = file.getChannel();
+            regions = new MappedByteBuffer[(int)((size + REGION_BYTES - 1) >> REGION_SHIFT)];
+            for(int n = 0; n < regions.length; ++n){
+                long position = (long)n << REGION_SHIFT;
+                regions[n] = fileChannel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(REGION_BYTES, size - position));
+                regions[n].order(ByteOrder.LITTLE_ENDIAN);
+            }
+        } catch (IOException e) {
+            file.close();
+            throw e;
+        }
+        for(int ch = 0; ch < channels.length; ++ch) channels[ch] = new Channel(ch);
+    }
+
+    public long getSamplesNumber(){
+        return samplesNumber;
+    }
+
+    /**
+     * Samples of one channel with int indexes, for captures up to 2^31 samples
+     * @param channel channel number from 0 to 7
+     * @return {@link com.protocolanalyzer.api.LogicSignal} view of the channel
+     * @throws IllegalStateException if the capture is too long, use {@link #getLongChannel(int)}
+     */
+    public LogicSignal getChannel(int channel){
+        if(samplesNumber > Integer.MAX_VALUE)
+            throw new IllegalStateException("Capture has more than " + Integer.MAX_VALUE + " samples");
+        return channels[channel].window(0, (int)samplesNumber);
+    }
+
+    /**
+     * Samples of one channel
+     * @param channel channel number from 0 to 7
+     * @return {@link com.protocolanalyzer.api.LongLogicSignal} view of the channel
+     */
+    public LongLogicSignal getLongChannel(int channel){
+        return channels[channel];
+    }
+
+    /**
+     * Sets each channel as the data of a {@link com.protocolanalyzer.api.Protocol}, for captures up to 2^31 samples
+     * @param list list[N] gets channel N, null items are skipped
+     * @see #getChannel(int)
+     */
+    public void setChannels(Protocol[] list){
+        for(int ch = 0; ch < list.length && ch < channels.length; ++ch){
+            if(list[ch] != null) list[ch].setChannelSignal(getChannel(ch));
+        }
+    }
+
+    /**
+     * Closes the file. Mapped memory is released when the views are not used anymore, they must not
+     *  be read after closing.
+     */
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+
+    /**
+     * Demultiplexes one channel of a window
+     * @param channel channel number
+     * @param start first sample of the window, multiple of {@link #WINDOW_SAMPLES}
+     * @return window with the samples of the channel
+     */
+    private Window loadWindow(int channel, long start){
+        final int samples = (int)Math.min(WINDOW_SAMPLES, samplesNumber - start);
+        final long[] words = new long[WINDOW_WORDS];
+        final MappedByteBuffer region = regions[(int)(start >>> REGION_SHIFT)];
+        final int offset = (int)(start & (REGION_BYTES - 1));
+
+        // 8 samples with every read
+        final int end = samples & ~7;
+        for(int n = 0; n < end; n += 8){
+            words[n >>> 6] |= (long)LogicHelper.gatherChannel(region.getLong(offset + n), channel) << (n & 63);
+        }
+        for(int n = end; n < samples; ++n){
+            if(((region.get(offset + n) >>> channel) & 1) != 0) words[n >>> 6] |= 1L << (n & 63);
+        }
+        return new Window(start, samples, words);
+    }
+
+    /**
+     * Demultiplexed samples of one channel, immutable so it can be shared between threads
+     */
+    private static final class Window {
+        final long start;
+        final int samples;
+        final long[] words;
+
+        Window(long start, int samples, long[] words){
+            this.start = start;
+            this.samples = samples;
+            this.words = words;
+        }
+    }
+
+    /**
+     * View of a channel keeping the last window read
+     */
+    private final class Channel implements LongLogicSignal {
+
+        private final int channel;
+        private volatile Window window = null;
+
+        Channel(int channel){
+            this.channel = channel;
+        }
+
+        /**
+         * Window containing the given sample
+         */
+        private Window window(long index){
+            Window w = window;
+            if(w == null || index < w.start || index >= w.start + WINDOW_SAMPLES){
+                w = loadWindow(channel, index & ~(WINDOW_SAMPLES - 1));
+                window = w;
+            }
+            return w;
+        }
+
+        @Override
+        public boolean get(long index) {
+            if(index < 0) throw new IndexOutOfBoundsException("index < 0: " + index);
+            if(index >= samplesNumber) return false;
+
+            Window w = window(index);
+            final int n = (int)(index - w.start);
+            return (w.words[n >>> 6] & (1L << n)) != 0;
+        }
+
+        @Override
+        public long length() {
+            return samplesNumber;
+        }
+
+        @Override
+        public long getWord(long wordIndex) {
+            if(wordIndex < 0) throw new IndexOutOfBoundsException("wordIndex < 0: " + wordIndex);
+            final long index = wordIndex << 6;
+            if(index >= samplesNumber) return 0;
+
+            // Words of a window after its samples are '0'
+            Window w = window(index);
+            return w.words[(int)(index - w.start) >>> 6];
+        }
+
+        @Override
+        public long nextSetBit(long fromIndex) {
+            if(fromIndex < 0) throw new IndexOutOfBoundsException("fromIndex < 0: " + fromIndex);
+
+            while(fromIndex < samplesNumber){
+                Window w = window(fromIndex);
+                final int n = (int)(fromIndex - w.start);
+                int u = n >>> 6;
+                long word = w.words[u] & (-1L << n);
+                while(true){
+                    if(word != 0){
+                        long index = w.start + (u << 6) + Long.numberOfTrailingZeros(word);
+                        return index < samplesNumber ? index : -1;
+                    }
+                    if(++u == WINDOW_WORDS) break;
+                    word = w.words[u];
+                }
+                fromIndex = w.start + WINDOW_SAMPLES;
+            }
+            return -1;
+        }
+
+        @Override
+        public long nextClearBit(long fromIndex) {
+            if(fromIndex < 0) throw new IndexOutOfBoundsException("fromIndex < 0: " + fromIndex);
+
+            while(fromIndex < samplesNumber){
+                Window w = window(fromIndex);
+                final int n = (int)(fromIndex - w.start);
+                int u = n >>> 6;
+                long word = ~w.words[u] & (-1L << n);
+                while(true){
+                    if(word != 0) return Math.min(w.start + (u << 6) + Long.numberOfTrailingZeros(word), samplesNumber);
+                    if(++u == WINDOW_WORDS) break;
+                    word = ~w.words[u];
+                }
+                fromIndex = w.start + WINDOW_SAMPLES;
+            }
+            return fromIndex;
+        }
+    }
+}
@@ -44,6 +44,19 @@ public class OneWireProtocol extends Protocol{
 
     }
 
+    /**
+     * Nothing is decoded yet, like {@link #decode(double)}
+     */
+    @Override
+    protected int decodeChunk(LogicSignal data, LogicSignal clock, int fromIndex, long sampleOffset, boolean lastChunk) {
+        return data.length();
+    }
+
+    @Override
+    protected Protocol newSegmentDecoder() {
+        return new OneWireProtocol(sampleFrec);
+    }
+
     /**
      * Reads a byte from 1-Wire. We should ensure start and presence pulses already happened
      * @param index from where to start searching
@@ -51,7 +64,7 @@ public class OneWireProtocol extends Protocol{
      * of the event. null if byte can't be completed or doesn't exist.
      */
     private int[] readByte(int index){
-        final LogicBitSet line = getChannelBitsData();
+        final LogicSignal line = getChannelSignal();
         final double sampleTime = 1.0d/getSampleFrequency();
 
         byte data = 0;
@@ -104,7 +117,7 @@ public class OneWireProtocol extends Protocol{
      * pulse doesn't exist
      */
     private int[] getPresencePulse(int index){
-        final LogicBitSet line = getChannelBitsData();
+        final LogicSignal line = getChannelSignal();
         final double sampleTime = 1.0d/getSampleFrequency();
 
         int fallingEdge = line.nextFallingEdge(index);
@@ -125,7 +138,7 @@ public class OneWireProtocol extends Protocol{
      * condition doesn't exist
      */
     private int[] getResetCondition(int index){
-        final LogicBitSet line = getChannelBitsData();
+        final LogicSignal line = getChannelSignal();
         final double sampleTime = 1.0d/getSampleFrequency();
 
         int fallingEdge = line.nextFallingEdge(index);
@@ -0,0 +1,163 @@
+package com.protocolanalyzer.api;
+
+import com.protocolanalyzer.api.utils.PrintDebug;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Decodes a capture splitting it in segments that are decoded at the same time on a {@link java.util.concurrent.ForkJoinPool}.
+ * Segments start at the split points given by {@link com.protocolanalyzer.api.Protocol#nextSplitPoint(LogicSignal, LogicSignal, int)}
+ *  and each one is decoded by its own decoder. A segment is only accepted if the decoder of the previous one ended idle
+ *  exactly at the split point, otherwise the previous decoder continues through it like a sequential decode would do,
+ *  so the result is always the same than {@link com.protocolanalyzer.api.Protocol#decode(double)}.
+ */
+final class ParallelDecoder {
+
+    private static final boolean DEBUG = false;
+    /** Segments shorter than this are not worth a task */
+    static final int MIN_SEGMENT_SAMPLES = 1 << 16;
+    /** Segments per pool thread, more segments than threads balance the work when segments take different time */
+    private static final int SEGMENTS_PER_THREAD = 4;
+
+    private final Protocol protocol;
+    private final ForkJoinPool pool;
+
+    ParallelDecoder(Protocol protocol, ForkJoinPool pool){
+        this.protocol = protocol;
+        this.pool = pool;
+    }
+
+    /**
+     * Decodes the capture of the protocol adding the events to its sink
+     * @param startTime offset of start time
+     * @return number of segments accepted, 1 if the capture was decoded sequentially
+     * @see com.protocolanalyzer.api.Protocol#decodeParallel(double, java.util.concurrent.ForkJoinPool)
+     */
+    int decode(double startTime){
+        final LogicSignal data = protocol.getChannelSignal();
+        final LogicSignal clock = protocol.hasClock() && protocol.getClockSource() != null ?
+                protocol.getClockSource().getChannelSignal() : null;
+        final int length = data.length();
+
+        protocol.resetDecoder();
+        if(length < 2*MIN_SEGMENT_SAMPLES || (protocol.hasClock() && clock == null) || !protocol.prepareParallelDecode(data, clock)){
+            protocol.decode(startTime);
+            return 1;
+        }
+
+        // Split points, they are searched here as it is much faster than decoding
+        final int segmentSamples = Math.max(MIN_SEGMENT_SAMPLES, length / (pool.getParallelism() * SEGMENTS_PER_THREAD));
+        List<Integer> splits = new ArrayList<Integer>();
+        int split = 0;
+        while(split + segmentSamples < length){
+            split = protocol.nextSplitPoint(data, clock, split + segmentSamples);
+            if(split <= 0 || split >= length) break;
+            splits.add(split);
+        }
+        if(DEBUG) PrintDebug.printInfo("Parallel decode split points: " + splits);
+
+        // Decode all the segments
+        final long sampleOffset = protocol.timeToSample(startTime);
+        final Segment[] segments = new Segment[splits.size() + 1];
+        for(int n = 0; n < segments.length; ++n){
+            segments[n] = new Segment(protocol.newSegmentDecoder(), data, clock, sampleOffset,
+                    n == 0 ? 0 : splits.get(n-1), n == splits.size() ? -1 : splits.get(n));
+        }
+        pool.invoke(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                invokeAll(segments);
+            }
+        });
+
+        // Merge them in order
+        Segment current = segments[0];
+        int accepted = 1;
+        for(int n = 1; n < segments.length; ++n){
+            if(current.decoder.isDecoderIdle() && current.resume == segments[n].fromIndex){
+                current.decoder.getDecodedEvents().copyTo(protocol.getEventSink());
+                current = segments[n];
+                ++accepted;
+            }else{
+                // The previous segment doesn't end where this one starts, keep decoding it instead
+                if(DEBUG) PrintDebug.printInfo("Split point " + segments[n].fromIndex + " rejected");
+                current.continueTo(segments[n].endIndex);
+            }
+        }
+        current.decoder.getDecodedEvents().copyTo(protocol.getEventSink());
+        return accepted;
+    }
+
+    /**
+     * Finds the first run of samples in the given state of at least the given length
+     * @param signal signal to search
+     * @param state state of the samples of the run
+     * @param fromIndex where to start searching
+     * @param minLength minimum number of samples of the run
+     * @return int[] array where [0] is the first sample of the run and [1] the sample after the last one,
+     *  null if there isn't any
+     */
+    static int[] findRun(LogicSignal signal, boolean state, int fromIndex, int minLength){
+        final int length = signal.length();
+        int start = fromIndex;
+        while(start < length){
+            start = state ? signal.nextSetBit(start) : signal.nextClearBit(start);
+            if(start == -1 || start >= length) return null;
+
+            int end = state ? signal.nextClearBit(start) : signal.nextSetBit(start);
+            if(end == -1 || end > length) end = length;
+            if(end - start >= minLength) return new int[] {start, end};
+            start = end;
+        }
+        return null;
+    }
+
+    /**
+     * Part of the capture decoded by its own decoder
+     */
+    private static final class Segment extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        final Protocol decoder;
+        final LogicSignal data, clock;
+        final long sampleOffset;
+        final int fromIndex;
+        /** Index where the next segment starts, -1 for the last segment */
+        final int endIndex;
+        /** Index where decoding has to continue after the samples decoded so far */
+        int resume;
+
+        Segment(Protocol decoder, LogicSignal data, LogicSignal clock, long sampleOffset, int fromIndex, int endIndex){
+            this.decoder = decoder;
+            this.data = data;
+            this.clock = clock;
+            this.sampleOffset = sampleOffset;
+            this.fromIndex = fromIndex;
+            this.endIndex = endIndex;
+            this.resume = fromIndex;
+        }
+
+        @Override
+        protected void compute() {
+            continueTo(endIndex);
+        }
+
+        /**
+         * Decodes the samples until the given index
+         * @param toIndex index where decoding stops, -1 to decode until the end of the capture
+         */
+        void continueTo(int toIndex){
+            if(toIndex == -1){
+                resume = decoder.decodeChunk(data, clock, resume, sampleOffset, true);
+            }else{
+                // The sample at toIndex is included so the decoder can find an edge right at the split point
+                resume = decoder.decodeChunk(new Protocol.StreamWindow(data, toIndex+1),
+                        clock == null ? null : new Protocol.StreamWindow(clock, toIndex+1), resume, sampleOffset, false);
+            }
+        }
+    }
+}
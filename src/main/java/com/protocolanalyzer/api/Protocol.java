@@ -1,7 +1,8 @@
 package com.protocolanalyzer.api;
 
-import java.util.ArrayList;
+import java.util.AbstractList;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 public abstract class Protocol {
 
@@ -21,13 +22,25 @@ public abstract class Protocol {
 		}
 	}
 
-    /** Decoded data containing a list of {@link com.protocolanalyzer.api.TimePosition} containing a String with an start
-     *   and end time */
-	protected List<TimePosition> mDecodedData = new ArrayList<TimePosition>();
+    /** Decoded events, where the events go unless another sink is set with {@link #setEventSink(DecodedEventSink)} */
+	protected final DecodedEventStore mDecodedData = new DecodedEventStore();
+	/** Where the decoders add the events */
+	protected DecodedEventSink eventSink = mDecodedData;
 	/** Bits to be decoded */
-	protected LogicBitSet logicData = new LogicBitSet();
+	protected LogicSignal logicData = new LogicBitSet();
 	/** Sample rate */
 	protected long sampleFrec = 0;
+
+	/** Default samples of each window of {@link #decode(LongLogicSignal, LongLogicSignal, double)} */
+	private static final int LONG_DECODE_WINDOW = 1 << 30;
+
+	/** Samples received with {@link #feed(LogicBitSet, LogicBitSet)} that are still needed */
+	private final LogicBitSet streamData = new LogicBitSet();
+	private final LogicBitSet streamClock = new LogicBitSet();
+	/** Number of samples of the stream already discarded, that is the stream index of streamData sample 0 */
+	private long streamOffset = 0;
+	/** Index of streamData where decoding continues */
+	private int streamIndex = 0;
 	
 	/**
 	 * Decode data in {@link com.protocolanalyzer.api.Protocol#logicData}
@@ -35,6 +48,147 @@ public abstract class Protocol {
 	 */
 	public abstract void decode(double startTime);
 
+	/**
+	 * Decodes the given samples starting from the given index and keeping the decoder state, so
+	 *  it can be called again with more samples to continue where it stopped.
+	 *
+	 * @param data samples of this channel
+	 * @param clock samples of the clock channel, null if the protocol doesn't use a clock
+	 * @param fromIndex index where decoding continues
+	 * @param sampleOffset index of sample 0 in the whole acquisition, added to the sample indexes of the events
+	 * @param lastChunk true if no more samples come after these. Otherwise the signals say that samples
+	 *                  after the last one are not known yet, by throwing {@link java.lang.IndexOutOfBoundsException}
+	 *                  from {@link com.protocolanalyzer.api.LogicSignal#get(int)} and returning -1 from the
+	 *                  searches, and the decoder must stop before an event that needs them.
+	 * @return index where decoding has to continue with the next chunk, samples before it are not needed
+	 *  anymore. It may be greater than the number of samples.
+	 */
+	protected abstract int decodeChunk(LogicSignal data, LogicSignal clock, int fromIndex, long sampleOffset, boolean lastChunk);
+
+	/**
+	 * Resets the decoder state kept between {@link #decodeChunk(LogicSignal, LogicSignal, int, long, boolean)} calls
+	 */
+	protected void resetDecoder(){}
+
+	/**
+	 * Decodes the capture like {@link #decode(double)} splitting it in segments decoded at the same time
+	 *  on the common {@link java.util.concurrent.ForkJoinPool}
+	 * @param startTime offset of start time
+	 * @return number of segments decoded by their own decoder
+	 * @see #decodeParallel(double, java.util.concurrent.ForkJoinPool)
+	 */
+	public int decodeParallel(double startTime){
+		return decodeParallel(startTime, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Decodes the capture like {@link #decode(double)} splitting it in segments decoded at the same time on
+	 *  the given pool. Segments start where the protocol can start decoding again without knowing what happened
+	 *  before, like long idle times, and the result is the same than the one of {@link #decode(double)}. Protocols
+	 *  that can't be split and short captures are decoded with {@link #decode(double)}.
+	 * @param startTime offset of start time
+	 * @param pool pool where segments are decoded
+	 * @return number of segments decoded by their own decoder, split points where the previous segment didn't end
+	 *  idle are not counted. 1 if the capture was decoded sequentially.
+	 */
+	public int decodeParallel(double startTime, ForkJoinPool pool){
+		return new ParallelDecoder(this, pool).decode(startTime);
+	}
+
+	/**
+	 * Decodes a capture that may be longer than 2^31 samples. The decoder goes through the capture in windows,
+	 *  continuing each window where the previous one stopped like {@link #feed(LogicBitSet, LogicBitSet)} does, and
+	 *  events have the sample indexes of the whole capture.
+	 * @param data samples of this channel
+	 * @param clock samples of the clock channel, ignored if the protocol doesn't use a clock
+	 * @param startTime offset of start time
+	 */
+	public void decode(LongLogicSignal data, LongLogicSignal clock, double startTime){
+		decode(data, clock, startTime, LONG_DECODE_WINDOW);
+	}
+
+	/**
+	 * Decodes a capture that may be longer than 2^31 samples with windows of the given size
+	 * @param data samples of this channel
+	 * @param clock samples of the clock channel, ignored if the protocol doesn't use a clock
+	 * @param startTime offset of start time
+	 * @param windowSamples samples of each window, up to 2^30
+	 * @see #decode(LongLogicSignal, LongLogicSignal, double)
+	 */
+	public void decode(LongLogicSignal data, LongLogicSignal clock, double startTime, int windowSamples){
+		if(hasClock() && clock == null)
+			throw new IllegalArgumentException("Clock must be given for " + getProtocol() + " protocol");
+		if(windowSamples <= 0 || windowSamples > LONG_DECODE_WINDOW)
+			throw new IllegalArgumentException("Window samples must be from 1 to " + LONG_DECODE_WINDOW);
+
+		final long length = hasClock() ? Math.max(data.length(), clock.length()) : data.length();
+		final long sampleOffset = timeToSample(startTime);
+		long position = 0;
+		int index = 0;
+
+		resetDecoder();
+		while(true){
+			// The last window takes what is left if it isn't much more than a window, so no window ends
+			//  close to the end of the capture
+			final long left = length - position;
+			final boolean lastWindow = left <= windowSamples + windowSamples/2;
+			final int windowLength = (int)(lastWindow ? left : windowSamples);
+
+			final LogicSignal dataWindow = data.window(position, windowLength);
+			final LogicSignal clockWindow = hasClock() ? clock.window(position, windowLength) : null;
+			if(lastWindow){
+				decodeChunk(dataWindow, clockWindow, index, sampleOffset + position, true);
+				break;
+			}
+
+			final int resume = decodeChunk(new StreamWindow(dataWindow, windowLength),
+					hasClock() ? new StreamWindow(clockWindow, windowLength) : null, index, sampleOffset + position, false);
+			final int advance = Math.min(resume, windowLength);
+			if(advance == 0) throw new IllegalStateException("An event is longer than the " + windowSamples + " samples window");
+			position += advance;
+			index = resume - advance;
+		}
+	}
+
+	/**
+	 * Prepares a parallel decode calculating what the segment decoders need to know about the whole capture
+	 * @param data samples of this channel
+	 * @param clock samples of the clock channel, null if the protocol doesn't use a clock
+	 * @return true if the capture can be split, false to decode it with {@link #decode(double)}
+	 */
+	protected boolean prepareParallelDecode(LogicSignal data, LogicSignal clock){
+		return false;
+	}
+
+	/**
+	 * Searches a point of the capture where decoding can start with the decoder state of {@link #resetDecoder()}
+	 * @param data samples of this channel
+	 * @param clock samples of the clock channel, null if the protocol doesn't use a clock
+	 * @param fromIndex where to start searching
+	 * @return index of the split point, -1 if there isn't any
+	 */
+	protected int nextSplitPoint(LogicSignal data, LogicSignal clock, int fromIndex){
+		return -1;
+	}
+
+	/**
+	 * Creates a decoder for a segment of a parallel decode, with the same settings than this one and what was
+	 *  calculated in {@link #prepareParallelDecode(LogicSignal, LogicSignal)}
+	 * @return new decoder
+	 */
+	protected Protocol newSegmentDecoder(){
+		throw new UnsupportedOperationException(getProtocol() + " protocol doesn't support parallel decoding");
+	}
+
+	/**
+	 * Whether the decoder is in the same state than after {@link #resetDecoder()}, that is, there isn't
+	 *  any event in progress
+	 * @return true if the decoder is idle
+	 */
+	protected boolean isDecoderIdle(){
+		return true;
+	}
+
 	/**
 	 * Protocol type
 	 * @return {@link com.protocolanalyzer.api.Protocol.ProtocolType} enum
@@ -55,21 +209,107 @@ public abstract class Protocol {
 	}
 	
 	/**
-	 * Get {@link com.protocolanalyzer.api.LogicBitSet} containing the bits to be decoded
+	 * Get {@link com.protocolanalyzer.api.LogicBitSet} containing the bits to be decoded. If the channel
+	 *  holds another kind of {@link com.protocolanalyzer.api.LogicSignal} it is replaced by a
+	 *  {@link com.protocolanalyzer.api.LogicBitSet} copy of it.
 	 * @return {@link com.protocolanalyzer.api.LogicBitSet} containing the bits to be decoded
 	 */
 	public LogicBitSet getChannelBitsData (){
-		return logicData;
+		if(!(logicData instanceof LogicBitSet)) logicData = new LogicBitSet(logicData);
+		return (LogicBitSet)logicData;
 	}
 
 	public void setChannelBitsData (LogicBitSet data){
 		logicData = data;
 	}
 
+	/**
+	 * Get {@link com.protocolanalyzer.api.LogicSignal} containing the bits to be decoded
+	 * @return {@link com.protocolanalyzer.api.LogicSignal} containing the bits to be decoded
+	 */
+	public LogicSignal getChannelSignal (){
+		return logicData;
+	}
+
+	/**
+	 * Clock source of the protocols that need one
+	 * @return {@link com.protocolanalyzer.api.Clock} source, null if it isn't defined or the protocol doesn't use a clock
+	 */
+	public Clock getClockSource(){
+		return null;
+	}
+
+	public void setChannelSignal (LogicSignal data){
+		logicData = data;
+	}
+
+	/**
+	 * Decoded events as {@link com.protocolanalyzer.api.TimePosition} items. The list is a view of
+	 *  {@link #getDecodedEvents()}, each item is created when it is read.
+	 * @return decoded events
+	 */
 	public List<TimePosition> getDecodedData() {
+		return new AbstractList<TimePosition>() {
+			@Override
+			public TimePosition get(int index) {
+				final double sampleTime = 1.0d/sampleFrec;
+				return new TimePosition(mDecodedData.getString(index),
+						mDecodedData.getStartSample(index)*sampleTime, mDecodedData.getEndSample(index)*sampleTime);
+			}
+
+			@Override
+			public int size() {
+				return mDecodedData.size();
+			}
+		};
+	}
+
+	/**
+	 * Decoded events with at least one sample in the given time, as {@link com.protocolanalyzer.api.TimePosition}
+	 *  items in order of start time. The events are found with {@link com.protocolanalyzer.api.DecodedEventStore#findOverlapping(long, long)}
+	 *  so only the visible ones are read.
+	 * @param fromTime start time in seconds
+	 * @param toTime end time in seconds
+	 * @return decoded events in the given time
+	 */
+	public List<TimePosition> getDecodedData(double fromTime, double toTime) {
+		final int[] events = mDecodedData.findOverlapping(timeToSample(fromTime), timeToSample(toTime));
+		return new AbstractList<TimePosition>() {
+			@Override
+			public TimePosition get(int index) {
+				final double sampleTime = 1.0d/sampleFrec;
+				final int event = events[index];
+				return new TimePosition(mDecodedData.getString(event),
+						mDecodedData.getStartSample(event)*sampleTime, mDecodedData.getEndSample(event)*sampleTime);
+			}
+
+			@Override
+			public int size() {
+				return events.length;
+			}
+		};
+	}
+
+	/**
+	 * Decoded events, with their sample indexes instead of times
+	 * @return {@link com.protocolanalyzer.api.DecodedEventStore} with the decoded events
+	 */
+	public DecodedEventStore getDecodedEvents() {
 		return mDecodedData;
 	}
 
+	/**
+	 * Sets where the decoded events are added, by default they are kept in {@link #getDecodedEvents()}
+	 * @param sink {@link com.protocolanalyzer.api.DecodedEventSink} receiving the events, null to use the default one
+	 */
+	public void setEventSink(DecodedEventSink sink) {
+		eventSink = sink == null ? mDecodedData : sink;
+	}
+
+	public DecodedEventSink getEventSink() {
+		return eventSink;
+	}
+
 	public void setSampleFrequency (long freq){
 		sampleFrec = freq;
 	}
@@ -87,25 +327,171 @@ public abstract class Protocol {
 	}
 	
 	/**
-	 * Clear decoded data and bits to be decoded
+	 * Clear decoded data, bits to be decoded and the samples received with {@link #feed(LogicBitSet, LogicBitSet)}
 	 */
 	public void reset(){
 		mDecodedData.clear();
-		logicData.clear();
+		if(logicData instanceof WritableLogicSignal) ((WritableLogicSignal)logicData).clear();
+		else logicData = new LogicBitSet();
+		resetStream();
+	}
+
+	/**
+	 * Decodes the next chunk of a continuous acquisition of a protocol without clock
+	 * @param data samples following the ones of the previous chunk
+	 * @see #feed(LogicBitSet, LogicBitSet)
+	 */
+	public void feed(LogicBitSet data){
+		feed(data, null);
+	}
+
+	/**
+	 * Decodes the next chunk of a continuous acquisition. Decoding continues where the previous chunk
+	 *  stopped and the events that need samples not received yet are decoded with the next chunks, so only
+	 *  the samples of the event in progress are kept. Event times are relative to the first sample fed
+	 *  after {@link #reset()} or {@link #flush()}.
+	 *
+	 * @param data samples following the ones of the previous chunk
+	 * @param clock clock samples for the same time than data, ignored if the protocol doesn't use a clock
+	 */
+	public void feed(LogicBitSet data, LogicBitSet clock){
+		if(hasClock() && clock == null)
+			throw new IllegalArgumentException("Clock chunk must be given for " + getProtocol() + " protocol");
+
+		streamData.append(data);
+		if(hasClock()) streamClock.append(clock);
+
+		final int available = hasClock() ? Math.min(streamData.length(), streamClock.length()) : streamData.length();
+		final int resume = decodeChunk(new StreamWindow(streamData, available),
+				hasClock() ? new StreamWindow(streamClock, available) : null,
+				streamIndex, streamOffset, false);
+
+		// Drop the samples that are not needed anymore
+		final int discard = Math.min(resume, available);
+		streamData.discardBefore(discard);
+		streamClock.discardBefore(discard);
+		streamOffset += discard;
+		streamIndex = resume - discard;
+	}
+
+	/**
+	 * Decodes the samples left from {@link #feed(LogicBitSet, LogicBitSet)} considering no more samples
+	 *  are coming and starts a new stream
+	 */
+	public void flush(){
+		decodeChunk(streamData, hasClock() ? streamClock : null, streamIndex, streamOffset, true);
+		resetStream();
+	}
+
+	private void resetStream(){
+		streamData.clear();
+		streamClock.clear();
+		streamOffset = 0;
+		streamIndex = 0;
+		resetDecoder();
+	}
+
+	/**
+	 * Samples of a stream chunk, samples after it are unknown instead of '0'
+	 */
+	static final class StreamWindow implements LogicSignal {
+
+		private final LogicSignal signal;
+		private final int length;
+
+		StreamWindow(LogicSignal signal, int length){
+			this.signal = signal;
+			this.length = length;
+		}
+
+		@Override
+		public boolean get(int index) {
+			if(index >= length) throw new IndexOutOfBoundsException("Sample " + index + " not received yet");
+			return signal.get(index);
+		}
+
+		@Override
+		public int length() {
+			return length;
+		}
+
+		@Override
+		public int nextSetBit(int fromIndex) {
+			int n = signal.nextSetBit(fromIndex);
+			return n >= length ? -1 : n;
+		}
+
+		@Override
+		public int nextClearBit(int fromIndex) {
+			int n = signal.nextClearBit(fromIndex);
+			return n >= length ? -1 : n;
+		}
+
+		@Override
+		public long getWord(int wordIndex) {
+			return signal.getWord(wordIndex);
+		}
+
+		@Override
+		public int getRisingEdges(int fromIndex, int toIndex, int[] out) {
+			return signal.getRisingEdges(fromIndex, Math.min(toIndex, length), out);
+		}
+
+		@Override
+		public int getFallingEdges(int fromIndex, int toIndex, int[] out) {
+			return signal.getFallingEdges(fromIndex, Math.min(toIndex, length), out);
+		}
+
+		@Override
+		public int getEdges(int fromIndex, int toIndex, int[] out) {
+			return signal.getEdges(fromIndex, Math.min(toIndex, length), out);
+		}
+
+		@Override
+		public int nextFallingEdge(int index) {
+			int n = signal.nextFallingEdge(index);
+			return n >= length ? -1 : n;
+		}
+
+		@Override
+		public int nextRisingEdge(int index) {
+			int n = signal.nextRisingEdge(index);
+			return n >= length ? -1 : n;
+		}
 	}
 	
 	/**
-     * Adds a String in the given position adding init time as offset in seconds
+	 * Adds a decoded event
+	 * @param kind event kind
+	 * @param payload data of the event, 0 if the kind doesn't have data
+	 * @param bits number of bits of payload, 0 if the kind doesn't have data
+	 * @param startSample index of the first sample of the event
+	 * @param endSample index of the last sample of the event
+	 * @see com.protocolanalyzer.api.DecodedEventSink#addEvent(DecodedEventSink.Kind, int, int, long, long)
+	 */
+	protected void addEvent (DecodedEventSink.Kind kind, int payload, int bits, long startSample, long endSample){
+		eventSink.addEvent(kind, payload, bits, startSample, Math.max(startSample, endSample));
+	}
+
+	/**
+	 * Converts a time to the index of the nearest sample
+	 * @param time time in seconds
+	 * @return sample index
+	 */
+	protected long timeToSample (double time){
+		return Math.round(time * sampleFrec);
+	}
+
+	/**
+     * Adds a String in the given position adding init time as offset in seconds. Times are rounded to the
+	 *  nearest sample.
 	 * @param text {@link java.lang.String} to add
 	 * @param startTime start time in seconds
 	 * @param stopTime end time in seconds
 	 * @param initTime time offset in seconds
 	 */
 	public void addString (String text, double startTime, double stopTime, double initTime){
-		if(stopTime >= startTime){
-			mDecodedData.add(new TimePosition(text, startTime+initTime, stopTime+initTime));
-		}else{
-			mDecodedData.add(new TimePosition(text, startTime+initTime, startTime+initTime));
-		}
+		final long startSample = timeToSample(startTime+initTime);
+		eventSink.addText(text, startSample, Math.max(startSample, timeToSample(stopTime+initTime)));
 	}
 }
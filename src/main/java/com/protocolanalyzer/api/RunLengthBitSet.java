@@ -0,0 +1,151 @@
+package com.protocolanalyzer.api;
+
+import java.util.Arrays;
+
+/**
+ * Logic channel stored as runs of equal samples. Only the indexes where the signal changes are kept so
+ *  an idle line costs nothing no matter how long it is. Samples can only be appended, run by run.
+ */
+public class RunLengthBitSet implements LogicSignal {
+
+    /** Sample indexes where the signal changes its state, in increasing order */
+    private int[] edges;
+    private int edgesCount = 0;
+    /** State of the first sample */
+    private boolean firstState = false;
+    /** State of the last sample */
+    private boolean lastState = false;
+    /** Number of samples */
+    private int currentSize = 0;
+
+    public RunLengthBitSet(){
+        this(16);
+    }
+
+    /**
+     * @param edgesCapacity number of edges that can be held without growing the internal storage
+     */
+    public RunLengthBitSet(int edgesCapacity){
+        edges = new int[Math.max(edgesCapacity, 1)];
+    }
+
+    /**
+     * Appends a run of samples with the same state
+     * @param state state of the samples
+     * @param count number of samples
+     */
+    public void addRun(boolean state, int count){
+        if(count <= 0) return;
+
+        if(currentSize == 0) firstState = state;
+        else if(state != lastState){
+            if(edgesCount == edges.length) edges = Arrays.copyOf(edges, 2 * edges.length);
+            edges[edgesCount++] = currentSize;
+        }
+        lastState = state;
+        currentSize += count;
+    }
+
+    /**
+     * Removes all the samples
+     */
+    public void clear(){
+        edgesCount = currentSize = 0;
+        firstState = lastState = false;
+    }
+
+    /**
+     * Number of times the signal changes its state
+     */
+    public int getEdgesCount(){
+        return edgesCount;
+    }
+
+    /**
+     * Index of the first edge after the given index
+     * @param index sample index
+     * @return position in {@link #edges}, {@link #edgesCount} if there isn't any edge after index
+     */
+    private int edgeAfter(int index){
+        int low = 0, high = edgesCount;
+        while(low < high){
+            int mid = (low + high) >>> 1;
+            if(edges[mid] <= index) low = mid + 1;
+            else high = mid;
+        }
+        return low;
+    }
+
+    /**
+     * State of the samples right before the given edge
+     * @param edge position in {@link #edges}
+     */
+    private boolean stateBefore(int edge){
+        return firstState ^ ((edge & 1) != 0);
+    }
+
+    @Override
+    public boolean get(int index) {
+        if(index < 0) throw new IndexOutOfBoundsException("index < 0: " + index);
+        return index < currentSize && stateBefore(edgeAfter(index));
+    }
+
+    @Override
+    public int length() {
+        return currentSize;
+    }
+
+    @Override
+    public int nextSetBit(int fromIndex) {
+        if(fromIndex < 0) throw new IndexOutOfBoundsException("fromIndex < 0: " + fromIndex);
+        if(fromIndex >= currentSize) return -1;
+
+        int edge = edgeAfter(fromIndex);
+        if(stateBefore(edge)) return fromIndex;
+        return edge < edgesCount ? edges[edge] : -1;
+    }
+
+    @Override
+    public int nextClearBit(int fromIndex) {
+        if(fromIndex < 0) throw new IndexOutOfBoundsException("fromIndex < 0: " + fromIndex);
+        if(fromIndex >= currentSize) return fromIndex;
+
+        int edge = edgeAfter(fromIndex);
+        if(!stateBefore(edge)) return fromIndex;
+        return edge < edgesCount ? edges[edge] : currentSize;
+    }
+
+    /**
+     * Built from the runs, each search is a binary search over the edges no matter how long the run is
+     */
+    @Override
+    public long getWord(int wordIndex) {
+        if(wordIndex < 0) throw new IndexOutOfBoundsException("wordIndex < 0: " + wordIndex);
+
+        final long start = (long)wordIndex << 6;
+        if(start >= currentSize) return 0;
+        final int end = (int)Math.min(start + 64, currentSize);
+        long word = 0;
+        int n = nextSetBit((int)start);
+        while(n != -1 && n < end){
+            final int clear = Math.min(nextClearBit(n), end);
+            word |= (-1L << n) & (-1L >>> -clear);
+            if(clear == end) break;
+            n = nextSetBit(clear);
+        }
+        return word;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder b = new StringBuilder("{");
+        int n = nextSetBit(0);
+        while(n != -1){
+            int end = nextClearBit(n);
+            if(b.length() > 1) b.append(", ");
+            b.append(n).append('-').append(end-1);
+            n = nextSetBit(end);
+        }
+        return b.append('}').toString();
+    }
+}
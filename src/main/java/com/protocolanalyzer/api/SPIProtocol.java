@@ -1,15 +1,44 @@
 package com.protocolanalyzer.api;
 
+import com.protocolanalyzer.api.DecodedEventSink.Kind;
 import com.protocolanalyzer.api.utils.PrintDebug;
 
 /**
  * Decodes SPI protocol taking the Clock source and one data source (MISO or MOSI).
- * In case we need to decode a Full-Duplex SPI communication we need to decode it twice, one decode for MISO
- *  line and another decode for MOSI line.
+ * Full-Duplex SPI is decoded in one pass giving the MISO line with {@link #setMisoSource(Protocol)}, then the
+ *  channel of this decoder is the MOSI line and both are sampled on the same clock edges. With a chip select line
+ *  ({@link #setChipSelectSource(Protocol)}) words start when the line is asserted and the word in progress ends
+ *  when it is released, so the devices of a bus are decoded one frame at a time.
  */
 public class SPIProtocol extends Protocol {
 
+    private static final boolean DEBUG = false;
+    /** Clock edges read at once */
+    private static final int EDGES_BUFFER_SIZE = 256;
+
     private Clock clockSource;
+    /** MISO line for full-duplex decoding, null to decode only the channel of this decoder */
+    private Protocol misoSource;
+    /** Chip select line, null to decode words of {@link #wordBits} bits from the first clock edge */
+    private Protocol chipSelectSource;
+    private boolean chipSelectActiveHigh = false;
+    /** Bits of each word */
+    private int wordBits = 8;
+    private boolean msbFirst = false;
+    /** Edges of the clock source for the decode in progress */
+    private EdgeCursor clockEdges;
+
+    // Decoder state kept between chunks
+    private boolean clockChecked = false;
+    /** Clock period in samples, calculated for parallel decoding */
+    private int clockPeriod = 0;
+    private int dataInteger = 0;
+    private int misoInteger = 0;
+    private int nBits = 0;
+    /** Sample index of the first bit of the word being read and of the last bit read */
+    private long wordStartSample = 0, lastCaptureSample = 0;
+    /** Capture edges of the clock being decoded */
+    private final int[] captureEdges = new int[EDGES_BUFFER_SIZE];
     private boolean CPOL = false;
     private boolean CPHA = true;
 
@@ -26,10 +55,12 @@ public class SPIProtocol extends Protocol {
      * <pre>
      * {@code
      * The Strings decoded from the {@link com.protocolanalyzer.api.LogicBitSet} are:
-     *  "[N]b [number]"    -> [N] is the number of bits of [number] which is the data
+     *  "[N]b [number]"      -> [N] is the number of bits of [number] which is the data
+     *  "MISO [N]b [number]" -> same for the MISO line in full-duplex mode
+     *  "[CS]" and "[/CS]"   -> chip select asserted and released
      *
-     * The incoming data is decoded considering the bits are received starting from the LSB
-     * If this is not the case you can use {@link com.protocolanalyzer.api.LogicHelper#reverseBits(int)}
+     * The incoming data is decoded considering the bits are received starting from the LSB unless
+     *  {@link #setMsbFirst(boolean)} is set
      * }
      * </pre>
      * @param startTime offset of start time
@@ -39,69 +70,215 @@ public class SPIProtocol extends Protocol {
         if(clockSource == null)
             throw new IllegalArgumentException("Clock source must be defined for SPI protocol");
 
-        LogicBitSet clock = clockSource.getChannelBitsData();
-        LogicBitSet dataLine = getChannelBitsData();
+        resetDecoder();
+        decodeChunk(getChannelSignal(), clockSource.getChannelSignal(), 0, timeToSample(startTime), true);
+    }
+
+    @Override
+    public void decode(LongLogicSignal data, LongLogicSignal clock, double startTime, int windowSamples) {
+        checkSingleLine();
+        super.decode(data, clock, startTime, windowSamples);
+    }
+
+    @Override
+    public void feed(LogicBitSet data, LogicBitSet clock) {
+        checkSingleLine();
+        super.feed(data, clock);
+    }
+
+    /**
+     * MISO and chip select lines have the sample indexes of the whole capture, they can't be used with windows
+     *  of it
+     */
+    private void checkSingleLine(){
+        if(misoSource != null || chipSelectSource != null)
+            throw new IllegalStateException("MISO and chip select lines are only decoded with decode() and decodeParallel()");
+    }
+
+    @Override
+    protected int decodeChunk(LogicSignal dataLine, LogicSignal clock, int fromIndex, long sampleOffset, boolean lastChunk) {
+        clockEdges = new EdgeCursor(clock);
+        final LogicSignal miso = misoSource != null ? misoSource.getChannelSignal() : null;
+        final LogicSignal chipSelect = chipSelectSource != null ? chipSelectSource.getChannelSignal() : null;
+        // Samples after the last one can only have the falling edge of a clock ending in '1'
+        final int clockEnd = clock.length() == Integer.MAX_VALUE ? Integer.MAX_VALUE : clock.length() + 1;
 
         // Time between each sample
         final double sampleTime = 1.0d/sampleFrec;
-        double t1 = 0, t2;
+        int index = fromIndex;
 
-        int dataInteger = 0;
-        int nBits = 0;
-        int index = 0, prevIndex = 0;
+        if(!clockChecked) {
+            // Calculate clock period between two rising edges
+            final int firstRisingEdge = clockEdges.nextRisingEdge(fromIndex);
+            final int secondRisingEdge = clockEdges.nextRisingEdge(firstRisingEdge);
+            final int clockDuration = secondRisingEdge - firstRisingEdge;
 
-        // Calculate clock period between two rising edges
-        final int clockDuration = clock.nextRisingEdge(clock.nextRisingEdge(0)) - clock.nextRisingEdge(0);
+            // We need at least 3 samples otherwise data may be corrupted (low sample rate)
+            if(lastChunk || secondRisingEdge != -1) {
+                if( ((double)clockDuration / sampleTime) < 3){
+                    PrintDebug.printWarning("Low sample rate! Data decoding may not be correct");
+                }
+                clockChecked = true;
+            }
+        }
 
-        // We need at least 3 samples otherwise data may be corrupted (low sample rate)
-        if( ((double)clockDuration / sampleTime) < 3){
-            PrintDebug.printWarning("Low sample rate! Data decoding may not be correct");
+        if(chipSelect == null){
+            // Capture the data on every rising/falling edge of the clock according to SPI mode
+            index = captureWords(dataLine, miso, clock, index + 1, clockEnd, index, sampleOffset);
+        }else{
+            // Only the clock edges while chip select is asserted, from sample 0 so a frame in progress there is found
+            int from = fromIndex == 0 ? 0 : index + 1;
+            while(from < dataLine.length()){
+                final int selected = chipSelectActiveHigh ? chipSelect.nextSetBit(from) : chipSelect.nextClearBit(from);
+                if(selected == -1 || selected >= dataLine.length()) break;
+                int released = chipSelectActiveHigh ? chipSelect.nextClearBit(selected) : chipSelect.nextSetBit(selected);
+                if(released == -1) released = clockEnd;
+
+                // A new frame starts its first word here
+                if(selected == 0 || chipSelect.get(selected - 1) != chipSelectActiveHigh){
+                    addWord();
+                    addEvent(Kind.CHIP_SELECT, 0, 0, sampleOffset + selected, sampleOffset + selected);
+                }
+                index = captureWords(dataLine, miso, clock, selected, Math.min(released, clockEnd),
+                        index, sampleOffset);
+                if(released >= dataLine.length()) break;
+
+                addWord();
+                addEvent(Kind.CHIP_DESELECT, 0, 0, sampleOffset + released, sampleOffset + released);
+                index = Math.max(index, released);
+                from = released + 1;
+            }
         }
 
-        // Capture the data on every rising/falling edge of the clock according to SPI mode
-        while ((index = getNextCaptureDataClockIndex(index)) != -1){
-            prevIndex = index;
-            if(nBits == 0) t1 = index*sampleTime;
-            dataInteger = LogicHelper.bitSet(dataInteger, dataLine.get(index), nBits++);
-
-            // Last bit, add decoded data and start again another byte
-            if(nBits == 8){
-                PrintDebug.printInfo("SPI Byte: " + dataInteger);
-                t2 = index*sampleTime;
-                addString(nBits + "b " + Integer.toString(dataInteger), t1, t2, startTime);
-                nBits = dataInteger = 0;
+        // No more edges in this chunk, the next one can only be after the last sample
+        if(!lastChunk) return Math.max(index, dataLine.length()-1);
+
+        // Last word with the remaining bits
+        addWord();
+        return index;
+    }
+
+    /**
+     * Samples the data lines on the capture edges of the clock
+     * @param fromIndex first index where a capture edge can be
+     * @param toIndex index after the last one where a capture edge can be
+     * @param index index of the last sample read
+     * @return index of the last sample read
+     */
+    private int captureWords(LogicSignal dataLine, LogicSignal miso, LogicSignal clock, int fromIndex, int toIndex,
+                             int index, long sampleOffset){
+        int count;
+        while ((count = getCaptureDataClockIndexes(clock, fromIndex, toIndex, captureEdges)) > 0){
+            for(int n = 0; n < count; ++n){
+                index = captureEdges[n];
+                lastCaptureSample = sampleOffset + index;
+                if(nBits == 0) wordStartSample = lastCaptureSample;
+                dataInteger = addBit(dataInteger, dataLine.get(index));
+                if(miso != null) misoInteger = addBit(misoInteger, miso.get(index));
+
+                // Last bit, add decoded data and start again another word
+                if(++nBits == wordBits) addWord();
             }
+            fromIndex = index + 1;
         }
+        return index;
+    }
+
+    private int addBit(int word, boolean bit){
+        return msbFirst ? (word << 1) | (bit ? 1 : 0) : LogicHelper.bitSet(word, bit, nBits);
+    }
 
-        // Last byte with the remaining bits
-        if(nBits > 0) {
-            PrintDebug.printInfo("SPI Byte: " + dataInteger);
-            t2 = prevIndex * sampleTime;
-            addString(nBits + "b " + Integer.toString(dataInteger), t1, t2, startTime);
+    /**
+     * Adds the word in progress, if any, and starts another one
+     */
+    private void addWord(){
+        if(nBits == 0) return;
+        if(DEBUG) PrintDebug.printInfo("SPI Word: " + dataInteger);
+        addEvent(Kind.WORD, dataInteger, nBits, wordStartSample, lastCaptureSample);
+        if(misoSource != null) addEvent(Kind.MISO_WORD, misoInteger, nBits, wordStartSample, lastCaptureSample);
+        nBits = dataInteger = misoInteger = 0;
+    }
+
+    @Override
+    protected boolean prepareParallelDecode(LogicSignal data, LogicSignal clock) {
+        EdgeCursor edges = new EdgeCursor(clock);
+        final int firstRisingEdge = edges.nextRisingEdge(0);
+        final int secondRisingEdge = edges.nextRisingEdge(firstRisingEdge);
+        if(firstRisingEdge == -1 || secondRisingEdge == -1) return false;
+
+        // Same check than the sequential decode, it is not done again by the segment decoders
+        clockPeriod = secondRisingEdge - firstRisingEdge;
+        if( ((double)clockPeriod / (1.0d/sampleFrec)) < 3){
+            PrintDebug.printWarning("Low sample rate! Data decoding may not be correct");
         }
+        clockChecked = true;
+        return true;
+    }
+
+    /**
+     * A split point is the middle of a time of several clock periods without clock edges
+     */
+    @Override
+    protected int nextSplitPoint(LogicSignal data, LogicSignal clock, int fromIndex) {
+        int[] idleLow = ParallelDecoder.findRun(clock, false, fromIndex, 4*clockPeriod + 2);
+        int[] idleHigh = ParallelDecoder.findRun(clock, true, fromIndex, 4*clockPeriod + 2);
+
+        int[] idle = idleLow;
+        if(idle == null || (idleHigh != null && idleHigh[0] < idle[0])) idle = idleHigh;
+        if(idle == null) return -1;
+        return idle[0] + (idle[1] - idle[0])/2;
     }
 
+    @Override
+    protected Protocol newSegmentDecoder() {
+        SPIProtocol decoder = new SPIProtocol(sampleFrec);
+        decoder.clockSource = clockSource;
+        decoder.misoSource = misoSource;
+        decoder.chipSelectSource = chipSelectSource;
+        decoder.chipSelectActiveHigh = chipSelectActiveHigh;
+        decoder.wordBits = wordBits;
+        decoder.msbFirst = msbFirst;
+        decoder.CPOL = CPOL;
+        decoder.CPHA = CPHA;
+        decoder.clockChecked = clockChecked;
+        return decoder;
+    }
+
+    @Override
+    protected boolean isDecoderIdle() {
+        return nBits == 0;
+    }
+
+    @Override
+    protected void resetDecoder() {
+        clockChecked = false;
+        nBits = dataInteger = misoInteger = 0;
+        wordStartSample = lastCaptureSample = 0;
+    }
 
     /**
-     * Returns the index of the rising/falling edge of the clock where we are supposed to capture the data.
+     * Copies the indexes of the rising/falling edges of the clock where we are supposed to capture the data.
      * This depends on the CPOL and CHPA settings.
      *
-     * @param index from where to start searching
-     * @return index of the rising/falling edge of the clock
+     * @param clock clock samples
+     * @param fromIndex first index where to search
+     * @param toIndex index after the last one where to search
+     * @param out where the indexes are written
+     * @return number of indexes copied, 0 if there aren't more
      */
-    private int getNextCaptureDataClockIndex(int index){
+    private int getCaptureDataClockIndexes(LogicSignal clock, int fromIndex, int toIndex, int[] out){
         // CPOL = 0
         if(!CPOL) {
             if (!CPHA)
-                return clockSource.getChannelBitsData().nextRisingEdge(index);
+                return clock.getRisingEdges(fromIndex, toIndex, out);
             else
-                return clockSource.getChannelBitsData().nextFallingEdge(index);
+                return clock.getFallingEdges(fromIndex, toIndex, out);
         }
         else{
             if (!CPHA)
-                return clockSource.getChannelBitsData().nextFallingEdge(index);
+                return clock.getFallingEdges(fromIndex, toIndex, out);
             else
-                return clockSource.getChannelBitsData().nextRisingEdge(index);
+                return clock.getRisingEdges(fromIndex, toIndex, out);
         }
     }
 
@@ -117,18 +294,76 @@ public class SPIProtocol extends Protocol {
         // CPOL = 0
         if(!CPOL) {
             if (!CPHA)
-                return clockSource.getChannelBitsData().nextFallingEdge(index);
+                return clockEdges.nextFallingEdge(index);
             else
-                return clockSource.getChannelBitsData().nextRisingEdge(index);
+                return clockEdges.nextRisingEdge(index);
         }
         else{
             if (!CPHA)
-                return clockSource.getChannelBitsData().nextRisingEdge(index);
+                return clockEdges.nextRisingEdge(index);
             else
-                return clockSource.getChannelBitsData().nextFallingEdge(index);
+                return clockEdges.nextFallingEdge(index);
         }
     }
 
+    public Protocol getMisoSource() {
+        return misoSource;
+    }
+
+    /**
+     * Sets the MISO line to decode full-duplex SPI in one pass, the channel of this decoder being MOSI
+     * @param misoSource protocol holding the MISO samples, null to decode only the channel of this decoder
+     */
+    public void setMisoSource(Protocol misoSource) {
+        this.misoSource = misoSource;
+    }
+
+    public Protocol getChipSelectSource() {
+        return chipSelectSource;
+    }
+
+    /**
+     * Sets the chip select line, words are only decoded while it is asserted
+     * @param chipSelectSource protocol holding the chip select samples, null if there is none
+     */
+    public void setChipSelectSource(Protocol chipSelectSource) {
+        this.chipSelectSource = chipSelectSource;
+    }
+
+    public boolean isChipSelectActiveHigh() {
+        return chipSelectActiveHigh;
+    }
+
+    /**
+     * @param chipSelectActiveHigh true if chip select is asserted with '1', by default it is asserted with '0'
+     */
+    public void setChipSelectActiveHigh(boolean chipSelectActiveHigh) {
+        this.chipSelectActiveHigh = chipSelectActiveHigh;
+    }
+
+    public int getWordBits() {
+        return wordBits;
+    }
+
+    /**
+     * @param wordBits bits of each word from 1 to 32, 8 by default
+     */
+    public void setWordBits(int wordBits) {
+        if(wordBits < 1 || wordBits > 32) throw new IllegalArgumentException("Word bits must be from 1 to 32: " + wordBits);
+        this.wordBits = wordBits;
+    }
+
+    public boolean isMsbFirst() {
+        return msbFirst;
+    }
+
+    /**
+     * @param msbFirst true if the first bit of each word is the MSB, by default it is the LSB
+     */
+    public void setMsbFirst(boolean msbFirst) {
+        this.msbFirst = msbFirst;
+    }
+
     public boolean isCPOL() {
         return CPOL;
     }
@@ -197,6 +432,7 @@ public class SPIProtocol extends Protocol {
         return true;
     }
 
+    @Override
     public Clock getClockSource() {
         return clockSource;
     }
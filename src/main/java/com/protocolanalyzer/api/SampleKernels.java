@@ -0,0 +1,139 @@
+package com.protocolanalyzer.api;
+
+import com.protocolanalyzer.api.utils.PrintDebug;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Bit manipulation kernels used to split the samples into channels and to find the edges of a channel. This
+ *  class is the scalar implementation, when the ProtocolDecoderAPI-vector jar is in the classpath and the JVM
+ *  is started with {@code --add-modules jdk.incubator.vector} the kernels of that jar are used instead.
+ * Setting the system property {@value #VECTOR_PROPERTY} to false always uses the scalar kernels.
+ */
+public class SampleKernels {
+
+    private static final boolean DEBUG = false;
+    public static final String VECTOR_PROPERTY = "protocolanalyzer.vector";
+    private static final String VECTOR_CLASS = "com.protocolanalyzer.api.VectorSampleKernels";
+
+    private static final SampleKernels SCALAR = new SampleKernels();
+    private static final SampleKernels VECTOR = loadVector();
+    private static final SampleKernels DEFAULT =
+            VECTOR != null && !"false".equals(System.getProperty(VECTOR_PROPERTY)) ? VECTOR : SCALAR;
+
+    protected SampleKernels() {}
+
+    /**
+     * @return kernels used by {@link com.protocolanalyzer.api.LogicHelper} and
+     *  {@link com.protocolanalyzer.api.LogicBitSet}
+     */
+    public static SampleKernels getDefault(){
+        return DEFAULT;
+    }
+
+    /**
+     * @return scalar kernels, always available
+     */
+    public static SampleKernels getScalar(){
+        return SCALAR;
+    }
+
+    /**
+     * @return Vector API kernels, null if they are not available in this JVM
+     */
+    public static SampleKernels getVector(){
+        return VECTOR;
+    }
+
+    private static SampleKernels loadVector(){
+        try {
+            return (SampleKernels)Class.forName(VECTOR_CLASS).getDeclaredConstructor().newInstance();
+        } catch (ClassNotFoundException e) {
+            return null;
+        } catch (Throwable e) {
+            // The class is there but jdk.incubator.vector isn't
+            if(DEBUG) PrintDebug.printWarning("Vector kernels not available: " + e);
+            return null;
+        }
+    }
+
+    /**
+     * @return kernels name
+     */
+    public String getName(){
+        return "scalar";
+    }
+
+    /**
+     * Demultiplex samples into 64 samples words for each channel
+     * @param data samples, bit N of each byte belongs to channel N
+     * @param offset first sample to demultiplex
+     * @param nSamples number of samples to demultiplex
+     * @param out out[N] gets the words for channel N, bit 0 of out[N][0] being the first sample. Bits after
+     *            the last sample are '0'.
+     */
+    public void demuxBlock(ByteBuffer data, int offset, int nSamples, long[][] out){
+        LogicHelper.demuxBlock(data, offset, nSamples, out);
+    }
+
+    /**
+     * Demultiplex samples of up to 64 channels. The channels are split in groups of 8, the byte of each group
+     *  of 8 samples is transposed as in {@link #demuxBlock(ByteBuffer, int, int, long[][])}.
+     * @param samples samples, bit N of each sample belongs to channel N
+     * @param nSamples number of samples to demultiplex
+     * @param out out[N] gets the words for channel N, bit 0 of out[N][0] being the first sample. Bits after
+     *            the last sample are '0'. Channels whose out[N] is null are skipped.
+     */
+    public void demuxWords(long[] samples, int nSamples, long[][] out){
+        final int channels = Math.min(out.length, 64);
+
+        for(int group = 0; group < channels; group += 8){
+            final int groupChannels = Math.min(8, channels - group);
+            boolean used = false;
+            for(int ch = group; ch < group + groupChannels; ++ch) used |= out[ch] != null;
+            if(!used) continue;
+
+            for(int n = 0, word = 0; n < nSamples; n += 64, ++word){
+                for(int ch = group; ch < group + groupChannels; ++ch){
+                    if(out[ch] != null) out[ch][word] = 0;
+                }
+
+                // 8 samples at a time
+                for(int k = 0; k < 8 && n + 8*k < nSamples; ++k){
+                    int pos = n + 8*k;
+                    int end = Math.min(pos + 8, nSamples);
+                    long bytes = 0;
+                    for(int b = pos; b < end; ++b) bytes |= ((samples[b] >>> group) & 0xFFL) << (8*(b-pos));
+
+                    // Now byte N has the 8 samples of channel group + N
+                    long transposed = LogicHelper.transpose8x8(bytes);
+                    for(int ch = group; ch < group + groupChannels; ++ch){
+                        if(out[ch] != null) out[ch][word] |= ((transposed >>> (8*(ch-group))) & 0xFFL) << (8*k);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Finds the transitions of consecutive words, bit N of a word being '1' if sample N is different
+     *  from sample N-1
+     * @param words samples
+     * @param offset first word
+     * @param count number of words
+     * @param carry last sample before the first word in bit 0
+     * @param rises rises[N] gets the rising edges of words[offset + N]
+     * @param falls falls[N] gets the falling edges of words[offset + N]
+     * @return last sample of the last word in bit 0, carry for the next words
+     */
+    public long transitions(long[] words, int offset, int count, long carry, long[] rises, long[] falls){
+        for(int n = 0; n < count; ++n){
+            long word = words[offset + n];
+            long previous = (word << 1) | carry;
+            carry = word >>> 63;
+            rises[n] = word & ~previous;
+            falls[n] = ~word & previous;
+        }
+        return carry;
+    }
+}
@@ -0,0 +1,293 @@
+package com.protocolanalyzer.api;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Ring of blocks of raw samples between the acquisition thread and the threads that demultiplex and decode them.
+ * There is only one producer and any number of {@link Consumer}s, each one with its own position in the ring, so
+ *  every consumer gets every block. No locks are used: the producer publishes a block with a sequence number and the
+ *  consumers copy it out of the ring.
+ * When the ring is full the {@link Policy} says what the producer does: wait for the slowest consumer, or overwrite
+ *  the oldest block, which is lost for the consumers that didn't read it yet.
+ *
+ * <pre>
+ * {@code
+ * SampleRing ring = new SampleRing(64, 8192, SampleRing.Policy.BLOCK);
+ * SampleRing.Consumer consumer = ring.newConsumer();
+ *
+ * // Acquisition thread
+ * ring.publish(samples, 0, count);
+ * ring.close();
+ *
+ * // Decoding thread
+ * byte[] block = new byte[ring.getBlockSize()];
+ * int length;
+ * while((length = consumer.take(block)) != -1){
+ *     LogicHelper.bufferToChannel(ByteBuffer.wrap(block, 0, length), 1, channels);
+ *     ...
+ * }
+ * }
+ * </pre>
+ */
+public class SampleRing {
+
+    /**
+     * What the producer does when the ring is full
+     */
+    public enum Policy {
+        /** Wait until the slowest consumer reads the oldest block, no block is lost */
+        BLOCK,
+        /** Overwrite the oldest block, consumers that didn't read it skip it */
+        OVERWRITE_OLDEST
+    }
+
+    /** Stamp of a slot being written */
+    private static final long WRITING = -1;
+
+    private final Policy policy;
+    private final int blockSize;
+    private final int mask;
+    private final byte[][] blocks;
+    private final int[] lengths;
+    /** Sequence number of the block in each slot, the slot can be read when it is the expected one */
+    private final AtomicLongArray stamps;
+    /** Number of blocks published */
+    private final AtomicLong published = new AtomicLong();
+    private volatile boolean closed = false;
+    private final AtomicReference<Consumer[]> consumers = new AtomicReference<>(new Consumer[0]);
+
+    /** Sequence number of the next block, only used by the producer */
+    private long next = 0;
+
+    /**
+     * @param capacity number of blocks of the ring, rounded up to a power of 2
+     * @param blockSize maximum number of bytes of each block
+     * @param policy what to do when the ring is full
+     */
+    public SampleRing(int capacity, int blockSize, Policy policy){
+        if(capacity <= 0 || capacity > 1 << 30) throw new IllegalArgumentException("Capacity must be from 1 to 2^30");
+        if(blockSize <= 0) throw new IllegalArgumentException("Block size must be positive");
+
+        final int size = Integer.highestOneBit(capacity) == capacity ? capacity : Integer.highestOneBit(capacity) << 1;
+        this.policy = policy;
+        this.blockSize = blockSize;
+        this.mask = size - 1;
+        this.blocks = new byte[size][blockSize];
+        this.lengths = new int[size];
+        this.stamps = new AtomicLongArray(size);
+        for(int n = 0; n < size; ++n) stamps.set(n, WRITING);
+    }
+
+    /**
+     * Adds a consumer that gets the blocks published from now on
+     * @return new consumer
+     */
+    public Consumer newConsumer(){
+        // Added with a position that doesn't hold the producer back until it has its own
+        Consumer consumer = new Consumer(Long.MAX_VALUE);
+        Consumer[] current, updated;
+        do {
+            current = consumers.get();
+            updated = Arrays.copyOf(current, current.length + 1);
+            updated[current.length] = consumer;
+        } while(!consumers.compareAndSet(current, updated));
+
+        // The producer may have gone around the ring before it saw the position, then it is taken again. Both
+        //  the position and the published count are volatile writes read after each other, so once the count
+        //  read after setting the position is close enough the producer waits for this consumer.
+        long position;
+        do {
+            position = published.get();
+            consumer.cursor.set(position);
+        } while(published.get() - position > mask);
+        return consumer;
+    }
+
+    /**
+     * Publishes a block, waiting for the consumers if the ring is full and the policy is {@link Policy#BLOCK}.
+     * Only the producer thread can call it.
+     * @param data samples, one byte per sample as given to {@link com.protocolanalyzer.api.LogicHelper#bufferToChannel(byte[], Protocol[])}
+     * @param offset first byte to publish
+     * @param length number of bytes, up to {@link #getBlockSize()}
+     */
+    public void publish(byte[] data, int offset, int length){
+        while(!tryPublish(data, offset, length)) Thread.yield();
+    }
+
+    /**
+     * Publishes a block if there is room for it. With {@link Policy#OVERWRITE_OLDEST} there is always room.
+     * Only the producer thread can call it.
+     * @param data samples
+     * @param offset first byte to publish
+     * @param length number of bytes, up to {@link #getBlockSize()}
+     * @return true if the block was published, false if the ring is full
+     * @throws IllegalArgumentException if the block is larger than the block size
+     * @throws IllegalStateException if the ring is closed
+     */
+    public boolean tryPublish(byte[] data, int offset, int length){
+        if(length < 0 || length > blockSize)
+            throw new IllegalArgumentException("Block of " + length + " bytes, it must be from 0 to " + blockSize);
+        if(closed) throw new IllegalStateException("Ring closed");
+
+        final long seq = next;
+        final int slot = (int)seq & mask;
+        if(policy == Policy.BLOCK){
+            if(seq - slowestConsumer() > mask) return false;
+        }else{
+            // getAndSet is a full barrier, consumers copying the old block see the stamp change before the new data
+            stamps.getAndSet(slot, WRITING);
+        }
+
+        System.arraycopy(data, offset, blocks[slot], 0, length);
+        lengths[slot] = length;
+        stamps.lazySet(slot, seq);
+        // Not lazy, the next check of the consumers must come after it for newConsumer()
+        published.set(seq + 1);
+        next = seq + 1;
+        return true;
+    }
+
+    /**
+     * @return position of the consumer furthest behind, the next block if there aren't consumers
+     */
+    private long slowestConsumer(){
+        long slowest = next;
+        for(Consumer consumer : consumers.get()) slowest = Math.min(slowest, consumer.cursor.get());
+        return slowest;
+    }
+
+    /**
+     * No more blocks are coming, consumers get -1 from {@link Consumer#take(byte[])} once they read all the blocks
+     */
+    public void close(){
+        closed = true;
+    }
+
+    public boolean isClosed(){
+        return closed;
+    }
+
+    /**
+     * @return number of blocks published since the ring was created
+     */
+    public long getPublishedCount(){
+        return published.get();
+    }
+
+    public int getBlockSize(){
+        return blockSize;
+    }
+
+    /**
+     * @return number of blocks of the ring
+     */
+    public int getCapacity(){
+        return mask + 1;
+    }
+
+    public Policy getPolicy(){
+        return policy;
+    }
+
+    /**
+     * Position of one reader in the ring, only one thread can use it
+     */
+    public final class Consumer {
+
+        /** Sequence number of the next block to read */
+        private final AtomicLong cursor;
+        private long dropped = 0;
+
+        private Consumer(long start){
+            cursor = new AtomicLong(start);
+        }
+
+        /**
+         * Copies the next block if there is one
+         * @param out where the block is copied, at least {@link #getBlockSize()} bytes
+         * @return number of bytes copied, -1 if there isn't a new block
+         */
+        public int poll(byte[] out){
+            long seq = cursor.get();
+            while(true){
+                final long available = published.get();
+                if(seq >= available) return -1;
+
+                // The producer went around the ring, skip what was overwritten
+                if(available - seq > mask + 1){
+                    dropped += available - (mask + 1) - seq;
+                    seq = available - (mask + 1);
+                }
+
+                final int slot = (int)seq & mask;
+                if(policy == Policy.BLOCK){
+                    final int length = lengths[slot];
+                    System.arraycopy(blocks[slot], 0, out, 0, length);
+                    cursor.lazySet(seq + 1);
+                    return length;
+                }
+
+                if(stamps.get(slot) == seq){
+                    final int length = lengths[slot];
+                    System.arraycopy(blocks[slot], 0, out, 0, Math.min(length, blockSize));
+                    // The compareAndSet keeps the copy before the check, it fails if the slot was overwritten meanwhile
+                    if(stamps.compareAndSet(slot, seq, seq)){
+                        cursor.lazySet(seq + 1);
+                        return length;
+                    }
+                }
+                // Overwritten while reading it, it is lost
+                ++dropped;
+                ++seq;
+                cursor.lazySet(seq);
+            }
+        }
+
+        /**
+         * Copies the next block waiting for it
+         * @param out where the block is copied, at least {@link #getBlockSize()} bytes
+         * @return number of bytes copied, -1 if the ring is closed and all the blocks were read
+         */
+        public int take(byte[] out){
+            while(true){
+                // Closed is read before trying so a block published right before closing isn't missed
+                final boolean wasClosed = closed;
+                int length = poll(out);
+                if(length != -1 || wasClosed) return length;
+                Thread.yield();
+            }
+        }
+
+        /**
+         * Stops reading the ring, the producer doesn't wait for this consumer anymore
+         */
+        public void close(){
+            Consumer[] current, updated;
+            do {
+                current = consumers.get();
+                int n = Arrays.asList(current).indexOf(this);
+                if(n == -1) return;
+                updated = new Consumer[current.length - 1];
+                System.arraycopy(current, 0, updated, 0, n);
+                System.arraycopy(current, n + 1, updated, n, updated.length - n);
+            } while(!consumers.compareAndSet(current, updated));
+        }
+
+        /**
+         * @return blocks this consumer didn't get because they were overwritten, always 0 with {@link Policy#BLOCK}
+         */
+        public long getDroppedCount(){
+            return dropped;
+        }
+
+        /**
+         * @return blocks published and not read yet by this consumer
+         */
+        public long getPending(){
+            return Math.max(0, published.get() - cursor.get());
+        }
+    }
+}
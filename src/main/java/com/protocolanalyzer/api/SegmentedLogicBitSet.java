@@ -0,0 +1,169 @@
+package com.protocolanalyzer.api;
+
+import java.util.Arrays;
+
+/**
+ * One bit per sample with 64 bit indexes. Samples are kept in segments of {@link #SEGMENT_SAMPLES} that are only
+ *  allocated when a '1' is written into them, so memory grows with the data and not with the indexes used.
+ */
+public class SegmentedLogicBitSet implements LongLogicSignal {
+
+    private static final int SEGMENT_SHIFT = 26;
+    /** Samples of each segment */
+    static final long SEGMENT_SAMPLES = 1L << SEGMENT_SHIFT;
+    private static final int SEGMENT_WORDS = (int)(SEGMENT_SAMPLES >>> 6);
+
+    /** Segments of samples, null if all their samples are '0' */
+    private long[][] segments = new long[1][];
+    /** Number of samples */
+    private long currentSize = 0;
+
+    private static int segmentIndex(long index){
+        return (int)(index >>> SEGMENT_SHIFT);
+    }
+
+    private static int wordIndex(long index){
+        return (int)((index >>> 6) & (SEGMENT_WORDS - 1));
+    }
+
+    /**
+     * Segment of the given sample, allocated if needed
+     */
+    private long[] segmentFor(long index){
+        final int s = segmentIndex(index);
+        if(s >= segments.length) segments = Arrays.copyOf(segments, Math.max(s + 1, 2 * segments.length));
+        if(segments[s] == null) segments[s] = new long[SEGMENT_WORDS];
+        return segments[s];
+    }
+
+    private long[] segment(long index){
+        final int s = segmentIndex(index);
+        return s < segments.length ? segments[s] : null;
+    }
+
+    @Override
+    public boolean get(long index) {
+        if(index < 0) throw new IndexOutOfBoundsException("index < 0: " + index);
+        long[] segment = segment(index);
+        return segment != null && (segment[wordIndex(index)] & (1L << index)) != 0;
+    }
+
+    @Override
+    public long length() {
+        return currentSize;
+    }
+
+    public void set(long index){
+        set(index, true);
+    }
+
+    public void set(long index, boolean value){
+        if(index < 0) throw new IndexOutOfBoundsException("index < 0: " + index);
+        if(value) segmentFor(index)[wordIndex(index)] |= 1L << index;
+        else{
+            long[] segment = segment(index);
+            if(segment != null) segment[wordIndex(index)] &= ~(1L << index);
+        }
+        if(index >= currentSize) currentSize = index + 1;
+    }
+
+    /**
+     * Sets the samples from fromIndex (inclusive) to toIndex (exclusive) to the given value
+     */
+    public void set(long fromIndex, long toIndex, boolean value){
+        if(fromIndex < 0 || toIndex < fromIndex)
+            throw new IndexOutOfBoundsException("fromIndex: " + fromIndex + ", toIndex: " + toIndex);
+        if(fromIndex == toIndex) return;
+
+        long n = fromIndex;
+        while(n < toIndex){
+            // Bits up to the end of the word or the range
+            final long end = Math.min(toIndex, (n | 63) + 1);
+            final long mask = (-1L << n) & (-1L >>> -end);
+            if(value) segmentFor(n)[wordIndex(n)] |= mask;
+            else{
+                long[] segment = segment(n);
+                if(segment != null) segment[wordIndex(n)] &= ~mask;
+            }
+            n = end;
+        }
+        if(toIndex > currentSize) currentSize = toIndex;
+    }
+
+    /**
+     * Appends the samples of a signal after the last sample
+     * @param signal samples to append
+     */
+    public void append(LogicSignal signal){
+        final long start = currentSize;
+        for(int n = signal.nextSetBit(0); n != -1 && n < signal.length(); ){
+            int end = Math.min(signal.nextClearBit(n), signal.length());
+            set(start + n, start + end, true);
+            n = signal.nextSetBit(end);
+        }
+        currentSize = start + signal.length();
+    }
+
+    /**
+     * Removes all the samples and releases their memory
+     */
+    public void clear(){
+        segments = new long[1][];
+        currentSize = 0;
+    }
+
+    @Override
+    public long getWord(long wordIndex) {
+        if(wordIndex < 0) throw new IndexOutOfBoundsException("wordIndex < 0: " + wordIndex);
+        final long[] segment = segment(wordIndex << 6);
+        return segment != null ? segment[wordIndex(wordIndex << 6)] : 0;
+    }
+
+    @Override
+    public long nextSetBit(long fromIndex) {
+        if(fromIndex < 0) throw new IndexOutOfBoundsException("fromIndex < 0: " + fromIndex);
+
+        long n = fromIndex;
+        while(n < currentSize){
+            long[] segment = segment(n);
+            if(segment == null){
+                // Nothing set in this segment
+                n = (n | (SEGMENT_SAMPLES - 1)) + 1;
+                continue;
+            }
+            int u = wordIndex(n);
+            long word = segment[u] & (-1L << n);
+            while(true){
+                if(word != 0){
+                    long index = (n & ~(SEGMENT_SAMPLES - 1)) + ((long)u << 6) + Long.numberOfTrailingZeros(word);
+                    return index < currentSize ? index : -1;
+                }
+                if(++u == SEGMENT_WORDS) break;
+                word = segment[u];
+            }
+            n = (n | (SEGMENT_SAMPLES - 1)) + 1;
+        }
+        return -1;
+    }
+
+    @Override
+    public long nextClearBit(long fromIndex) {
+        if(fromIndex < 0) throw new IndexOutOfBoundsException("fromIndex < 0: " + fromIndex);
+
+        long n = fromIndex;
+        while(n < currentSize){
+            long[] segment = segment(n);
+            if(segment == null) return n;
+
+            int u = wordIndex(n);
+            long word = ~segment[u] & (-1L << n);
+            while(true){
+                if(word != 0) return (n & ~(SEGMENT_SAMPLES - 1)) + ((long)u << 6) + Long.numberOfTrailingZeros(word);
+                if(++u == SEGMENT_WORDS) break;
+                word = ~segment[u];
+            }
+            n = (n | (SEGMENT_SAMPLES - 1)) + 1;
+        }
+        return n;
+    }
+}
@@ -1,5 +1,6 @@
 package com.protocolanalyzer.api;
 
+import com.protocolanalyzer.api.DecodedEventSink.Kind;
 import com.protocolanalyzer.api.utils.PrintDebug;
 
 public class UARTProtocol extends Protocol{
@@ -40,30 +41,66 @@ public class UARTProtocol extends Protocol{
             PrintDebug.printInfo("Data length: "    + logicData.length());
             PrintDebug.printInfo("Data: "           + logicData.toString());
         }
-		
-		int n = 0;
+
+		checkSampleRate();
+		decodeChunk(logicData, null, 0, timeToSample(startTime), true);
+		if(DEBUG) PrintDebug.printInfo("Decoded data size: " + mDecodedData.size());
+	}
+
+	/**
+	 * Test if we have at least 3 samples per bit
+	 */
+	private void checkSampleRate(){
+		if( ((1.0d/baudRate) / (1.0d/sampleFrec)) < 3.0d){
+            PrintDebug.printWarning("Low sample rate! Data decoding may not be correct");
+        }
+	}
+
+	/**
+	 * Samples per bit at the current baud rate
+	 */
+	private int samplesPerBit(){
+		return (int)Math.ceil((1.0d/baudRate) / (1.0d/sampleFrec));
+	}
+
+	/**
+	 * Samples from the falling edge of the start bit to the last sample tested in the frame
+	 */
+	private int frameSamples(int samplesPerBit){
+		final int halfBit = (int)Math.ceil(samplesPerBit/2.0);
+		return halfBit + samplesPerBit * ((is9Bits ? 9 : 8) + (parity != Parity.NoParity ? 1 : 0) + (twoStopBits ? 2 : 1));
+	}
+
+	@Override
+	protected int decodeChunk(LogicSignal data, LogicSignal clock, int fromIndex, long sampleOffset, boolean lastChunk) {
+		int n = fromIndex;
 		int tempIndex;
+		int searchIndex;
 		boolean parityBit = false;
 		final int dataBits;
-		final double sampleTime = 1.0d/sampleFrec;					// Time between each sample
-		final int samplesPerBit = (int)Math.ceil((1.0d/baudRate) / sampleTime);
+		final int samplesPerBit = samplesPerBit();
 		final int halfBit = (int)Math.ceil(samplesPerBit/2.0);		// Time to the middle of the bit
 		
 		if(is9Bits) dataBits = 9;
 		else dataBits = 8;
+
+		final int frameSamples = frameSamples(samplesPerBit);
 		
 		if(DEBUG) PrintDebug.printInfo("samplesPerBit: "    + samplesPerBit);
 		if(DEBUG) PrintDebug.printInfo("halfBit: "          + halfBit);
-		
-		// Test if we have at least 3 samples per bit
-		if( ((1.0d/baudRate) / sampleTime) < 3.0d){
-            PrintDebug.printWarning("Low sample rate! Data decoding may not be correct");
-        }
 
         // We need at least 10 bits for a complete UART transmission (samplesPerBit*10). Keep going while we have this
-        //  10 bits available
-		while(n <= (logicData.length()-(samplesPerBit*10))){
-			n = logicData.nextFallingEdge(n); if(n == -1) break;		// Search for falling edge (Start)
+        //  10 bits available. If more chunks are coming keep going while there are samples, the frames that don't
+        //  fit in this chunk are decoded with the next one.
+		while(lastChunk ? n <= (data.length()-(samplesPerBit*10)) : n < data.length()){
+			searchIndex = n;
+			n = data.nextFallingEdge(n);		// Search for falling edge (Start)
+			if(n == -1){
+				// No falling edge in this chunk, it can only start with the next samples
+				if(!lastChunk) return Math.max(searchIndex, data.length()-1);
+				break;
+			}
+			if(!lastChunk && n + frameSamples >= data.length()) return searchIndex;
 			
 			if(DEBUG) PrintDebug.printInfo("Falling edge index: " + n);
 			
@@ -72,7 +109,7 @@ public class UARTProtocol extends Protocol{
 			if(DEBUG) PrintDebug.printInfo("Start index: " + n);
 
             // If the next bit is 0 then it's the start bit
-			if(!logicData.get(n)){
+			if(!data.get(n)){
                 // Start bit starting time
 				tempIndex = n - halfBit;
 				if(DEBUG) PrintDebug.printInfo("Start index of byte: " + n);
@@ -81,47 +118,49 @@ public class UARTProtocol extends Protocol{
 				// Start reading from the LSB
 				for(int bit = 0; bit < dataBits; ++bit){
 					n += samplesPerBit;
-					dataByte = LogicHelper.bitSet(dataByte, logicData.get(n), (dataBits-1) - bit);
+					dataByte = LogicHelper.bitSet(dataByte, data.get(n), (dataBits-1) - bit);
 				}
 				
 				// Parity bit
 				if(parity != Parity.NoParity){
 					n += samplesPerBit;
-					parityBit = logicData.get(n);
+					parityBit = data.get(n);
 				}
 				
 				if(DEBUG) PrintDebug.printInfo("dataByte: " + Integer.toBinaryString(dataByte) + " - dataByte: " + dataByte);
 				n += samplesPerBit;
 
                 // Check if the next bit is the stop bit, otherwise this all is an error, skip it!
-				if(logicData.get(n)){
+				if(data.get(n)){
 					// Si tengo dos bits de stop compruebo que a continuación este el segundo bit
 					if(twoStopBits){
-						if(!logicData.get(n + samplesPerBit)) continue;
+						if(!data.get(n + samplesPerBit)) continue;
 					}
 					if(DEBUG) PrintDebug.printInfo("stopBit index: " + n);
 					// Start bit
-					addString("[S]", tempIndex*sampleTime, (tempIndex+samplesPerBit)*sampleTime, startTime);
+					final long frameStart = sampleOffset + tempIndex;
+					final long bitCenter = sampleOffset + n;
+					addEvent(Kind.START_BIT, 0, 0, frameStart, frameStart+samplesPerBit);
 					
 					// Data
-					addString(""+dataByte, (tempIndex+samplesPerBit)*sampleTime,
-							(tempIndex+samplesPerBit+(samplesPerBit*dataBits)*sampleTime), startTime);
+					addEvent(Kind.DATA, dataByte, dataBits, frameStart+samplesPerBit,
+							frameStart+samplesPerBit+(samplesPerBit*dataBits));
 					
 					// Parity bit
 					if(parity != Parity.NoParity){
 						if(checkParity(dataByte, parityBit))
-							addString("[P]", (n-halfBit)*sampleTime, (n+halfBit)*sampleTime, startTime);
+							addEvent(Kind.PARITY_OK, 0, 0, bitCenter-halfBit, bitCenter+halfBit);
 						else
-							addString("[P*]", (n-halfBit)*sampleTime, (n+halfBit)*sampleTime, startTime);
+							addEvent(Kind.PARITY_ERROR, 0, 0, bitCenter-halfBit, bitCenter+halfBit);
 					}
 					
 					// Stop bit(s)
-					if(!twoStopBits) addString("[SP]", (n-halfBit)*sampleTime, (n+halfBit)*sampleTime, startTime);
+					if(!twoStopBits) addEvent(Kind.STOP_BIT, 0, 0, bitCenter-halfBit, bitCenter+halfBit);
 					else{
 						// Bits de stop
-						addString("[SP1]", ((n-halfBit)*sampleTime), ((n-halfBit)+samplesPerBit)*sampleTime, startTime);	
+						addEvent(Kind.STOP_BIT_1, 0, 0, bitCenter-halfBit, (bitCenter-halfBit)+samplesPerBit);
 						n += samplesPerBit;
-						addString("[SP2]", ((n-halfBit)*sampleTime), ((n-halfBit)+samplesPerBit)*sampleTime, startTime);
+						addEvent(Kind.STOP_BIT_2, 0, 0, bitCenter-halfBit+samplesPerBit, (bitCenter-halfBit)+2*samplesPerBit);
 						continue;
 					}
 				}
@@ -130,7 +169,37 @@ public class UARTProtocol extends Protocol{
 			if(DEBUG) PrintDebug.printInfo("n before while: " + n);
 		}
 		if(DEBUG) PrintDebug.printInfo("Exit while()");
-		if(DEBUG) PrintDebug.printInfo("Decoded data size: " + mDecodedData.size());
+		return n;
+	}
+
+	@Override
+	protected boolean prepareParallelDecode(LogicSignal data, LogicSignal clock) {
+		checkSampleRate();
+		return true;
+	}
+
+	/**
+	 * The line is idle (high) between frames, a split point is the last sample of an idle time longer than a frame
+	 */
+	@Override
+	protected int nextSplitPoint(LogicSignal data, LogicSignal clock, int fromIndex) {
+		final int samplesPerBit = samplesPerBit();
+		final int frameSamples = frameSamples(samplesPerBit);
+		int[] idle = ParallelDecoder.findRun(data, true, fromIndex, frameSamples + 2);
+
+		// Decode stops (samplesPerBit*10) samples before the end so the split point can't be after that
+		if(idle == null || idle[1] - 1 > data.length() - (samplesPerBit*10)) return -1;
+		return idle[1] - 1;
+	}
+
+	@Override
+	protected Protocol newSegmentDecoder() {
+		UARTProtocol decoder = new UARTProtocol(sampleFrec);
+		decoder.baudRate = baudRate;
+		decoder.is9Bits = is9Bits;
+		decoder.twoStopBits = twoStopBits;
+		decoder.parity = parity;
+		return decoder;
 	}
 
 	@Override
@@ -0,0 +1,22 @@
+package com.protocolanalyzer.api;
+
+/**
+ * {@link com.protocolanalyzer.api.LogicSignal} that the demultiplexers can fill in place, like
+ *  {@link com.protocolanalyzer.api.LogicHelper#bufferToChannel(byte[], Protocol[])} does. Channels holding a signal
+ *  that can't be written are given a new {@link com.protocolanalyzer.api.LogicBitSet} instead.
+ */
+public interface WritableLogicSignal extends LogicSignal {
+
+    /**
+     * Removes all the samples
+     */
+    void clear();
+
+    /**
+     * Copies nBits samples from the given words starting at fromIndex, overwriting the samples already there
+     * @param fromIndex index of the first sample to write
+     * @param src samples to write where bit 0 of src[0] is the first sample
+     * @param nBits number of samples to write
+     */
+    void setWords(int fromIndex, long[] src, int nBits);
+}
@@ -0,0 +1,94 @@
+import com.protocolanalyzer.api.*;
+import com.protocolanalyzer.api.utils.ByteArrayBuffer;
+import org.junit.*;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * CapturePool Tester.
+ */
+public class CapturePoolTest {
+
+    @Test
+    public void testSizeClasses() throws Exception {
+        CapturePool pool = new CapturePool(2);
+        long[] words = pool.takeWords(100);
+        assertEquals(128, words.length);
+        assertEquals(64, pool.takeWords(0).length);
+        assertEquals(0, pool.getHits());
+        assertEquals(2, pool.getMisses());
+
+        words[5] = 7;
+        pool.release(words);
+        long[] again = pool.takeWords(65);
+        assertSame(words, again);
+        assertEquals(0, again[5]);
+        assertEquals(1, pool.getHits());
+
+        // Buffers that are not of a size class, or more than the maximum free ones, are not kept
+        pool.release(new byte[100]);
+        pool.release(new byte[256]);
+        pool.release(new byte[256]);
+        pool.release(new byte[256]);
+        assertEquals(2, pool.getDropped());
+        assertEquals(3, pool.getReleased());
+        assertEquals(512, pool.getFreeBytes());
+        assertEquals(256, pool.takeBytes(200).length);
+        pool.clear();
+        assertEquals(0, pool.getFreeBytes());
+    }
+
+    @Test
+    public void testRepeatedAcquisitions() throws Exception {
+        Random random = new Random(24);
+        CapturePool pool = new CapturePool();
+        UARTProtocol uart = new UARTProtocol(200000);
+        Protocol[] channels = { uart, new Clock(200000) };
+        for(Protocol channel : channels) channel.setChannelBitsData(new LogicBitSet(1000, pool));
+
+        long missesAfterFirst = 0;
+        int events = 0;
+        for(int acquisition = 0; acquisition < 5; ++acquisition){
+            // Idle line with a frame, compressed
+            ByteArrayBuffer compressed = new ByteArrayBuffer(64);
+            int[] runs = { 500 + random.nextInt(100), 21, 42, 21, 21, 63, 42, 21, 1000 };
+            for(int n = 0; n < runs.length; ++n){
+                compressed.append(runs[n] & 0xFF);
+                compressed.append(runs[n] >>> 8);
+                compressed.append(n % 2 == 0 ? 3 : 2);
+            }
+            byte[] expected = LogicHelper.runLengthDecode(compressed);
+            assertEquals(expected.length, LogicHelper.runLengthSamples(compressed));
+
+            byte[] buffer = pool.takeBytes(LogicHelper.runLengthSamples(compressed));
+            int count = LogicHelper.runLengthDecode(compressed, buffer);
+            assertEquals(expected.length, count);
+            for(int n = 0; n < count; ++n) assertEquals(expected[n], buffer[n]);
+
+            LogicHelper.bufferToChannel(ByteBuffer.wrap(buffer, 0, count), 1, channels);
+            pool.release(buffer);
+            for(int n = 0; n < count; ++n){
+                assertEquals((expected[n] & 1) != 0, uart.getChannelBitsData().get(n));
+                assertEquals((expected[n] & 2) != 0, channels[1].getChannelBitsData().get(n));
+            }
+
+            uart.getDecodedEvents().clear();
+            uart.decode(0);
+            // Same frame in every acquisition
+            if(acquisition == 0) events = uart.getDecodedEvents().size();
+            assertTrue(events > 0);
+            assertEquals(events, uart.getDecodedEvents().size());
+
+            // Words of the channels go back to the pool for the next acquisition
+            for(Protocol channel : channels) channel.getChannelBitsData().release();
+            assertEquals(0, uart.getChannelBitsData().length());
+            if(acquisition == 0) missesAfterFirst = pool.getMisses();
+        }
+        // Only the first acquisition allocates
+        assertEquals(missesAfterFirst, pool.getMisses());
+        assertTrue(pool.getHits() > 0);
+    }
+}
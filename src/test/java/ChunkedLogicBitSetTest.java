@@ -0,0 +1,144 @@
+import com.protocolanalyzer.api.*;
+import org.junit.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+/**
+ * ChunkedLogicBitSet Tester.
+ */
+public class ChunkedLogicBitSetTest {
+
+    private static void assertSameSamples(LogicBitSet expected, ChunkedLogicBitSet bits, Random random){
+        assertEquals(expected.length(), bits.length());
+        for(int n = 0; n < expected.length() + 100; n += 1 + random.nextInt(50)){
+            assertEquals(expected.get(n), bits.get(n));
+            assertEquals(expected.nextSetBit(n), bits.nextSetBit(n));
+            assertEquals(expected.nextClearBit(n), bits.nextClearBit(n));
+            assertEquals(expected.nextRisingEdge(n), bits.nextRisingEdge(n));
+            assertEquals(expected.nextFallingEdge(n), bits.nextFallingEdge(n));
+        }
+        for(int w = 0; w < (expected.length() + 63) / 64 + 2; ++w) assertEquals(expected.getWord(w), bits.getWord(w));
+    }
+
+    @Test
+    public void testSameAsLogicBitSet() throws Exception {
+        Random random = new Random(21);
+        LogicBitSet expected = new LogicBitSet();
+        ChunkedLogicBitSet bits = new ChunkedLogicBitSet();
+
+        long[] words = new long[100];
+        for(int n = 0; n < 300; ++n){
+            int index = random.nextInt(5 * ChunkedLogicBitSet.CHUNK_SAMPLES);
+            switch (random.nextInt(3)){
+                case 0:
+                    boolean value = random.nextBoolean();
+                    expected.set(index, value);
+                    bits.set(index, value);
+                    break;
+                case 1:
+                    int end = index + random.nextInt(5000);
+                    expected.set(index, end);
+                    bits.set(index, end, true);
+                    break;
+                default:
+                    for(int w = 0; w < words.length; ++w) words[w] = random.nextLong();
+                    int count = random.nextInt(64 * words.length);
+                    expected.setWords(index, words, count);
+                    bits.setWords(index, words, count);
+            }
+        }
+        assertSameSamples(expected, bits, random);
+        assertSameSamples(expected, new ChunkedLogicBitSet(expected), random);
+    }
+
+    @Test
+    public void testSnapshot() throws Exception {
+        Random random = new Random(22);
+        ChunkedLogicBitSet bits = new ChunkedLogicBitSet();
+        LogicBitSet expected = new LogicBitSet();
+        for(int n = 0; n < 8 * ChunkedLogicBitSet.CHUNK_SAMPLES; n += 1 + random.nextInt(100)){
+            bits.set(n);
+            expected.set(n);
+        }
+        assertEquals(8, bits.getOwnedChunksCount());
+
+        ChunkedLogicBitSet snapshot = bits.snapshot();
+        assertEquals(0, bits.getOwnedChunksCount());
+        assertEquals(0, snapshot.getOwnedChunksCount());
+        LogicBitSet before = new LogicBitSet(expected);
+
+        // Only the written chunks are copied
+        bits.set(3, false);
+        bits.set(8 * ChunkedLogicBitSet.CHUNK_SAMPLES + 10, 8 * ChunkedLogicBitSet.CHUNK_SAMPLES + 20, true);
+        expected.set(3, false);
+        expected.set(8 * ChunkedLogicBitSet.CHUNK_SAMPLES + 10, 8 * ChunkedLogicBitSet.CHUNK_SAMPLES + 20);
+        assertEquals(2, bits.getOwnedChunksCount());
+        assertSameSamples(expected, bits, random);
+        assertSameSamples(before, snapshot, random);
+
+        // Writing the snapshot doesn't change the set
+        snapshot.set(0, 100, false);
+        assertEquals(1, snapshot.getOwnedChunksCount());
+        assertSameSamples(expected, bits, random);
+
+        bits.clear();
+        assertEquals(0, bits.length());
+        assertEquals(before.length(), snapshot.length());
+    }
+
+    @Test
+    public void testConcurrentReaders() throws Exception {
+        final int chunks = 6;
+        final ChunkedLogicBitSet bits = new ChunkedLogicBitSet();
+        final BlockingQueue<ChunkedLogicBitSet> snapshots = new ArrayBlockingQueue<>(1000);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            // Each reader checks that its snapshot has exactly the samples written before taking it
+            List<Future<Integer>> readers = new ArrayList<>();
+            for(int r = 0; r < 2; ++r){
+                readers.add(executor.submit(() -> {
+                    int checked = 0;
+                    ChunkedLogicBitSet snapshot;
+                    while((snapshot = snapshots.take()).length() > 0){
+                        int length = snapshot.length();
+                        for(int n = 0; n < length; n += 997) assertEquals(n % 3 == 0, snapshot.get(n));
+                        assertEquals(length - 1 - (length - 1) % 3, snapshot.nextSetBit(length - 3));
+                        assertEquals(-1, snapshot.nextSetBit(length));
+                        ++checked;
+                    }
+                    return checked;
+                }));
+            }
+
+            long[] words = new long[16];
+            for(int n = 0; n < chunks * ChunkedLogicBitSet.CHUNK_SAMPLES; n += 1024){
+                for(int w = 0; w < words.length; ++w){
+                    long word = 0;
+                    for(int b = 0; b < 64; ++b){
+                        if((n + 64*w + b) % 3 == 0) word |= 1L << b;
+                    }
+                    words[w] = word;
+                }
+                bits.setWords(n, words, 1024);
+                // Only the chunk being written is copied after each snapshot
+                if(n % 8192 == 0) snapshots.put(bits.snapshot());
+            }
+            for(int r = 0; r < 2; ++r) snapshots.put(new ChunkedLogicBitSet());
+            // Either reader can take most of them, together they check all
+            int checked = 0;
+            for(Future<Integer> reader : readers) checked += reader.get();
+            assertEquals(chunks * ChunkedLogicBitSet.CHUNK_SAMPLES / 8192, checked);
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
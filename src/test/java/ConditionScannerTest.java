@@ -0,0 +1,74 @@
+import com.protocolanalyzer.api.*;
+import com.protocolanalyzer.api.ConditionScanner.Condition;
+import org.junit.*;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * ConditionScanner Tester.
+ */
+public class ConditionScannerTest {
+
+    private static boolean sample(LogicSignal signal, int index){
+        return index >= 0 && index < signal.length() && signal.get(index);
+    }
+
+    private static boolean matches(LogicSignal signal, Condition condition, int index){
+        switch (condition){
+            case HIGH:      return sample(signal, index);
+            case LOW:       return !sample(signal, index);
+            case RISING:    return sample(signal, index) && !sample(signal, index - 1);
+            default:        return !sample(signal, index) && sample(signal, index - 1);
+        }
+    }
+
+    /** Runs of random length, sometimes very long */
+    private static LogicBitSet randomSignal(Random random, int length){
+        LogicBitSet bits = new LogicBitSet();
+        boolean state = random.nextBoolean();
+        for(int n = 0; n < length; ){
+            int end = Math.min(length, n + 1 + random.nextInt(random.nextInt(8) == 0 ? 2000 : 20));
+            bits.set(n, end, state);
+            state = !state;
+            n = end;
+        }
+        return bits;
+    }
+
+    @Test
+    public void testSameAsSampleBySample() throws Exception {
+        Random random = new Random(11);
+        Condition[] conditions = Condition.values();
+
+        for(int round = 0; round < 20; ++round){
+            LogicBitSet a = randomSignal(random, 3000 + random.nextInt(2000));
+            LogicBitSet b = randomSignal(random, 3000 + random.nextInt(2000));
+            RunLengthBitSet runs = new RunLengthBitSet();
+            for(int n = 0; n < b.length(); ){
+                int end = b.get(n) ? b.nextClearBit(n) : Math.min(b.nextSetBit(n) == -1 ? b.length() : b.nextSetBit(n), b.length());
+                runs.addRun(b.get(n), end - n);
+                n = end;
+            }
+
+            Condition ca = conditions[random.nextInt(conditions.length)];
+            Condition cb = conditions[random.nextInt(conditions.length)];
+            ConditionScanner scanner = new ConditionScanner().add(a, ca).add(b, cb);
+            ConditionScanner runScanner = new ConditionScanner().add(a, ca).add(runs, cb);
+            final int length = Math.max(a.length(), b.length());
+
+            for(int from = 0; from < length; from += 1 + random.nextInt(50)){
+                int expected = -1;
+                for(int n = from; n < length; ++n){
+                    if(matches(a, ca, n) && matches(b, cb, n)){
+                        expected = n;
+                        break;
+                    }
+                }
+                assertEquals(ca + " " + cb + " from " + from, expected, scanner.next(from));
+                assertEquals(ca + " " + cb + " from " + from, expected, runScanner.next(from));
+            }
+        }
+    }
+}
@@ -0,0 +1,110 @@
+import com.protocolanalyzer.api.*;
+import org.junit.*;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * DecodeCheckpoints Tester. Decoding a window of the capture from a checkpoint must decode the same events than
+ *  decoding the whole capture.
+ */
+public class DecodeCheckpointsTest {
+
+    /**
+     * Compares random windows of the capture with the events of the whole decode that overlap them
+     */
+    private static void assertSameWindows(Protocol protocol, DecodedEventStore expected, Random random){
+        final long length = protocol.getChannelSignal().length();
+        final long offset = 1000;
+        DecodeCheckpoints checkpoints = DecodeCheckpoints.build(protocol, offset/(double)protocol.getSampleFrequency(), 4096);
+        assertTrue(checkpoints.getCount() > 10);
+        assertEquals(offset, checkpoints.getCheckpointSample(0));
+
+        for(int w = 0; w < 50; ++w){
+            long from = offset + (long)(random.nextDouble() * length);
+            long to = w == 0 ? offset + length : Math.min(offset + length, from + random.nextInt(20000));
+            DecodedEventStore window = new DecodedEventStore();
+            checkpoints.decode(from, to, window);
+
+            int n = 0;
+            for(int e = 0; e < expected.size(); ++e){
+                if(expected.getEndSample(e) < from || expected.getStartSample(e) > to) continue;
+                assertTrue(n < window.size());
+                assertEquals(expected.getKind(e), window.getKind(n));
+                assertEquals(expected.getPayload(e), window.getPayload(n));
+                assertEquals(expected.getStartSample(e), window.getStartSample(n));
+                assertEquals(expected.getEndSample(e), window.getEndSample(n));
+                ++n;
+            }
+            assertEquals(n, window.size());
+        }
+    }
+
+    @Test
+    public void testUART() throws Exception {
+        Random random = new Random(1);
+        StringBuilder frames = new StringBuilder("11");
+        for(int n = 0; n < 3000; ++n){
+            frames.append('0');
+            for(int bit = 0; bit < 8; ++bit) frames.append(random.nextBoolean() ? '1' : '0');
+            frames.append('1').append(DecodeFixtures.repeat('1', random.nextInt(25)));
+        }
+        UARTProtocol uart = new UARTProtocol(200000);
+        uart.setChannelBitsData(LogicHelper.bitParser(frames.toString(), 21, 1));
+        uart.decode(1000/200000.0);
+        assertEquals(0, uart.getDecodedEvents().size() % 4);
+
+        assertSameWindows(uart, uart.getDecodedEvents(), random);
+    }
+
+    @Test
+    public void testI2C() throws Exception {
+        Random random = new Random(2);
+        StringBuilder sda = new StringBuilder(), scl = new StringBuilder();
+        for(int n = 0; n < 1500; ++n){
+            sda.append("100  11010010011100101  0  11010011110000111 0 11010011110000111 1  0011");
+            scl.append("110  01010101010101010  1  01010101010101010 1 01010101010101010 1  0111");
+            int idle = random.nextInt(30);
+            sda.append(DecodeFixtures.repeat('1', idle));
+            scl.append(DecodeFixtures.repeat('1', idle));
+        }
+        Clock clock = new Clock(400000);
+        clock.setChannelBitsData(LogicHelper.bitParser(scl.toString(), 5, 1));
+        I2CProtocol i2c = new I2CProtocol(400000);
+        i2c.setClockSource(clock);
+        i2c.setChannelBitsData(LogicHelper.bitParser(sda.toString(), 5, 1));
+        i2c.decode(1000/400000.0);
+
+        assertSameWindows(i2c, i2c.getDecodedEvents(), random);
+    }
+
+    @Test
+    public void testSPI() throws Exception {
+        Random random = new Random(3);
+        StringBuilder mosi = new StringBuilder(), sck = new StringBuilder();
+        for(int n = 0; n < 3000; ++n){
+            for(int bit = 0; bit < 8; ++bit){
+                char b = random.nextBoolean() ? '1' : '0';
+                mosi.append(b).append(b);
+                sck.append("01");
+            }
+            int idle = random.nextInt(30);
+            mosi.append(DecodeFixtures.repeat('0', idle));
+            sck.append(DecodeFixtures.repeat('0', idle));
+        }
+        Clock clock = new Clock(400000);
+        clock.setChannelBitsData(LogicHelper.bitParser(sck.toString(), 5, 1));
+        SPIProtocol spi = new SPIProtocol(400000);
+        spi.setClockSource(clock);
+        spi.setChannelBitsData(LogicHelper.bitParser(mosi.toString(), 5, 1));
+        spi.decode(1000/400000.0);
+
+        assertSameWindows(spi, spi.getDecodedEvents(), random);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMissingClock() throws Exception {
+        DecodeCheckpoints.build(new SPIProtocol(400000), 0, 4096);
+    }
+}
@@ -0,0 +1,53 @@
+import com.protocolanalyzer.api.*;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Capture builders and assertions shared by the decoding testers.
+ */
+public class DecodeFixtures {
+
+    private DecodeFixtures(){}
+
+    /**
+     * @param c character to repeat
+     * @param times number of times
+     * @return a String with {@code c} repeated {@code times} times, to build bitParser() captures
+     */
+    public static String repeat(char c, int times){
+        StringBuilder b = new StringBuilder(times);
+        for(int n = 0; n < times; ++n) b.append(c);
+        return b.toString();
+    }
+
+    /**
+     * @param random source of the data bits
+     * @param bytes number of SPI bytes
+     * @return random SPI data bits lasting two samples each, for a "01" repeated clock
+     */
+    public static String spiBits(Random random, int bytes){
+        StringBuilder b = new StringBuilder();
+        for(int n = 0; n < 8*bytes; ++n){
+            char c = random.nextBoolean() ? '1' : '0';
+            b.append(c).append(c);
+        }
+        return b.toString();
+    }
+
+    /**
+     * Asserts {@code actual} holds the same events than a non empty {@code expected}
+     */
+    public static void assertSameEvents(DecodedEventStore expected, DecodedEventStore actual){
+        assertTrue(expected.size() > 0);
+        assertEquals(expected.size(), actual.size());
+        for(int n = 0; n < expected.size(); ++n){
+            assertEquals(expected.getKind(n), actual.getKind(n));
+            assertEquals(expected.getPayload(n), actual.getPayload(n));
+            assertEquals(expected.getBits(n), actual.getBits(n));
+            assertEquals(expected.getStartSample(n), actual.getStartSample(n));
+            assertEquals(expected.getEndSample(n), actual.getEndSample(n));
+        }
+    }
+}
@@ -0,0 +1,97 @@
+import com.protocolanalyzer.api.*;
+import org.junit.*;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.*;
+
+/**
+ * DecodeSession Tester. Decoding all the protocols at once must decode the same than decoding them one by one.
+ */
+public class DecodeSessionTest {
+
+    private static ExecutorService executor;
+
+    @BeforeClass
+    public static void setUp(){
+        executor = Executors.newFixedThreadPool(4);
+    }
+
+    @AfterClass
+    public static void tearDown(){
+        executor.shutdown();
+    }
+
+    /**
+     * Clock taking some time so the decoders depending on it can be seen waiting
+     */
+    private static class SlowClock extends Clock {
+        SlowClock(long freq){
+            super(freq);
+        }
+
+        @Override
+        public void decode(double startTime) {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static SPIProtocol spi(Clock clock, LogicBitSet data){
+        SPIProtocol spi = new SPIProtocol(400000);
+        spi.setClockSource(clock);
+        spi.setChannelBitsData(data);
+        return spi;
+    }
+
+    @Test
+    public void testSameAsSequential() throws Exception {
+        Random random = new Random(4);
+        StringBuilder sck = new StringBuilder();
+        for(int n = 0; n < 8*2000; ++n) sck.append("01");
+
+        SlowClock clock = new SlowClock(400000);
+        clock.setChannelBitsData(LogicHelper.bitParser(sck.toString(), 5, 1));
+        clock.getChannelBitsData().setEdgeIndexEnabled(true);
+        LogicBitSet mosi = LogicHelper.bitParser(DecodeFixtures.spiBits(random, 2000), 5, 1);
+        LogicBitSet miso = LogicHelper.bitParser(DecodeFixtures.spiBits(random, 2000), 5, 1);
+        LogicBitSet tx = LogicHelper.bitParser("1111111111110110101011", 21, 300);
+
+        UARTProtocol uart = new UARTProtocol(200000);
+        uart.setChannelBitsData(tx);
+        SPIProtocol mosiSPI = spi(clock, mosi), misoSPI = spi(clock, miso);
+        // No clock source, fails
+        SPIProtocol broken = spi(null, mosi);
+
+        List<DecodeSession.Result> results = new DecodeSession(mosiSPI, uart, null, misoSPI, broken, clock, uart)
+                .decode(0, executor);
+
+        assertEquals(5, results.size());
+        assertSame(mosiSPI, results.get(0).getProtocol());
+        assertSame(clock, results.get(4).getProtocol());
+        for(int n = 0; n < 5; ++n) assertEquals(n != 3, results.get(n).isSuccessful());
+        assertTrue(results.get(3).getError() instanceof IllegalArgumentException);
+
+        // SPI decoders start after the clock
+        DecodeSession.Result clockResult = results.get(4);
+        long clockEnd = clockResult.getStartNanos() + clockResult.getDecodeNanos();
+        assertTrue(clockResult.getDecodeNanos() >= 50000000L);
+        assertTrue(results.get(0).getStartNanos() >= clockEnd);
+        assertTrue(results.get(2).getStartNanos() >= clockEnd);
+
+        UARTProtocol expectedUART = new UARTProtocol(200000);
+        expectedUART.setChannelBitsData(tx);
+        expectedUART.decode(0);
+        SPIProtocol expectedSPI = spi(clock, miso);
+        expectedSPI.decode(0);
+        DecodeFixtures.assertSameEvents(expectedUART.getDecodedEvents(), results.get(1).getEvents());
+        DecodeFixtures.assertSameEvents(expectedSPI.getDecodedEvents(), results.get(2).getEvents());
+    }
+
+}
@@ -0,0 +1,142 @@
+import com.protocolanalyzer.api.*;
+import com.protocolanalyzer.api.DecodedEventSink.Kind;
+import org.junit.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * DecodedEventStore Tester.
+ */
+public class DecodedEventStoreTest {
+
+    @Test
+    public void testColumns() throws Exception {
+        DecodedEventStore store = new DecodedEventStore(1);
+        for(int n = 0; n < 1000; ++n){
+            store.addEvent(Kind.DATA, n, 8, 10L * n, 10L * n + 5);
+        }
+        store.addEvent(Kind.ADDRESS, 80, 7, 1L << 40, (1L << 40) + 3);
+        store.addEvent(Kind.WORD, 5, 3, 1, 2);
+        store.addText("custom", 7, 9);
+
+        assertEquals(1003, store.size());
+        assertEquals(Kind.DATA, store.getKind(500));
+        assertEquals(500, store.getPayload(500));
+        assertEquals(8, store.getBits(500));
+        assertEquals(5000, store.getStartSample(500));
+        assertEquals(5005, store.getEndSample(500));
+        assertEquals("500", store.getString(500));
+        assertEquals("A(80)", store.getString(1000));
+        assertEquals(1L << 40, store.getStartSample(1000));
+        assertEquals("3b 5", store.getString(1001));
+        assertEquals("custom", store.getString(1002));
+
+        DecodedEventStore copy = new DecodedEventStore();
+        store.copyTo(copy);
+        assertEquals(store.size(), copy.size());
+        assertEquals("custom", copy.getString(1002));
+
+        store.clear();
+        assertEquals(0, store.size());
+        try {
+            store.getKind(0);
+            fail();
+        } catch (IndexOutOfBoundsException e) {}
+    }
+
+    @Test
+    public void testDecodedDataView() throws Exception {
+        Protocol protocol = new EmptyProtocol(1000);
+        protocol.addString("text", 0.5, 0.25, 1);
+
+        List<TimePosition> data = protocol.getDecodedData();
+        assertEquals(1, data.size());
+        assertEquals("text", data.get(0).getString());
+        assertEquals(1.5, data.get(0).startTime(), 1e-12);
+        assertEquals(1.5, data.get(0).endTime(), 1e-12);
+        assertEquals(1500, protocol.getDecodedEvents().getStartSample(0));
+    }
+
+    /**
+     * Events that match a query found by going through all of them
+     */
+    private static int[] scan(DecodedEventStore store, long from, long to, boolean overlapping){
+        List<Integer> events = new ArrayList<Integer>();
+        for(int n = 0; n < store.size(); ++n){
+            long start = store.getStartSample(n), end = store.getEndSample(n);
+            if(overlapping ? start <= to && end >= from : start >= from && start <= to) events.add(n);
+        }
+        // By start sample, keeping the order they were added in
+        events.sort((a, b) -> Long.compare(store.getStartSample(a), store.getStartSample(b)));
+        int[] result = new int[events.size()];
+        for(int n = 0; n < result.length; ++n) result[n] = events.get(n);
+        return result;
+    }
+
+    private static long distance(DecodedEventStore store, int event, long sample){
+        if(sample < store.getStartSample(event)) return store.getStartSample(event) - sample;
+        return Math.max(0, sample - store.getEndSample(event));
+    }
+
+    @Test
+    public void testTimeQueries() throws Exception {
+        Random random = new Random(25);
+        DecodedEventStore store = new DecodedEventStore();
+        assertEquals(-1, store.findNearest(10));
+        assertEquals(0, store.findOverlapping(0, 100).length);
+
+        for(int round = 0; round < 2; ++round){
+            // Events in order first, then some added out of order and long ones spanning many others
+            long start = 0;
+            for(int n = 0; n < 2000; ++n){
+                start += random.nextInt(20);
+                long begin = round == 1 && n % 50 == 0 ? random.nextInt(40000) : start;
+                long length = n % 300 == 0 ? random.nextInt(2000) : random.nextInt(15);
+                store.addEvent(Kind.DATA, n, 8, begin, begin + length);
+            }
+
+            for(int q = 0; q < 300; ++q){
+                long from = random.nextInt(45000) - 100;
+                long to = from + random.nextInt(500);
+                assertArrayEquals(scan(store, from, to, false), store.findStarting(from, to));
+                assertArrayEquals(scan(store, from, to, true), store.findOverlapping(from, to));
+
+                int nearest = store.findNearest(from);
+                long best = Long.MAX_VALUE;
+                for(int n = 0; n < store.size(); ++n) best = Math.min(best, distance(store, n, from));
+                assertEquals(best, distance(store, nearest, from));
+            }
+        }
+
+        // A text spanning all the capture, then short events after it
+        store.clear();
+        store.addText("bus error", 0, 1000000);
+        for(int n = 0; n < 5000; ++n) store.addEvent(Kind.DATA, n, 8, 10 + 20*n, 15 + 20*n);
+        assertArrayEquals(new int[]{ 0, 2501, 2502 }, store.findOverlapping(50010, 50030));
+        assertEquals(2501, store.findNearest(50012));
+        assertEquals(0, store.findNearest(50018));
+
+        store.clear();
+        store.addEvent(Kind.START, 0, 0, 100, 100);
+        assertEquals(0, store.findNearest(0));
+        assertEquals(0, store.findOverlapping(100, 100)[0]);
+    }
+
+    @Test
+    public void testDecodedDataWindow() throws Exception {
+        Protocol protocol = new EmptyProtocol(1000);
+        protocol.addString("late", 2.0, 2.5, 0);
+        protocol.addString("long", 0.1, 1.9, 0);
+        protocol.addString("early", 0.2, 0.3, 0);
+
+        List<TimePosition> data = protocol.getDecodedData(1.0, 2.2);
+        assertEquals(2, data.size());
+        assertEquals("long", data.get(0).getString());
+        assertEquals("late", data.get(1).getString());
+        assertEquals(2.0, data.get(1).startTime(), 1e-12);
+    }
+}
@@ -0,0 +1,96 @@
+import com.protocolanalyzer.api.*;
+import org.junit.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+/**
+ * DecoderSpec Tester. Contexts of the same spec decoding at the same time must decode the same than the decoder
+ *  the spec was taken from.
+ */
+public class DecoderSpecTest {
+
+    @Test
+    public void testConcurrentContexts() throws Exception {
+        StringBuilder sck = new StringBuilder();
+        for(int n = 0; n < 8*500; ++n) sck.append("01");
+        final LogicBitSet clockData = LogicHelper.bitParser(sck.toString(), 5, 1);
+
+        Clock clock = new Clock(400000);
+        clock.setChannelBitsData(clockData);
+        SPIProtocol spi = new SPIProtocol(400000);
+        spi.setClockSource(clock);
+        final DecoderSpec spec = DecoderSpec.of(spi);
+        // Changes after taking the spec don't change it
+        spi.setCPHA(true);
+
+        final LogicBitSet[] captures = new LogicBitSet[8];
+        final DecodedEventStore[] expected = new DecodedEventStore[captures.length];
+        Random random = new Random(5);
+        for(int n = 0; n < captures.length; ++n){
+            captures[n] = LogicHelper.bitParser(DecodeFixtures.spiBits(random, 500), 5, 1);
+            SPIProtocol sequential = new SPIProtocol(400000);
+            sequential.setClockSource(clock);
+            sequential.setChannelBitsData(captures[n]);
+            sequential.decode(0);
+            expected[n] = sequential.getDecodedEvents();
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for(int t = 0; t < 4; ++t){
+                results.add(executor.submit(() -> {
+                    DecodeContext context = spec.newContext();
+                    // Every capture twice, each decode replaces the events of the previous one
+                    for(int n = 0; n < 2*captures.length; ++n){
+                        int capture = n % captures.length;
+                        DecodedEventStore events = context.decode(captures[capture], clockData, 0);
+                        DecodeFixtures.assertSameEvents(expected[capture], events);
+                    }
+                    return true;
+                }));
+            }
+            for(Future<Boolean> result : results) assertTrue(result.get());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testUART() throws Exception {
+        LogicBitSet tx = LogicHelper.bitParser("1111111111110110101011", 21, 300);
+        UARTProtocol uart = new UARTProtocol(200000);
+        uart.setChannelBitsData(tx);
+        uart.decode(0);
+
+        DecoderSpec spec = DecoderSpec.of(uart);
+        assertEquals(Protocol.ProtocolType.UART, spec.getProtocol());
+        assertFalse(spec.hasClock());
+        assertEquals(200000, spec.getSampleFrequency());
+
+        DecodeContext context = spec.newContext();
+        DecodeFixtures.assertSameEvents(uart.getDecodedEvents(), context.decode(tx, null, 0));
+        assertSame(context.getEvents(), context.decode(tx, null, 0));
+        DecodeFixtures.assertSameEvents(uart.getDecodedEvents(), context.getEvents());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMissingClock() throws Exception {
+        SPIProtocol spi = new SPIProtocol(400000);
+        DecoderSpec.of(spi).newContext().decode(new LogicBitSet(), null, 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testFullDuplexSPI() throws Exception {
+        SPIProtocol spi = new SPIProtocol(400000);
+        spi.setMisoSource(new Clock(400000));
+        DecoderSpec.of(spi);
+    }
+}
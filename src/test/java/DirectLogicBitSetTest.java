@@ -0,0 +1,70 @@
+import com.protocolanalyzer.api.*;
+import org.junit.*;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * DirectLogicBitSet Tester.
+ */
+public class DirectLogicBitSetTest {
+
+    @Test
+    public void testSameAsLogicBitSet() throws Exception {
+        Random random = new Random(10);
+        LogicBitSet expected = new LogicBitSet();
+        DirectLogicBitSet bits = new DirectLogicBitSet(64);
+
+        for(int n = 0; n < 1000; ++n){
+            int from = random.nextInt(50000);
+            int to = from + random.nextInt(300);
+            boolean value = random.nextBoolean();
+            expected.set(from, to, value);
+            bits.set(from, to, value);
+        }
+        long[] words = new long[] {random.nextLong(), random.nextLong(), random.nextLong()};
+        expected.setWords(50013, words, 150);
+        bits.setWords(50013, words, 150);
+
+        assertEquals(expected.length(), bits.length());
+        for(int n = 0; n < expected.length() + 100; ++n){
+            assertEquals(expected.get(n), bits.get(n));
+            assertEquals(expected.nextSetBit(n), bits.nextSetBit(n));
+            assertEquals(expected.nextRisingEdge(n), bits.nextRisingEdge(n));
+            assertEquals(expected.nextFallingEdge(n), bits.nextFallingEdge(n));
+        }
+        bits.close();
+        assertTrue(bits.isClosed());
+        try {
+            bits.get(0);
+            fail();
+        } catch (IllegalStateException e) {}
+    }
+
+    @Test
+    public void testDecodeFromDemux() throws Exception {
+        LogicBitSet data = LogicHelper.bitParser("110110101011", 21, 60);
+        byte[] samples = new byte[data.length()];
+        for(int n = 0; n < samples.length; ++n) samples[n] = (byte)(data.get(n) ? 0x02 : 0);
+
+        UARTProtocol expected = new UARTProtocol(200000);
+        expected.setChannelBitsData(data);
+        expected.decode(0);
+
+        DirectLogicBitSet direct = new DirectLogicBitSet(16);
+        Protocol[] list = new Protocol[] {new EmptyProtocol(200000), new UARTProtocol(200000)};
+        list[1].setChannelSignal(direct);
+        LogicHelper.bufferToChannel(samples, list);
+        assertSame(direct, list[1].getChannelSignal());
+        list[1].decode(0);
+
+        DecodedEventStore a = expected.getDecodedEvents(), b = list[1].getDecodedEvents();
+        assertEquals(a.size(), b.size());
+        for(int n = 0; n < a.size(); ++n){
+            assertEquals(a.getString(n), b.getString(n));
+            assertEquals(a.getStartSample(n), b.getStartSample(n));
+        }
+        direct.close();
+    }
+}
@@ -0,0 +1,106 @@
+import com.protocolanalyzer.api.*;
+import org.junit.*;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * HybridLogicBitSet Tester.
+ */
+public class HybridLogicBitSetTest {
+
+    /**
+     * Idle line with bursts of random samples
+     */
+    private static LogicBitSet burstySignal(Random random, int length){
+        LogicBitSet bits = new LogicBitSet();
+        bits.set(0, length, true);
+        for(int burst = 0; burst < 6; ++burst){
+            int start = random.nextInt(length - 20000);
+            for(int n = start; n < start + 20000; n += 1 + random.nextInt(4)){
+                bits.set(n, random.nextBoolean());
+            }
+        }
+        return bits;
+    }
+
+    @Test
+    public void testSameAsLogicBitSet() throws Exception {
+        Random random = new Random(12);
+        final int length = 10 * HybridLogicBitSet.CHUNK_SAMPLES + 1234;
+        LogicBitSet expected = burstySignal(random, length);
+
+        // Half written by words, half by runs
+        HybridLogicBitSet bits = new HybridLogicBitSet();
+        final int half = 3 * HybridLogicBitSet.CHUNK_SAMPLES + 77;
+        long[] words = new long[(half + 63) / 64];
+        for(int n = 0; n < words.length; ++n) words[n] = expected.getWord(n);
+        bits.setWords(0, words, half);
+        LogicBitSet rest = new LogicBitSet();
+        for(int n = half; n < length; ++n) rest.set(n - half, expected.get(n));
+        bits.append(rest);
+
+        assertEquals(expected.length(), bits.length());
+        for(int n = 0; n < length + 100; n += 1 + random.nextInt(7)){
+            assertEquals(expected.get(n), bits.get(n));
+            assertEquals(expected.nextSetBit(n), bits.nextSetBit(n));
+            assertEquals(Math.min(expected.nextClearBit(n), Math.max(n, length)), bits.nextClearBit(n));
+            assertEquals(expected.nextRisingEdge(n), bits.nextRisingEdge(n));
+            assertEquals(expected.nextFallingEdge(n), bits.nextFallingEdge(n));
+            assertEquals(expected.nextSetBitToTest(n), bits.nextSetBitToTest(n));
+        }
+        for(int w = 0; w < (length + 63) / 64 + 2; ++w) assertEquals(expected.getWord(w), bits.getWord(w));
+
+        // Only the chunks with bursts are dense, the last one is the incomplete tail
+        assertTrue(bits.getDenseChunksCount() < 10);
+        assertTrue(bits.sizeInBytes() < length / 8);
+
+        try {
+            bits.setWords(5, words, 10);
+            fail("Samples can only be appended");
+        } catch (IllegalArgumentException e) {}
+    }
+
+    @Test
+    public void testIdleLine() throws Exception {
+        HybridLogicBitSet bits = new HybridLogicBitSet();
+        bits.addRun(true, 100 * HybridLogicBitSet.CHUNK_SAMPLES);
+        assertEquals(0, bits.getDenseChunksCount());
+        assertTrue(bits.sizeInBytes() < 1024);
+
+        bits.addRun(true, 10);
+        bits.addRun(false, 5);
+        bits.addRun(true, HybridLogicBitSet.CHUNK_SAMPLES);
+        // Only the incomplete tail is dense
+        assertEquals(1, bits.getDenseChunksCount());
+        assertEquals(100 * HybridLogicBitSet.CHUNK_SAMPLES + 10, bits.nextFallingEdge(0));
+        assertEquals(100 * HybridLogicBitSet.CHUNK_SAMPLES + 15, bits.nextRisingEdge(10));
+        assertEquals(bits.length(), bits.nextFallingEdge(100 * HybridLogicBitSet.CHUNK_SAMPLES + 16));
+    }
+
+    @Test
+    public void testDecode() throws Exception {
+        LogicBitSet data = LogicHelper.bitParser("1111111111110110101011", 21, 3000);
+        HybridLogicBitSet hybrid = new HybridLogicBitSet();
+        hybrid.append(data);
+
+        UARTProtocol expected = new UARTProtocol(200000);
+        expected.setBaudRate(9600);
+        expected.setChannelBitsData(data);
+        expected.decode(0);
+
+        UARTProtocol uart = new UARTProtocol(200000);
+        uart.setBaudRate(9600);
+        uart.setChannelSignal(hybrid);
+        uart.decode(0);
+
+        assertTrue(expected.getDecodedData().size() > 0);
+        assertEquals(expected.getDecodedData().size(), uart.getDecodedData().size());
+        for(int n = 0; n < expected.getDecodedData().size(); ++n){
+            assertEquals(expected.getDecodedData().get(n).getString(), uart.getDecodedData().get(n).getString());
+            assertEquals(expected.getDecodedData().get(n).startTime(), uart.getDecodedData().get(n).startTime(), 0);
+        }
+    }
+
+}
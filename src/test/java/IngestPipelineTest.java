@@ -0,0 +1,175 @@
+import com.protocolanalyzer.api.*;
+import com.protocolanalyzer.api.utils.ByteArrayBuffer;
+import org.junit.*;
+
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * IngestPipeline Tester. Decoding through the pipeline must decode the same than demultiplexing the whole capture
+ *  and decoding it.
+ */
+public class IngestPipelineTest {
+
+    /**
+     * I2C data on channel 0, its clock on channel 1 and UART on channel 2
+     */
+    private static byte[] capture(){
+        Random random = new Random(7);
+        StringBuilder sda = new StringBuilder(), scl = new StringBuilder(), tx = new StringBuilder("11");
+        for(int n = 0; n < 800; ++n){
+            sda.append("100  11010010011100101  0  11010011110000111 0 11010011110000111 1  0011");
+            scl.append("110  01010101010101010  1  01010101010101010 1 01010101010101010 1  0111");
+            int idle = random.nextInt(30);
+            sda.append(DecodeFixtures.repeat('1', idle));
+            scl.append(DecodeFixtures.repeat('1', idle));
+        }
+        for(int n = 0; n < 400; ++n){
+            tx.append('0');
+            for(int bit = 0; bit < 8; ++bit) tx.append(random.nextBoolean() ? '1' : '0');
+            tx.append('1').append(DecodeFixtures.repeat('1', random.nextInt(25)));
+        }
+        LogicBitSet[] lines = {
+                LogicHelper.bitParser(sda.toString(), 5, 1),
+                LogicHelper.bitParser(scl.toString(), 5, 1),
+                LogicHelper.bitParser(tx.toString(), 21, 1)
+        };
+
+        int length = Math.min(lines[0].length(), lines[2].length());
+        byte[] samples = new byte[length];
+        for(int n = 0; n < length; ++n){
+            for(int ch = 0; ch < lines.length; ++ch){
+                if(lines[ch].get(n)) samples[n] |= 1 << ch;
+            }
+        }
+        return samples;
+    }
+
+    private static Protocol[] channels(){
+        Clock clock = new Clock(400000);
+        I2CProtocol i2c = new I2CProtocol(400000);
+        i2c.setClockSource(clock);
+        UARTProtocol uart = new UARTProtocol(400000);
+        uart.setBaudRate(19200);
+        return new Protocol[]{ i2c, clock, uart };
+    }
+
+    private static Protocol[] sequential(byte[] samples){
+        Protocol[] channels = channels();
+        LogicHelper.bufferToChannel(samples, channels);
+        channels[0].decode(0);
+        channels[2].decode(0);
+        return channels;
+    }
+
+    @Test
+    public void testRawSamples() throws Exception {
+        byte[] samples = capture();
+        Protocol[] expected = sequential(samples);
+
+        Protocol[] channels = channels();
+        new IngestPipeline(channels, 1000, 2).decode(samples);
+        DecodeFixtures.assertSameEvents(expected[0].getDecodedEvents(), channels[0].getDecodedEvents());
+        DecodeFixtures.assertSameEvents(expected[2].getDecodedEvents(), channels[2].getDecodedEvents());
+        assertEquals(0, channels[1].getDecodedEvents().size());
+    }
+
+    @Test
+    public void testRunLength() throws Exception {
+        byte[] samples = capture();
+        ByteArrayBuffer compressed = new ByteArrayBuffer(1024);
+        for(int n = 0; n < samples.length; ){
+            int end = n;
+            while(end < samples.length && end - n < 0xFFFF && samples[end] == samples[n]) ++end;
+            compressed.append((end - n) & 0xFF);
+            compressed.append((end - n) >>> 8);
+            compressed.append(samples[n]);
+            n = end;
+        }
+        assertArrayEquals(samples, LogicHelper.runLengthDecode(compressed));
+
+        Protocol[] expected = sequential(samples);
+        Protocol[] channels = channels();
+        new IngestPipeline(channels, 4096, 3).decodeRunLength(compressed);
+        DecodeFixtures.assertSameEvents(expected[0].getDecodedEvents(), channels[0].getDecodedEvents());
+        DecodeFixtures.assertSameEvents(expected[2].getDecodedEvents(), channels[2].getDecodedEvents());
+    }
+
+    @Test
+    public void testFirstEventsEarly() throws Exception {
+        final byte[] samples = capture();
+        final Protocol[] channels = channels();
+        final CountDownLatch firstEvent = new CountDownLatch(1);
+        channels[2].setEventSink(new DecodedEventStore() {
+            @Override
+            public void addEvent(Kind kind, int payload, int bits, long startSample, long endSample) {
+                super.addEvent(kind, payload, bits, startSample, endSample);
+                firstEvent.countDown();
+            }
+        });
+
+        // The rest of the capture is only read once the first events are decoded
+        final int half = samples.length / 2;
+        new IngestPipeline(channels, 2048, 2).decode(new IngestPipeline.Source() {
+            private int position = 0;
+
+            @Override
+            public int read(byte[] block) {
+                if(position >= half){
+                    try {
+                        if(!firstEvent.await(10, TimeUnit.SECONDS)) throw new IllegalStateException("No events yet");
+                    } catch (InterruptedException e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+                int n = Math.min(block.length, samples.length - position);
+                System.arraycopy(samples, position, block, 0, n);
+                position += n;
+                return n;
+            }
+        });
+        assertTrue(((DecodedEventStore)channels[2].getEventSink()).size() > 0);
+    }
+
+    @Test
+    public void testDecoderError() throws Exception {
+        SPIProtocol spi = new SPIProtocol(400000);
+        Clock clock = new Clock(400000);
+        spi.setClockSource(clock);
+        // Full-Duplex SPI can't be fed
+        spi.setMisoSource(clock);
+        UARTProtocol uart = new UARTProtocol(400000);
+        uart.setBaudRate(19200);
+        Protocol[] channels = { spi, clock, uart };
+
+        try {
+            new IngestPipeline(channels, 1000, 1).decode(capture());
+            fail("Exception expected");
+        } catch (IllegalStateException e) {
+            // The other decoders finish
+            assertTrue(uart.getDecodedEvents().size() > 0);
+        }
+    }
+
+    @Test
+    public void testSourceError() throws Exception {
+        // An error, not an exception, thrown while reading the capture
+        try {
+            new IngestPipeline(channels(), 1000, 1).decode(new IngestPipeline.Source() {
+                private int blocks = 0;
+
+                @Override
+                public int read(byte[] block) {
+                    if(++blocks == 3) throw new AssertionError("Capture lost");
+                    return block.length;
+                }
+            });
+            fail("Error expected");
+        } catch (AssertionError e) {
+            assertEquals("Capture lost", e.getMessage());
+        }
+    }
+}
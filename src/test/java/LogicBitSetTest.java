@@ -0,0 +1,159 @@
+import com.protocolanalyzer.api.EdgeCursor;
+import com.protocolanalyzer.api.LogicBitSet;
+import org.junit.*;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * LogicBitSet Tester.
+ */
+public class LogicBitSetTest {
+
+    private static LogicBitSet randomSignal(Random random, int length){
+        LogicBitSet bits = new LogicBitSet();
+        boolean state = random.nextBoolean();
+        for(int n = 0; n < length; ){
+            int run = 1 + random.nextInt(100);
+            bits.set(n, Math.min(n + run, length), state);
+            state = !state;
+            n += run;
+        }
+        return bits;
+    }
+
+    @Test
+    public void testEdgeIndex() throws Exception {
+        Random random = new Random(5);
+        LogicBitSet scanned = randomSignal(random, 5000);
+        LogicBitSet indexed = new LogicBitSet(scanned);
+        indexed.setEdgeIndexEnabled(true);
+
+        EdgeCursor cursor = new EdgeCursor(indexed);
+        for(int n = -1; n < scanned.length() + 2; ++n){
+            assertEquals(scanned.nextRisingEdge(n), indexed.nextRisingEdge(n));
+            assertEquals(scanned.nextFallingEdge(n), indexed.nextFallingEdge(n));
+            assertEquals(scanned.nextSetBitToTest(n), cursor.nextSetBitToTest(n));
+        }
+
+        // Walking backwards and after a write
+        for(int n = scanned.length(); n >= 0; n -= 37){
+            assertEquals(scanned.nextRisingEdge(n), cursor.nextRisingEdge(n));
+            assertEquals(scanned.nextFallingEdge(n), cursor.nextFallingEdge(n));
+        }
+        scanned.set(100, 200);
+        indexed.set(100, 200);
+        for(int n = 0; n < scanned.length(); n += 3){
+            assertEquals(scanned.nextRisingEdge(n), cursor.nextRisingEdge(n));
+            assertEquals(scanned.nextFallingEdge(n), cursor.nextFallingEdge(n));
+        }
+    }
+
+    @Test
+    public void testBulkEdges() throws Exception {
+        Random random = new Random(9);
+        LogicBitSet scanned = randomSignal(random, 3000);
+        LogicBitSet indexed = new LogicBitSet(scanned);
+        indexed.setEdgeIndexEnabled(true);
+
+        int[] out = new int[7];
+        for(int t = 0; t < 500; ++t){
+            int from = random.nextInt(scanned.length() + 100);
+            int to = from + random.nextInt(400);
+            for(LogicBitSet bits : new LogicBitSet[]{ scanned, indexed }){
+                assertEdges(bits, from, to, out, true, false);
+                assertEdges(bits, from, to, out, false, true);
+                assertEdges(bits, from, to, out, true, true);
+            }
+        }
+    }
+
+    /**
+     * Compares the bulk extraction against nextRisingEdge() and nextFallingEdge()
+     */
+    private static void assertEdges(LogicBitSet bits, int from, int to, int[] out, boolean rising, boolean falling){
+        int n = Math.max(from - 1, 0);
+        while(true){
+            int count;
+            if(rising && falling) count = bits.getEdges(n + 1, to, out);
+            else if(rising) count = bits.getRisingEdges(n + 1, to, out);
+            else count = bits.getFallingEdges(n + 1, to, out);
+
+            for(int k = 0; k < count; ++k){
+                int r = rising ? bits.nextRisingEdge(n) : -1;
+                int f = falling ? bits.nextFallingEdge(n) : -1;
+                int expected = r == -1 ? f : (f == -1 ? r : Math.min(r, f));
+                assertEquals(expected, out[k]);
+                n = out[k];
+            }
+            if(count < out.length) break;
+        }
+        int r = rising ? bits.nextRisingEdge(n) : -1;
+        int f = falling ? bits.nextFallingEdge(n) : -1;
+        assertTrue((r == -1 || r >= to) && (f == -1 || f >= to));
+    }
+
+    @Test
+    public void testActivityMap() throws Exception {
+        Random random = new Random(11);
+        final int block = LogicBitSet.ACTIVITY_BLOCK_SAMPLES;
+
+        // Long idle runs written by words so the blocks are summarized
+        LogicBitSet reference = new LogicBitSet();
+        for(int n = 0; n < 40*block; ){
+            int run = random.nextBoolean() ? 1 + random.nextInt(50) : random.nextInt(5*block);
+            reference.set(n, n + run, random.nextBoolean());
+            n += run;
+        }
+        LogicBitSet bits = new LogicBitSet();
+        long[] words = new long[(reference.length() + 63) / 64];
+        for(int n = 0; n < words.length; ++n) words[n] = reference.getWord(n);
+        bits.setWords(0, words, reference.length());
+        assertSearches(reference, bits, random);
+
+        // Idle block skipped
+        LogicBitSet idle = new LogicBitSet();
+        idle.setWords(0, new long[3*block/64], 3*block);
+        assertFalse(idle.mayHaveEdges(block, 2*block));
+
+        // Writes sample by sample forget the blocks they touch
+        for(int t = 0; t < 200; ++t){
+            int from = random.nextInt(45*block);
+            int to = from + random.nextInt(block/2);
+            boolean state = random.nextBoolean();
+            reference.set(from, to, state);
+            bits.set(from, to, state);
+            if(t % 50 == 0){
+                reference.set(from, !reference.get(from));
+                bits.set(from, !bits.get(from));
+            }
+        }
+        assertSearches(reference, bits, random);
+        bits.updateActivityMap();
+        assertSearches(reference, bits, random);
+    }
+
+    /**
+     * Compares the searches of a signal against a copy without activity map
+     */
+    private static void assertSearches(LogicBitSet reference, LogicBitSet bits, Random random){
+        // Copy constructor drops the activity map
+        LogicBitSet plain = new LogicBitSet(reference);
+        int[] out = new int[64], expected = new int[64];
+        for(int t = 0; t < 2000; ++t){
+            int n = random.nextInt(reference.length() + 100);
+            assertEquals(plain.nextSetBit(n), bits.nextSetBit(n));
+            assertEquals(plain.nextClearBit(n), bits.nextClearBit(n));
+            assertEquals(plain.nextRisingEdge(n), bits.nextRisingEdge(n));
+            assertEquals(plain.nextFallingEdge(n), bits.nextFallingEdge(n));
+
+            int to = n + random.nextInt(3*LogicBitSet.ACTIVITY_BLOCK_SAMPLES);
+            int count = plain.getEdges(n, to, expected);
+            assertEquals(count, bits.getEdges(n, to, out));
+            for(int k = 0; k < count; ++k) assertEquals(expected[k], out[k]);
+            if(bits.mayHaveEdges(n, to) == false) assertEquals(0, count);
+        }
+    }
+
+}
@@ -0,0 +1,213 @@
+import com.protocolanalyzer.api.EmptyProtocol;
+import com.protocolanalyzer.api.LogicBitSet;
+import com.protocolanalyzer.api.LogicHelper;
+import com.protocolanalyzer.api.Protocol;
+import com.protocolanalyzer.api.RunLengthBitSet;
+import org.junit.*;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * LogicHelper Tester.
+ */
+public class LogicHelperTest {
+
+    private static Protocol[] newChannels(int n){
+        Protocol[] list = new Protocol[n];
+        for(int ch = 0; ch < n; ++ch) list[ch] = new EmptyProtocol(1000000);
+        return list;
+    }
+
+    private static void assertChannels(byte[] data, int startIndex, Protocol[] list){
+        for(int ch = 0; ch < list.length; ++ch){
+            LogicBitSet bits = list[ch].getChannelBitsData();
+            assertEquals(startIndex + data.length, bits.length());
+            for(int n = 0; n < data.length; ++n){
+                assertEquals("Channel " + ch + " sample " + n, LogicHelper.bitTest(data[n], ch), bits.get(startIndex + n));
+            }
+        }
+    }
+
+    @Test
+    public void testBufferToChannel() throws Exception {
+        Random random = new Random(1);
+        byte[] data = new byte[10000 + 37];
+        random.nextBytes(data);
+
+        Protocol[] list = newChannels(8);
+        LogicHelper.bufferToChannel(data, list);
+        assertChannels(data, 0, list);
+
+        // Less channels than bits
+        list = newChannels(3);
+        LogicHelper.bufferToChannel(data, list);
+        assertChannels(data, 0, list);
+    }
+
+    @Test
+    public void testAddBufferToChannel() throws Exception {
+        Random random = new Random(2);
+        byte[] first = new byte[100];
+        byte[] second = new byte[5000];
+        random.nextBytes(first);
+        random.nextBytes(second);
+
+        Protocol[] list = newChannels(8);
+        LogicHelper.bufferToChannel(first, list);
+        LogicHelper.addBufferToChannel(second, list);
+
+        byte[] all = new byte[first.length + second.length];
+        System.arraycopy(first, 0, all, 0, first.length);
+        System.arraycopy(second, 0, all, first.length, second.length);
+        assertChannels(all, 0, list);
+    }
+
+    @Test
+    public void testNotWritableChannels() throws Exception {
+        Random random = new Random(10);
+        byte[] data = new byte[3000];
+        random.nextBytes(data);
+
+        // Replaced by a new channel, the samples it had are not copied
+        Protocol[] list = newChannels(8);
+        RunLengthBitSet runs = new RunLengthBitSet();
+        runs.addRun(true, 100000);
+        list[3].setChannelSignal(runs);
+        LogicHelper.bufferToChannel(data, list);
+        assertChannels(data, 0, list);
+        assertTrue(list[3].getChannelSignal() instanceof LogicBitSet);
+        assertEquals(100000, runs.length());
+
+        // Samples can't be added to it
+        list[3].setChannelSignal(runs);
+        try {
+            LogicHelper.addBufferToChannel(data, list);
+            fail("Channel can't be written");
+        } catch (IllegalStateException e) {}
+    }
+
+    @Test
+    public void testSetWordsUnaligned() throws Exception {
+        Random random = new Random(3);
+        long[] src = new long[4];
+        for(int n = 0; n < src.length; ++n) src[n] = random.nextLong();
+
+        for(int from = 0; from < 130; from += 7){
+            LogicBitSet bits = new LogicBitSet();
+            bits.set(0, 400);
+            bits.setWords(from, src, 200);
+            for(int n = 0; n < 400; ++n){
+                boolean expected = (n < from || n >= from + 200) || ((src[(n-from) / 64] >>> ((n-from) % 64)) & 1) != 0;
+                assertEquals("from " + from + " bit " + n, expected, bits.get(n));
+            }
+        }
+    }
+
+    /**
+     * Checks channel ch of wide samples, null channels must be skipped
+     */
+    private static void assertWideChannels(long[] data, int startIndex, Protocol[] list){
+        for(int ch = 0; ch < list.length; ++ch){
+            if(list[ch] == null) continue;
+            LogicBitSet bits = list[ch].getChannelBitsData();
+            assertEquals(startIndex + data.length, bits.length());
+            for(int n = 0; n < data.length; ++n){
+                assertEquals("Channel " + ch + " sample " + n, ((data[n] >>> ch) & 1) != 0, bits.get(startIndex + n));
+            }
+        }
+    }
+
+    @Test
+    public void testWideBufferToChannel() throws Exception {
+        Random random = new Random(2);
+        final int length = 5000 + 21;
+        long[] samples = new long[length];
+        for(int n = 0; n < length; ++n) samples[n] = random.nextLong();
+
+        // 64 channels, only some of them
+        Protocol[] list = newChannels(64);
+        for(int ch = 0; ch < 64; ch += 3) list[ch] = null;
+        LogicHelper.bufferToChannel(samples, list);
+        assertWideChannels(samples, 0, list);
+
+        // 32 channels
+        int[] ints = new int[length];
+        long[] expected = new long[length];
+        for(int n = 0; n < length; ++n){
+            ints[n] = (int)samples[n];
+            expected[n] = samples[n] & 0xFFFFFFFFL;
+        }
+        list = newChannels(32);
+        list[0] = list[9] = null;
+        LogicHelper.bufferToChannel(ints, list);
+        assertWideChannels(expected, 0, list);
+
+        // 16 channels
+        short[] shorts = new short[length];
+        for(int n = 0; n < length; ++n){
+            shorts[n] = (short)samples[n];
+            expected[n] = samples[n] & 0xFFFFL;
+        }
+        list = newChannels(16);
+        LogicHelper.bufferToChannel(shorts, list);
+        assertWideChannels(expected, 0, list);
+
+        // Added after the samples already there
+        LogicHelper.addBufferToChannel(shorts, list);
+        long[] twice = new long[2*length];
+        System.arraycopy(expected, 0, twice, 0, length);
+        System.arraycopy(expected, 0, twice, length, length);
+        assertWideChannels(twice, 0, list);
+    }
+
+    @Test
+    public void testByteBufferToChannel() throws Exception {
+        Random random = new Random(3);
+        final int length = 3000 + 5;
+        ByteBuffer buffer = ByteBuffer.allocateDirect(3 + 4*length).order(ByteOrder.BIG_ENDIAN);
+        long[] expected = new long[length];
+        buffer.position(3);
+        for(int n = 0; n < length; ++n){
+            int sample = random.nextInt();
+            buffer.putInt(sample);
+            expected[n] = sample & 0xFFFFFFFFL;
+        }
+        buffer.position(3);
+
+        Protocol[] list = newChannels(32);
+        LogicHelper.bufferToChannel(buffer, 4, list);
+        assertWideChannels(expected, 0, list);
+        assertEquals(3, buffer.position());
+
+        // One byte samples, the same than a byte[] from the buffer position
+        byte[] bytes = new byte[10000 + 21];
+        random.nextBytes(bytes);
+        byte[] tail = Arrays.copyOfRange(bytes, 7, bytes.length);
+        for(ByteBuffer samples : new ByteBuffer[]{ ByteBuffer.wrap(bytes), ByteBuffer.allocateDirect(bytes.length).put(bytes) }){
+            samples.position(7);
+            Protocol[] channels = newChannels(8);
+            LogicHelper.bufferToChannel(samples, 1, channels);
+            assertChannels(tail, 0, channels);
+            LogicHelper.addBufferToChannel(samples, 1, channels);
+            byte[] twice = new byte[2 * tail.length];
+            System.arraycopy(tail, 0, twice, 0, tail.length);
+            System.arraycopy(tail, 0, twice, tail.length, tail.length);
+            assertChannels(twice, 0, channels);
+            assertEquals(7, samples.position());
+            // A slice doesn't start at index 0 of its array
+            LogicHelper.bufferToChannel(samples.slice(), 1, channels);
+            assertChannels(tail, 0, channels);
+        }
+
+        try {
+            LogicHelper.bufferToChannel(buffer, 3, list);
+            fail("3 bytes per sample is not a valid sample size");
+        } catch (IllegalArgumentException e) {}
+    }
+
+}
@@ -0,0 +1,142 @@
+import com.protocolanalyzer.api.*;
+import org.junit.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * MappedCapture Tester.
+ */
+public class MappedCaptureTest {
+
+    private static File writeCapture(byte[] samples) throws Exception {
+        File file = File.createTempFile("capture", ".bin");
+        file.deleteOnExit();
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(samples);
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+
+    @Test
+    public void testSameAsBufferToChannel() throws Exception {
+        Random random = new Random(8);
+        byte[] samples = new byte[200003];
+        // Runs of random length so there are long and short times between edges
+        for(int n = 0; n < samples.length; ){
+            byte value = (byte)random.nextInt(256);
+            int end = Math.min(samples.length, n + 1 + random.nextInt(random.nextBoolean() ? 10 : 5000));
+            while(n < end) samples[n++] = value;
+        }
+
+        Protocol[] expected = new Protocol[8];
+        for(int ch = 0; ch < 8; ++ch) expected[ch] = new EmptyProtocol(1000000);
+        LogicHelper.bufferToChannel(samples, expected);
+
+        MappedCapture capture = new MappedCapture(writeCapture(samples));
+        try {
+            assertEquals(samples.length, capture.getSamplesNumber());
+            for(int ch = 0; ch < 8; ++ch){
+                LogicSignal dense = expected[ch].getChannelSignal();
+                LogicSignal mapped = capture.getChannel(ch);
+                assertEquals(samples.length, mapped.length());
+
+                for(int n = 0; n < samples.length; n += 1 + random.nextInt(100)){
+                    assertEquals(dense.get(n), mapped.get(n));
+                    assertEquals(dense.nextSetBit(n), mapped.nextSetBit(n));
+                    assertEquals(Math.min(dense.nextClearBit(n), samples.length), mapped.nextClearBit(n));
+                    assertEquals(dense.nextRisingEdge(n), mapped.nextRisingEdge(n));
+                    assertEquals(dense.nextFallingEdge(n), mapped.nextFallingEdge(n));
+                    assertEquals(dense.getWord(n >>> 6), mapped.getWord(n >>> 6));
+                }
+
+                // A window that doesn't start at a word
+                LogicSignal window = capture.getLongChannel(ch).window(1001, 70000);
+                for(int w = 0; w < (70000 + 63) / 64; w += 1 + random.nextInt(10)){
+                    long word = 0;
+                    for(int b = 0; b < 64 && 64*w + b < 70000; ++b){
+                        if(dense.get(1001 + 64*w + b)) word |= 1L << b;
+                    }
+                    assertEquals(word, window.getWord(w));
+                }
+            }
+        } finally {
+            capture.close();
+        }
+    }
+
+    @Test
+    public void testUARTDecode() throws Exception {
+        LogicBitSet data = LogicHelper.bitParser("110110101011", 21, 400);
+        byte[] samples = new byte[data.length()];
+        for(int n = 0; n < samples.length; ++n) samples[n] = (byte)(data.get(n) ? 0x04 : 0);
+
+        UARTProtocol expected = new UARTProtocol(200000);
+        expected.setChannelBitsData(data);
+        expected.decode(0);
+
+        MappedCapture capture = new MappedCapture(writeCapture(samples));
+        try {
+            Protocol[] list = new Protocol[] {null, null, new UARTProtocol(200000)};
+            capture.setChannels(list);
+            list[2].decode(0);
+
+            DecodedEventStore a = expected.getDecodedEvents(), b = list[2].getDecodedEvents();
+            assertEquals(a.size(), b.size());
+            for(int n = 0; n < a.size(); ++n){
+                assertEquals(a.getString(n), b.getString(n));
+                assertEquals(a.getStartSample(n), b.getStartSample(n));
+                assertEquals(a.getEndSample(n), b.getEndSample(n));
+            }
+        } finally {
+            capture.close();
+        }
+    }
+
+    /**
+     * Decoders read a word at a time, a long idle line must not be read again for each word
+     */
+    @Test(timeout = 5000)
+    public void testI2CDecodeLongIdle() throws Exception {
+        //                                   S    Address          A  Byte               A  ST
+        LogicBitSet frameSda = LogicHelper.bitParser("100  11010010011100101  0  11010011110000111 1  0011", 5, 1);
+        LogicBitSet frameScl = LogicHelper.bitParser("110  01010101010101010  1  01010101010101010 1  0111", 5, 1);
+        final int idle = 1 << 21;
+        byte[] samples = new byte[2 * frameSda.length() + idle];
+        for(int n = 0; n < samples.length; ++n){
+            final int f = n < frameSda.length() ? n : n - frameSda.length() - idle;
+            final boolean sda = f < 0 || f >= frameSda.length() || frameSda.get(f);
+            final boolean scl = f < 0 || f >= frameScl.length() || frameScl.get(f);
+            samples[n] = (byte)((sda ? 1 : 0) | (scl ? 2 : 0));
+        }
+
+        Protocol[] heap = { new I2CProtocol(400000), new Clock(400000) };
+        LogicHelper.bufferToChannel(samples, heap);
+        ((I2CProtocol)heap[0]).setClockSource((Clock)heap[1]);
+        heap[0].decode(0);
+
+        MappedCapture capture = new MappedCapture(writeCapture(samples));
+        try {
+            Protocol[] mapped = { new I2CProtocol(400000), new Clock(400000) };
+            capture.setChannels(mapped);
+            ((I2CProtocol)mapped[0]).setClockSource((Clock)mapped[1]);
+            mapped[0].decode(0);
+
+            DecodedEventStore a = heap[0].getDecodedEvents(), b = mapped[0].getDecodedEvents();
+            assertTrue(a.size() > 0);
+            assertEquals(a.size(), b.size());
+            for(int n = 0; n < a.size(); ++n){
+                assertEquals(a.getString(n), b.getString(n));
+                assertEquals(a.getStartSample(n), b.getStartSample(n));
+            }
+        } finally {
+            capture.close();
+        }
+    }
+}
@@ -0,0 +1,113 @@
+import com.protocolanalyzer.api.*;
+import org.junit.*;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+/**
+ * Protocol parallel decoding Tester. Decoding a capture in parallel segments must decode the same than decoding it
+ *  sequentially.
+ */
+public class ParallelDecodeTest {
+
+    private static ForkJoinPool pool;
+
+    @BeforeClass
+    public static void setUp(){
+        pool = new ForkJoinPool(4);
+    }
+
+    @AfterClass
+    public static void tearDown(){
+        pool.shutdown();
+    }
+
+    @Test
+    public void testUART() throws Exception {
+        Random random = new Random(1);
+        StringBuilder frames = new StringBuilder("11");
+        for(int n = 0; n < 3000; ++n){
+            frames.append('0');
+            for(int bit = 0; bit < 8; ++bit) frames.append(random.nextBoolean() ? '1' : '0');
+            frames.append('1').append(DecodeFixtures.repeat('1', random.nextInt(25)));
+        }
+        LogicBitSet data = LogicHelper.bitParser(frames.toString(), 21, 1);
+
+        UARTProtocol sequential = new UARTProtocol(200000);
+        sequential.setChannelBitsData(data);
+        sequential.decode(0);
+
+        UARTProtocol parallel = new UARTProtocol(200000);
+        parallel.setChannelBitsData(data);
+        // Split for real, not decoded sequentially after rejecting every split point
+        assertTrue(parallel.decodeParallel(0, pool) > 1);
+
+        DecodeFixtures.assertSameEvents(sequential.getDecodedEvents(), parallel.getDecodedEvents());
+    }
+
+    @Test
+    public void testI2C() throws Exception {
+        Random random = new Random(2);
+        StringBuilder sda = new StringBuilder(), scl = new StringBuilder();
+        for(int n = 0; n < 1500; ++n){
+            sda.append("100  11010010011100101  0  11010011110000111 0 11010011110000111 1  0011");
+            scl.append("110  01010101010101010  1  01010101010101010 1 01010101010101010 1  0111");
+            int idle = random.nextInt(30);
+            sda.append(DecodeFixtures.repeat('1', idle));
+            scl.append(DecodeFixtures.repeat('1', idle));
+        }
+
+        Clock clock = new Clock(400000);
+        clock.setChannelBitsData(LogicHelper.bitParser(scl.toString(), 5, 1));
+        LogicBitSet data = LogicHelper.bitParser(sda.toString(), 5, 1);
+
+        I2CProtocol sequential = new I2CProtocol(400000);
+        sequential.setClockSource(clock);
+        sequential.setChannelBitsData(data);
+        sequential.decode(0);
+
+        I2CProtocol parallel = new I2CProtocol(400000);
+        parallel.setClockSource(clock);
+        parallel.setChannelBitsData(data);
+        // Split for real, not decoded sequentially after rejecting every split point
+        assertTrue(parallel.decodeParallel(0, pool) > 1);
+
+        DecodeFixtures.assertSameEvents(sequential.getDecodedEvents(), parallel.getDecodedEvents());
+    }
+
+    @Test
+    public void testSPI() throws Exception {
+        Random random = new Random(3);
+        StringBuilder mosi = new StringBuilder(), sck = new StringBuilder();
+        for(int n = 0; n < 3000; ++n){
+            for(int bit = 0; bit < 8; ++bit){
+                char b = random.nextBoolean() ? '1' : '0';
+                mosi.append(b).append(b);
+                sck.append("01");
+            }
+            int idle = random.nextInt(30);
+            mosi.append(DecodeFixtures.repeat('0', idle));
+            sck.append(DecodeFixtures.repeat('0', idle));
+        }
+
+        Clock clock = new Clock(400000);
+        clock.setChannelBitsData(LogicHelper.bitParser(sck.toString(), 5, 1));
+        LogicBitSet data = LogicHelper.bitParser(mosi.toString(), 5, 1);
+
+        SPIProtocol sequential = new SPIProtocol(400000);
+        sequential.setClockSource(clock);
+        sequential.setChannelBitsData(data);
+        sequential.decode(0);
+
+        SPIProtocol parallel = new SPIProtocol(400000);
+        parallel.setClockSource(clock);
+        parallel.setChannelBitsData(data);
+        // Split for real, not decoded sequentially after rejecting every split point
+        assertTrue(parallel.decodeParallel(0, pool) > 1);
+
+        DecodeFixtures.assertSameEvents(sequential.getDecodedEvents(), parallel.getDecodedEvents());
+    }
+
+}
@@ -0,0 +1,88 @@
+import com.protocolanalyzer.api.*;
+import com.protocolanalyzer.api.utils.ByteArrayBuffer;
+import org.junit.*;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * RunLengthBitSet Tester.
+ */
+public class RunLengthBitSetTest {
+
+    private static ByteArrayBuffer randomRuns(Random random, int runs){
+        ByteArrayBuffer buffer = new ByteArrayBuffer(runs * 3);
+        for(int n = 0; n < runs; ++n){
+            int count = random.nextInt(300);
+            buffer.append(count & 0xFF);
+            buffer.append((count >> 8) & 0xFF);
+            buffer.append(random.nextInt(4) == 0 ? random.nextInt(256) : 0xFF);
+        }
+        return buffer;
+    }
+
+    @Test
+    public void testSameAsExpandedData() throws Exception {
+        ByteArrayBuffer rle = randomRuns(new Random(4), 500);
+
+        Protocol[] dense = new Protocol[8];
+        Protocol[] runs = new Protocol[8];
+        for(int ch = 0; ch < 8; ++ch){
+            dense[ch] = new EmptyProtocol(1000000);
+            runs[ch] = new EmptyProtocol(1000000);
+        }
+        LogicHelper.bufferToChannel(LogicHelper.runLengthDecode(rle), dense);
+        LogicHelper.runLengthToChannel(rle, runs);
+
+        for(int ch = 0; ch < 8; ++ch){
+            LogicSignal expected = dense[ch].getChannelSignal();
+            LogicSignal signal = runs[ch].getChannelSignal();
+            assertTrue(signal instanceof RunLengthBitSet);
+            assertEquals(expected.length(), signal.length());
+
+            for(int n = 0; n < expected.length() + 2; ++n){
+                assertEquals(expected.get(n), signal.get(n));
+                assertEquals(expected.nextSetBit(n), signal.nextSetBit(n));
+                assertEquals(expected.nextClearBit(n), signal.nextClearBit(n));
+                assertEquals(expected.nextRisingEdge(n), signal.nextRisingEdge(n));
+                assertEquals(expected.nextFallingEdge(n), signal.nextFallingEdge(n));
+                assertEquals(expected.nextSetBitToTest(n), signal.nextSetBitToTest(n));
+            }
+            assertEquals(dense[ch].getChannelBitsData(), new LogicBitSet(signal));
+        }
+
+        // Null channels are skipped
+        Protocol[] gaps = { null, new EmptyProtocol(1000000), null, new EmptyProtocol(1000000) };
+        LogicHelper.runLengthToChannel(rle, gaps);
+        assertEquals(dense[3].getChannelBitsData(), new LogicBitSet(gaps[3].getChannelSignal()));
+        assertTrue(gaps[1].getChannelSignal() instanceof RunLengthBitSet);
+    }
+
+    @Test
+    public void testUARTDecode() throws Exception {
+        LogicBitSet data = LogicHelper.bitParser("110110101011", 21, 50);
+        RunLengthBitSet runs = new RunLengthBitSet();
+        for(int n = 0; n < data.length(); ){
+            boolean state = data.get(n);
+            int end = state ? data.nextClearBit(n) : data.nextSetBit(n);
+            if(end == -1 || end > data.length()) end = data.length();
+            runs.addRun(state, end - n);
+            n = end;
+        }
+
+        UARTProtocol dense = new UARTProtocol(200000);
+        UARTProtocol rle = new UARTProtocol(200000);
+        dense.setChannelBitsData(data);
+        rle.setChannelSignal(runs);
+        dense.decode(0);
+        rle.decode(0);
+
+        assertEquals(dense.getDecodedData().size(), rle.getDecodedData().size());
+        for(int n = 0; n < dense.getDecodedData().size(); ++n){
+            assertEquals(dense.getDecodedData().get(n).getString(), rle.getDecodedData().get(n).getString());
+            assertEquals(dense.getDecodedData().get(n).startTime(), rle.getDecodedData().get(n).startTime(), 0);
+        }
+    }
+
+}
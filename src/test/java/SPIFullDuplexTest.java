@@ -0,0 +1,146 @@
+import com.protocolanalyzer.api.*;
+import com.protocolanalyzer.api.DecodedEventSink.Kind;
+import org.junit.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * SPIProtocol full-duplex and chip select Tester.
+ */
+public class SPIFullDuplexTest {
+
+    private static final int WORD_BITS = 12;
+
+    private final StringBuilder sck = new StringBuilder(), mosi = new StringBuilder(),
+            miso = new StringBuilder(), cs = new StringBuilder();
+    private final List<Integer> mosiWords = new ArrayList<>(), misoWords = new ArrayList<>();
+
+    private void idle(int samples){
+        for(int n = 0; n < samples; ++n){
+            sck.append('0'); mosi.append('0'); miso.append('1'); cs.append('1');
+        }
+    }
+
+    /**
+     * One frame in SPI mode 0 sending words MSB first, the last word may be incomplete
+     */
+    private void frame(Random random, int words, int lastWordBits){
+        cs.append("00"); sck.append("00"); mosi.append("00"); miso.append("00");
+        for(int w = 0; w < words; ++w){
+            int bits = w == words-1 ? lastWordBits : WORD_BITS;
+            int out = random.nextInt(1 << bits), in = random.nextInt(1 << bits);
+            mosiWords.add(out);
+            misoWords.add(in);
+            for(int b = bits-1; b >= 0; --b){
+                char o = ((out >>> b) & 1) != 0 ? '1' : '0', i = ((in >>> b) & 1) != 0 ? '1' : '0';
+                sck.append("0011"); cs.append("0000");
+                mosi.append(o).append(o).append(o).append(o);
+                miso.append(i).append(i).append(i).append(i);
+            }
+        }
+        cs.append("00"); sck.append("00"); mosi.append("00"); miso.append("00");
+    }
+
+    private static Protocol channel(StringBuilder samples){
+        Protocol protocol = new EmptyProtocol(1000000);
+        protocol.setChannelBitsData(LogicHelper.bitParser(samples.toString(), 3, 1));
+        return protocol;
+    }
+
+    @Test
+    public void testFullDuplexWithChipSelect() throws Exception {
+        Random random = new Random(6);
+        idle(20);
+        frame(random, 3, WORD_BITS);
+        idle(15);
+        // Aborted in the middle of a word
+        frame(random, 2, 5);
+        idle(30);
+        // Clock edges while not selected are ignored
+        sck.append("0011001100");
+        mosi.append("1111111111");
+        miso.append("1111111111");
+        cs.append("1111111111");
+        frame(random, 1, WORD_BITS);
+        idle(10);
+
+        Clock clock = new Clock(1000000);
+        clock.setChannelBitsData(channel(sck).getChannelBitsData());
+        SPIProtocol spi = new SPIProtocol(1000000);
+        spi.setChannelBitsData(channel(mosi).getChannelBitsData());
+        spi.setClockSource(clock);
+        spi.setMisoSource(channel(miso));
+        spi.setChipSelectSource(channel(cs));
+        spi.setSPIMode(0);
+        spi.setWordBits(WORD_BITS);
+        spi.setMsbFirst(true);
+        spi.decode(0);
+
+        DecodedEventStore events = spi.getDecodedEvents();
+        List<Integer> decodedMosi = new ArrayList<>(), decodedMiso = new ArrayList<>();
+        int selects = 0, deselects = 0;
+        for(int n = 0; n < events.size(); ++n){
+            switch (events.getKind(n)){
+                case WORD:          decodedMosi.add(events.getPayload(n)); break;
+                case MISO_WORD:     decodedMiso.add(events.getPayload(n)); break;
+                case CHIP_SELECT:   ++selects; break;
+                case CHIP_DESELECT: ++deselects; break;
+            }
+        }
+        assertEquals(mosiWords, decodedMosi);
+        assertEquals(misoWords, decodedMiso);
+        assertEquals(3, selects);
+        assertEquals(3, deselects);
+        assertEquals(Kind.CHIP_SELECT, events.getKind(0));
+        assertEquals(60, events.getStartSample(0));
+
+        // Same with the samples decoded in parallel segments
+        SPIProtocol parallel = new SPIProtocol(1000000);
+        parallel.setChannelBitsData(spi.getChannelBitsData());
+        parallel.setClockSource(clock);
+        parallel.setMisoSource(spi.getMisoSource());
+        parallel.setChipSelectSource(spi.getChipSelectSource());
+        parallel.setSPIMode(0);
+        parallel.setWordBits(WORD_BITS);
+        parallel.setMsbFirst(true);
+        parallel.decodeParallel(0);
+        assertEquals(events.size(), parallel.getDecodedEvents().size());
+
+        try {
+            spi.feed(new LogicBitSet(), new LogicBitSet());
+            fail("Chip select lines can't be fed");
+        } catch (IllegalStateException e) {}
+    }
+
+    @Test
+    public void testSelectedAtFirstSample() throws Exception {
+        // Chip select already asserted when the capture starts
+        Random random = new Random(18);
+        frame(random, 2, WORD_BITS);
+        idle(10);
+
+        Clock clock = new Clock(1000000);
+        clock.setChannelBitsData(channel(sck).getChannelBitsData());
+        SPIProtocol spi = new SPIProtocol(1000000);
+        spi.setChannelBitsData(channel(mosi).getChannelBitsData());
+        spi.setClockSource(clock);
+        spi.setChipSelectSource(channel(cs));
+        spi.setSPIMode(0);
+        spi.setWordBits(WORD_BITS);
+        spi.setMsbFirst(true);
+        spi.decode(0);
+
+        DecodedEventStore events = spi.getDecodedEvents();
+        assertEquals(Kind.CHIP_SELECT, events.getKind(0));
+        assertEquals(0, events.getStartSample(0));
+        assertEquals(Kind.WORD, events.getKind(1));
+        assertEquals((int)mosiWords.get(0), events.getPayload(1));
+        assertEquals((int)mosiWords.get(1), events.getPayload(2));
+        assertEquals(Kind.CHIP_DESELECT, events.getKind(3));
+        assertEquals(4, events.size());
+    }
+}
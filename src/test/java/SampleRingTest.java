@@ -0,0 +1,202 @@
+import com.protocolanalyzer.api.*;
+import org.junit.*;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+/**
+ * SampleRing Tester. Consumers must get the blocks in order, all of them when the producer waits and whole blocks
+ *  when it overwrites them.
+ */
+public class SampleRingTest {
+
+    private static final int BLOCKS = 20000;
+
+    /**
+     * Publishes blocks where every byte is the block number and the length depends on it too
+     */
+    private static void produce(SampleRing ring){
+        byte[] block = new byte[ring.getBlockSize()];
+        for(int n = 0; n < BLOCKS; ++n){
+            int length = 1 + n % ring.getBlockSize();
+            for(int b = 0; b < length; ++b) block[b] = (byte)n;
+            ring.publish(block, 0, length);
+        }
+        ring.close();
+    }
+
+    /**
+     * Reads all the blocks checking their content
+     * @return number of blocks read
+     */
+    private static int consume(SampleRing ring, SampleRing.Consumer consumer){
+        byte[] block = new byte[ring.getBlockSize()];
+        int count = 0, last = -1, length;
+        while((length = consumer.take(block)) != -1){
+            int n = last + 1;
+            // Blocks skipped are the ones overwritten
+            while((byte)n != block[0] || 1 + n % ring.getBlockSize() != length) ++n;
+            for(int b = 0; b < length; ++b) assertEquals((byte)n, block[b]);
+            last = n;
+            ++count;
+        }
+        return count;
+    }
+
+    @Test
+    public void testBlockPolicy() throws Exception {
+        final SampleRing ring = new SampleRing(30, 100, SampleRing.Policy.BLOCK);
+        assertEquals(32, ring.getCapacity());
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Integer>> results = new ArrayList<>();
+            for(int n = 0; n < 3; ++n){
+                final SampleRing.Consumer consumer = ring.newConsumer();
+                results.add(executor.submit(() -> {
+                    int count = consume(ring, consumer);
+                    assertEquals(0, consumer.getDroppedCount());
+                    return count;
+                }));
+            }
+            executor.submit(() -> produce(ring)).get();
+            for(Future<Integer> result : results) assertEquals(BLOCKS, (int)result.get());
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(BLOCKS, ring.getPublishedCount());
+    }
+
+    @Test
+    public void testConsumersAddedWhilePublishing() throws Exception {
+        // A ring of one block so the producer goes around it on every block while consumers are added
+        final SampleRing ring = new SampleRing(1, 100, SampleRing.Policy.BLOCK);
+        ExecutorService executor = Executors.newCachedThreadPool();
+        try {
+            Future<?> producer = executor.submit(() -> produce(ring));
+            List<Future<Integer>> registrations = new ArrayList<>();
+            for(int t = 0; t < 4; ++t){
+                registrations.add(executor.submit(() -> {
+                    int consumers = 0;
+                    byte[] block = new byte[ring.getBlockSize()];
+                    while(!ring.isClosed()){
+                        // Each consumer reads a few blocks, none skipped and none torn
+                        SampleRing.Consumer consumer = ring.newConsumer();
+                        int length, lastLength = -1;
+                        byte last = 0;
+                        for(int n = 0; n < 5 && (length = consumer.take(block)) != -1; ++n){
+                            if(lastLength != -1){
+                                assertEquals((byte)(last + 1), block[0]);
+                                assertEquals(1 + lastLength % ring.getBlockSize(), length);
+                            }
+                            for(int b = 0; b < length; ++b) assertEquals(block[0], block[b]);
+                            last = block[0];
+                            lastLength = length;
+                        }
+                        assertEquals(0, consumer.getDroppedCount());
+                        consumer.close();
+                        ++consumers;
+                    }
+                    return consumers;
+                }));
+            }
+            producer.get();
+            for(Future<Integer> registration : registrations) assertTrue(registration.get() > 0);
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(BLOCKS, ring.getPublishedCount());
+    }
+
+    @Test
+    public void testOverwritePolicy() throws Exception {
+        final SampleRing ring = new SampleRing(4, 100, SampleRing.Policy.OVERWRITE_OLDEST);
+        final SampleRing.Consumer consumer = ring.newConsumer();
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<Integer> result = executor.submit(() -> consume(ring, consumer));
+            executor.submit(() -> produce(ring)).get();
+            assertEquals(BLOCKS, result.get() + consumer.getDroppedCount());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testFullRing() throws Exception {
+        SampleRing ring = new SampleRing(2, 8, SampleRing.Policy.BLOCK);
+        SampleRing.Consumer consumer = ring.newConsumer();
+        byte[] block = { 1, 2, 3 };
+        assertTrue(ring.tryPublish(block, 0, 3));
+        assertTrue(ring.tryPublish(block, 1, 2));
+        assertFalse(ring.tryPublish(block, 0, 3));
+        assertEquals(2, consumer.getPending());
+
+        byte[] out = new byte[8];
+        assertEquals(3, consumer.poll(out));
+        assertTrue(ring.tryPublish(block, 2, 1));
+        assertEquals(2, consumer.poll(out));
+        assertEquals(2, out[0]);
+
+        // A closed consumer doesn't stop the producer
+        consumer.close();
+        assertTrue(ring.tryPublish(block, 0, 3));
+        assertTrue(ring.tryPublish(block, 0, 3));
+    }
+
+    @Test
+    public void testLiveDecode() throws Exception {
+        // UART frames on channel 0 going through the ring in blocks
+        StringBuilder frames = new StringBuilder("11");
+        for(int n = 0; n < 500; ++n){
+            frames.append('0');
+            for(int bit = 0; bit < 8; ++bit) frames.append((n >> bit & 1) != 0 ? '1' : '0');
+            frames.append("11");
+        }
+        LogicBitSet tx = LogicHelper.bitParser(frames.toString(), 21, 1);
+        byte[] capture = new byte[tx.length()];
+        for(int n = 0; n < capture.length; ++n) capture[n] = (byte)(tx.get(n) ? 1 : 0);
+
+        final UARTProtocol expected = new UARTProtocol(200000);
+        expected.setChannelBitsData(tx);
+        expected.decode(0);
+
+        final SampleRing ring = new SampleRing(8, 1000, SampleRing.Policy.BLOCK);
+        final SampleRing.Consumer consumer = ring.newConsumer();
+        final UARTProtocol live = new UARTProtocol(200000);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<?> decoder = executor.submit(() -> {
+                Protocol[] channels = { live };
+                byte[] block = new byte[ring.getBlockSize()];
+                int length;
+                while((length = consumer.take(block)) != -1){
+                    LogicBitSet chunk = new LogicBitSet();
+                    live.setChannelBitsData(chunk);
+                    LogicHelper.bufferToChannel(ByteBuffer.wrap(block, 0, length), 1, channels);
+                    live.feed(chunk);
+                }
+                live.flush();
+            });
+            for(int n = 0; n < capture.length; n += ring.getBlockSize()){
+                ring.publish(capture, n, Math.min(ring.getBlockSize(), capture.length - n));
+            }
+            ring.close();
+            decoder.get();
+        } finally {
+            executor.shutdown();
+        }
+
+        DecodedEventStore events = live.getDecodedEvents();
+        assertEquals(expected.getDecodedEvents().size(), events.size());
+        for(int n = 0; n < events.size(); ++n){
+            assertEquals(expected.getDecodedEvents().getPayload(n), events.getPayload(n));
+            assertEquals(expected.getDecodedEvents().getStartSample(n), events.getStartSample(n));
+        }
+    }
+}
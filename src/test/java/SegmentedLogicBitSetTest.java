@@ -0,0 +1,108 @@
+import com.protocolanalyzer.api.*;
+import org.junit.*;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * SegmentedLogicBitSet Tester.
+ */
+public class SegmentedLogicBitSetTest {
+
+    private static void assertSameEvents(DecodedEventStore expected, DecodedEventStore actual, long offset){
+        assertTrue(expected.size() > 0);
+        assertEquals(expected.size(), actual.size());
+        for(int n = 0; n < expected.size(); ++n){
+            assertEquals(expected.getString(n), actual.getString(n));
+            assertEquals(expected.getStartSample(n) + offset, actual.getStartSample(n));
+            assertEquals(expected.getEndSample(n) + offset, actual.getEndSample(n));
+        }
+    }
+
+    @Test
+    public void testSameAsLogicBitSet() throws Exception {
+        Random random = new Random(9);
+        LogicBitSet expected = new LogicBitSet();
+        SegmentedLogicBitSet bits = new SegmentedLogicBitSet();
+
+        for(int n = 0; n < 2000; ++n){
+            int from = random.nextInt(100000);
+            int to = from + random.nextInt(300);
+            boolean value = random.nextBoolean();
+            expected.set(from, to, value);
+            bits.set(from, to, value);
+        }
+        assertEquals(expected.length(), bits.length());
+        for(int n = 0; n < expected.length() + 100; ++n){
+            assertEquals(expected.get(n), bits.get(n));
+            assertEquals(expected.nextSetBit(n), bits.nextSetBit(n));
+            assertEquals(expected.nextRisingEdge(n), bits.nextRisingEdge(n));
+            if(n < expected.length()) assertEquals(expected.nextClearBit(n), bits.nextClearBit(n));
+        }
+    }
+
+    @Test
+    public void testBeyondIntIndexes() throws Exception {
+        final long start = 3000000000L;
+        SegmentedLogicBitSet bits = new SegmentedLogicBitSet();
+        bits.set(start + 5, start + 100, true);
+        bits.set(start + 200);
+
+        assertEquals(start + 201, bits.length());
+        assertFalse(bits.get(start + 4));
+        assertTrue(bits.get(start + 5));
+        assertEquals(start + 5, bits.nextSetBit(0));
+        assertEquals(start + 100, bits.nextFallingEdge(0));
+        assertEquals(start + 200, bits.nextRisingEdge(start + 100));
+        assertEquals(-1, bits.nextSetBit(start + 201));
+    }
+
+    @Test
+    public void testUARTDecodeInWindows() throws Exception {
+        LogicBitSet data = LogicHelper.bitParser("110110101011", 21, 60);
+
+        UARTProtocol batch = new UARTProtocol(200000);
+        batch.setChannelBitsData(data);
+        batch.decode(0);
+
+        SegmentedLogicBitSet bits = new SegmentedLogicBitSet();
+        bits.append(data);
+        for(int window : new int[] {600, 1001, 4096}){
+            UARTProtocol uart = new UARTProtocol(200000);
+            uart.decode(bits, null, 0, window);
+            assertSameEvents(batch.getDecodedEvents(), uart.getDecodedEvents(), 0);
+        }
+
+        // Same data after 2^31 samples
+        final long offset = 3L << 30;
+        SegmentedLogicBitSet far = new SegmentedLogicBitSet();
+        far.set(offset - 1, false);
+        far.append(data);
+        UARTProtocol uart = new UARTProtocol(200000);
+        uart.decode(far, null, 0);
+        assertSameEvents(batch.getDecodedEvents(), uart.getDecodedEvents(), offset);
+    }
+
+    @Test
+    public void testI2CDecodeInWindows() throws Exception {
+        LogicBitSet data = LogicHelper.bitParser("100  11010010011100101  0  11010011110000111 0 11010011110000111 1  0011", 5, 40);
+        LogicBitSet clk = LogicHelper.bitParser( "110  01010101010101010  1  01010101010101010 1 01010101010101010 1  0111", 5, 40);
+
+        I2CProtocol batch = new I2CProtocol(400000);
+        Clock clock = new Clock(400000);
+        clock.setChannelBitsData(clk);
+        batch.setClockSource(clock);
+        batch.setChannelBitsData(data);
+        batch.decode(0);
+
+        SegmentedLogicBitSet sda = new SegmentedLogicBitSet(), scl = new SegmentedLogicBitSet();
+        sda.append(data);
+        scl.append(clk);
+        for(int window : new int[] {500, 1001, 4096}){
+            I2CProtocol i2c = new I2CProtocol(400000);
+            i2c.decode(sda, scl, 0, window);
+            assertSameEvents(batch.getDecodedEvents(), i2c.getDecodedEvents(), 0);
+        }
+    }
+}
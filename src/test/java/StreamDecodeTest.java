@@ -0,0 +1,93 @@
+import com.protocolanalyzer.api.*;
+import org.junit.*;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Protocol stream decoding Tester. Feeding a capture in chunks must decode the same than decoding it at once.
+ */
+public class StreamDecodeTest {
+
+    private static LogicBitSet slice(LogicBitSet bits, int from, int to){
+        LogicBitSet chunk = new LogicBitSet();
+        for(int n = from; n < to; ++n) chunk.set(n - from, bits.get(n));
+        return chunk;
+    }
+
+    private static void feedInChunks(Protocol protocol, LogicBitSet data, LogicBitSet clock, long seed){
+        Random random = new Random(seed);
+        int length = Math.max(data.length(), clock == null ? 0 : clock.length());
+        for(int n = 0; n < length; ){
+            int end = Math.min(length, n + 1 + random.nextInt(300));
+            protocol.feed(slice(data, n, end), clock == null ? null : slice(clock, n, end));
+            n = end;
+        }
+        protocol.flush();
+    }
+
+    private static void assertSameData(List<TimePosition> expected, List<TimePosition> actual){
+        assertEquals(expected.size(), actual.size());
+        for(int n = 0; n < expected.size(); ++n){
+            assertEquals(expected.get(n).getString(), actual.get(n).getString());
+            assertEquals(expected.get(n).startTime(), actual.get(n).startTime(), 1e-12);
+            assertEquals(expected.get(n).endTime(), actual.get(n).endTime(), 1e-12);
+        }
+    }
+
+    @Test
+    public void testI2C() throws Exception {
+        LogicBitSet data = LogicHelper.bitParser("100  11010010011100101  0  11010011110000111 0 11010011110000111 1  0011", 5, 40);
+        LogicBitSet clk = LogicHelper.bitParser( "110  01010101010101010  1  01010101010101010 1 01010101010101010 1  0111", 5, 40);
+
+        I2CProtocol batch = new I2CProtocol(400000);
+        Clock clock = new Clock(400000);
+        clock.setChannelBitsData(clk);
+        batch.setClockSource(clock);
+        batch.setChannelBitsData(data);
+        batch.decode(0);
+
+        for(int seed = 0; seed < 10; ++seed){
+            I2CProtocol stream = new I2CProtocol(400000);
+            feedInChunks(stream, data, clk, seed);
+            assertSameData(batch.getDecodedData(), stream.getDecodedData());
+        }
+    }
+
+    @Test
+    public void testUART() throws Exception {
+        LogicBitSet data = LogicHelper.bitParser("110110101011", 21, 60);
+
+        UARTProtocol batch = new UARTProtocol(200000);
+        batch.setChannelBitsData(data);
+        batch.decode(0);
+
+        for(int seed = 0; seed < 10; ++seed){
+            UARTProtocol stream = new UARTProtocol(200000);
+            feedInChunks(stream, data, null, seed);
+            assertSameData(batch.getDecodedData(), stream.getDecodedData());
+        }
+    }
+
+    @Test
+    public void testSPI() throws Exception {
+        LogicBitSet data = LogicHelper.bitParser("100  1100001100001100 1111110011001111 0011111100000000 111100111", 5, 10);
+        LogicBitSet clk = LogicHelper.bitParser( "000  0101010101010101 0101010101010101 0101010101010101 010101000", 5, 10);
+
+        SPIProtocol batch = new SPIProtocol(400000);
+        Clock clock = new Clock(400000);
+        clock.setChannelBitsData(clk);
+        batch.setClockSource(clock);
+        batch.setChannelBitsData(data);
+        batch.decode(0);
+
+        for(int seed = 0; seed < 10; ++seed){
+            SPIProtocol stream = new SPIProtocol(400000);
+            feedInChunks(stream, data, clk, seed);
+            assertSameData(batch.getDecodedData(), stream.getDecodedData());
+        }
+    }
+
+}
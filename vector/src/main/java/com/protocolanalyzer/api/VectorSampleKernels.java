@@ -0,0 +1,125 @@
+package com.protocolanalyzer.api;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+import java.nio.ByteBuffer;
+
+/**
+ * {@link com.protocolanalyzer.api.SampleKernels} using the Vector API. Loaded by
+ *  {@link com.protocolanalyzer.api.SampleKernels#getDefault()} when this class and jdk.incubator.vector are
+ *  available.
+ */
+public class VectorSampleKernels extends SampleKernels {
+
+    /** Preferred vectors up to 512 bits, wider ones would have more than the 8 lanes of a word */
+    private static final VectorSpecies<Long> LONGS = LongVector.SPECIES_PREFERRED.length() > 8 ?
+            LongVector.SPECIES_512 : LongVector.SPECIES_PREFERRED;
+    /** Bytes of a vector of longs, 8 samples in each lane */
+    private static final VectorSpecies<Byte> SAMPLE_BYTES = VectorSpecies.of(byte.class, LONGS.vectorShape());
+    /** Vectors needed for the 64 samples of a word */
+    private static final int PARTS = 8 / LONGS.length();
+    /** Position in the word of the 8 samples of each lane */
+    private static final LongVector[] PART_SHIFTS = new LongVector[PARTS];
+
+    static {
+        for(int part = 0; part < PARTS; ++part){
+            long[] shifts = new long[LONGS.length()];
+            for(int lane = 0; lane < shifts.length; ++lane) shifts[lane] = 8L * (part*LONGS.length() + lane);
+            PART_SHIFTS[part] = LongVector.fromArray(LONGS, shifts, 0);
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "vector " + LONGS.vectorBitSize() + " bits";
+    }
+
+    /**
+     * Each lane holds 8 samples that are transposed as in the scalar kernel, then the byte of one channel is
+     *  taken from every lane and shifted to its place in the word.
+     */
+    @Override
+    public void demuxBlock(ByteBuffer data, int offset, int nSamples, long[][] out) {
+        if(!data.hasArray()){
+            super.demuxBlock(data, offset, nSamples, out);
+            return;
+        }
+
+        final byte[] array = data.array();
+        final int base = data.arrayOffset();
+        final int channels = out.length;
+        final int end = offset + nSamples;
+
+        int n = offset, word = 0;
+        for(; n + 64 <= end; n += 64, ++word){
+            for(int ch = 0; ch < channels; ++ch) out[ch][word] = 0;
+
+            for(int part = 0; part < PARTS; ++part){
+                LongVector samples = ByteVector.fromArray(SAMPLE_BYTES, array, base + n + part*SAMPLE_BYTES.length())
+                        .reinterpretAsLongs();
+                LongVector transposed = transpose8x8(samples);
+                for(int ch = 0; ch < channels; ++ch){
+                    out[ch][word] |= transposed.lanewise(VectorOperators.LSHR, 8*ch)
+                            .and(0xFFL)
+                            .lanewise(VectorOperators.LSHL, PART_SHIFTS[part])
+                            .reduceLanes(VectorOperators.OR);
+                }
+            }
+        }
+
+        // Last samples of an incomplete word
+        if(n < end){
+            long[][] last = new long[channels][1];
+            super.demuxBlock(data, n, end - n, last);
+            for(int ch = 0; ch < channels; ++ch) out[ch][word] = last[ch][0];
+        }
+    }
+
+    /**
+     * Same than {@link com.protocolanalyzer.api.LogicHelper#transpose8x8(long)} in every lane
+     */
+    private static LongVector transpose8x8(LongVector x){
+        LongVector t;
+        t = x.lanewise(VectorOperators.XOR, x.lanewise(VectorOperators.LSHR, 7)).and(0x00AA00AA00AA00AAL);
+        x = x.lanewise(VectorOperators.XOR, t).lanewise(VectorOperators.XOR, t.lanewise(VectorOperators.LSHL, 7));
+        t = x.lanewise(VectorOperators.XOR, x.lanewise(VectorOperators.LSHR, 14)).and(0x0000CCCC0000CCCCL);
+        x = x.lanewise(VectorOperators.XOR, t).lanewise(VectorOperators.XOR, t.lanewise(VectorOperators.LSHL, 14));
+        t = x.lanewise(VectorOperators.XOR, x.lanewise(VectorOperators.LSHR, 28)).and(0x00000000F0F0F0F0L);
+        x = x.lanewise(VectorOperators.XOR, t).lanewise(VectorOperators.XOR, t.lanewise(VectorOperators.LSHL, 28));
+        return x;
+    }
+
+    /**
+     * Each lane is one word, the previous sample of each word comes from loading the words again one position
+     *  before.
+     */
+    @Override
+    public long transitions(long[] words, int offset, int count, long carry, long[] rises, long[] falls) {
+        if(count == 0) return carry;
+
+        // First word with the given carry
+        int n = 1;
+        super.transitions(words, offset, 1, carry, rises, falls);
+
+        for(final int bound = LONGS.loopBound(count - 1); n - 1 < bound; n += LONGS.length()){
+            LongVector word = LongVector.fromArray(LONGS, words, offset + n);
+            LongVector before = LongVector.fromArray(LONGS, words, offset + n - 1);
+            LongVector previous = word.lanewise(VectorOperators.LSHL, 1)
+                    .or(before.lanewise(VectorOperators.LSHR, 63));
+
+            word.lanewise(VectorOperators.AND_NOT, previous).intoArray(rises, n);
+            previous.lanewise(VectorOperators.AND_NOT, word).intoArray(falls, n);
+        }
+
+        for(; n < count; ++n){
+            long word = words[offset + n];
+            long previous = (word << 1) | (words[offset + n - 1] >>> 63);
+            rises[n] = word & ~previous;
+            falls[n] = ~word & previous;
+        }
+        return words[offset + count - 1] >>> 63;
+    }
+}
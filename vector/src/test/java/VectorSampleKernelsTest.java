@@ -0,0 +1,54 @@
+import com.protocolanalyzer.api.SampleKernels;
+import org.junit.*;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * VectorSampleKernels Tester.
+ */
+public class VectorSampleKernelsTest {
+
+    @Test
+    public void testLoaded() throws Exception {
+        assertNotNull(SampleKernels.getVector());
+        assertSame(SampleKernels.getVector(), SampleKernels.getDefault());
+    }
+
+    @Test
+    public void testDemuxSameAsScalar() throws Exception {
+        Random random = new Random(3);
+        byte[] data = new byte[4096 + 100];
+        random.nextBytes(data);
+        ByteBuffer buffer = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+
+        for(int samples : new int[]{ 4096, 64, 1000, 13 }){
+            long[][] scalar = new long[8][64];
+            long[][] vector = new long[8][64];
+            SampleKernels.getScalar().demuxBlock(buffer, 37, samples, scalar);
+            SampleKernels.getVector().demuxBlock(buffer, 37, samples, vector);
+            for(int ch = 0; ch < 8; ++ch) assertArrayEquals(scalar[ch], vector[ch]);
+        }
+    }
+
+    @Test
+    public void testTransitionsSameAsScalar() throws Exception {
+        Random random = new Random(4);
+        long[] words = new long[1000];
+        for(int n = 0; n < words.length; ++n) words[n] = random.nextLong();
+
+        for(int count : new int[]{ 0, 1, 2, 7, 999 }){
+            long[] scalarRises = new long[count], scalarFalls = new long[count];
+            long[] vectorRises = new long[count], vectorFalls = new long[count];
+            long scalarCarry = SampleKernels.getScalar().transitions(words, 1, count, 1, scalarRises, scalarFalls);
+            long vectorCarry = SampleKernels.getVector().transitions(words, 1, count, 1, vectorRises, vectorFalls);
+            assertEquals(scalarCarry, vectorCarry);
+            assertArrayEquals(scalarRises, vectorRises);
+            assertArrayEquals(scalarFalls, vectorFalls);
+        }
+    }
+
+}